@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.autoconfigure;
+
+import com.cisco.msx.security.config.ReactiveOAuth2ResourceServerSecurityConfig;
+import com.cisco.msx.security.config.ReactiveSecurityServiceConfig;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.security.reactive.ReactiveSecurityAutoConfiguration;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.reactive.function.client.WebClient;
+
+@Configuration
+@ConditionalOnClass({OAuth2AccessToken.class, EnableWebFluxSecurity.class, WebClient.class})
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@AutoConfigureBefore(ReactiveSecurityAutoConfiguration.class)
+@Import({
+        ReactiveOAuth2ResourceServerSecurityConfig.class,
+        ReactiveSecurityServiceConfig.class
+})
+public class MsxReactiveSecurityAutoConfiguration {
+
+}
@@ -10,8 +10,11 @@ import com.cisco.msx.security.config.SecurityServiceConfig;
 import com.cisco.msx.security.config.SystemPropertyConfig;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.NoneNestedConditions;
 import org.springframework.boot.autoconfigure.session.SessionAutoConfiguration;
 import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
@@ -19,6 +22,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 @ConditionalOnClass({OAuth2AccessToken.class, WebMvcConfigurer.class})
+@Conditional(MsxSecurityAutoConfiguration.NotReactiveWebApplication.class)
 @AutoConfigureBefore({WebMvcAutoConfiguration.class, SessionAutoConfiguration.class})
 @Import({
         OAuth2ResourceServerSecurityConfig.class,
@@ -27,4 +31,17 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 })
 public class MsxSecurityAutoConfiguration {
 
+    /**
+     * Reactive web applications get {@link MsxReactiveSecurityAutoConfiguration} instead, even with Spring MVC on the classpath
+     */
+    static class NotReactiveWebApplication extends NoneNestedConditions {
+
+        NotReactiveWebApplication() {
+            super(ConfigurationPhase.PARSE_CONFIGURATION);
+        }
+
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+        static class Reactive {
+        }
+    }
 }
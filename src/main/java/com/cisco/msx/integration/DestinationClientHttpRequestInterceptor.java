@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Captures the destination of a request, the host of its URI, for the
+ * {@link DestinationRoutingClientHttpRequestFactory}. The interceptor must run before the load balancer interceptor,
+ * which replaces the service name with the address of an instance.
+ */
+public class DestinationClientHttpRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final ThreadLocal<String> DESTINATION = new ThreadLocal<>();
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        String previous = DESTINATION.get();
+        DESTINATION.set(request.getURI().getHost());
+        try {
+            return execution.execute(request, body);
+        } finally {
+            if (previous != null) {
+                DESTINATION.set(previous);
+            } else {
+                DESTINATION.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the destination of the request being executed on this thread, or null
+     */
+    static String currentDestination() {
+        return DESTINATION.get();
+    }
+}
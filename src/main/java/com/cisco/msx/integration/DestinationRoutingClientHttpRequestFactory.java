@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link ClientHttpRequestFactory} routing each request to the request factory of its destination, so every
+ * destination is served by its own connection pool.
+ * <p>
+ * The destination is the service name captured by the {@link DestinationClientHttpRequestInterceptor} before the load
+ * balancer replaced it with the address of an instance, or the host of the request otherwise. Requests to other
+ * destinations are sent with the default request factory.
+ */
+public class DestinationRoutingClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final ClientHttpRequestFactory defaultRequestFactory;
+
+    private final Map<String, ClientHttpRequestFactory> requestFactories;
+
+    /**
+     * @param defaultRequestFactory the request factory of the destinations without their own
+     * @param requestFactories      the request factories keyed by lower case destination
+     */
+    public DestinationRoutingClientHttpRequestFactory(ClientHttpRequestFactory defaultRequestFactory,
+                                                      Map<String, ClientHttpRequestFactory> requestFactories) {
+        this.defaultRequestFactory = defaultRequestFactory;
+        this.requestFactories = requestFactories;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        String destination = DestinationClientHttpRequestInterceptor.currentDestination();
+        if (destination == null) {
+            destination = uri.getHost();
+        }
+        ClientHttpRequestFactory requestFactory = destination != null ?
+                requestFactories.get(destination.toLowerCase(Locale.ROOT)) : null;
+        return (requestFactory != null ? requestFactory : defaultRequestFactory).createRequest(uri, httpMethod);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link org.springframework.http.client.ClientHttpRequest} created by {@link JdkClientHttpRequestFactory}. The body
+ * is buffered and sent with the request once it is executed. Unless the caller negotiates the encoding itself, gzip
+ * responses are accepted and decompressed by {@link JdkClientHttpResponse}.
+ */
+class JdkClientHttpRequest extends AbstractClientHttpRequest {
+
+    /**
+     * Headers set by the JDK client itself, which it does not allow to be set on a request
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(List.of(HttpHeaders.CONNECTION, HttpHeaders.CONTENT_LENGTH, HttpHeaders.EXPECT,
+                HttpHeaders.HOST, HttpHeaders.UPGRADE));
+    }
+
+    private final HttpClient httpClient;
+
+    private final URI uri;
+
+    private final HttpMethod method;
+
+    private final Duration timeout;
+
+    private final Semaphore permits;
+
+    private final Duration permitTimeout;
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+    JdkClientHttpRequest(HttpClient httpClient, URI uri, HttpMethod method, Duration timeout, Semaphore permits,
+                         Duration permitTimeout) {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.method = method;
+        this.timeout = timeout;
+        this.permits = permits;
+        this.permitTimeout = permitTimeout;
+    }
+
+    @Override
+    public String getMethodValue() {
+        return method.name();
+    }
+
+    @Override
+    public URI getURI() {
+        return uri;
+    }
+
+    @Override
+    protected OutputStream getBodyInternal(HttpHeaders headers) {
+        return body;
+    }
+
+    @Override
+    protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (!timeout.isZero()) {
+            builder.timeout(timeout);
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey())) {
+                for (String value : header.getValue()) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+        }
+        if (!headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, JdkClientHttpResponse.GZIP);
+        }
+        builder.method(method.name(), body.size() > 0 ?
+                HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()) : HttpRequest.BodyPublishers.noBody());
+
+        acquirePermit();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return new JdkClientHttpResponse(response, permits::release);
+        } catch (InterruptedException e) {
+            permits.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response of " + uri);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquirePermit() throws IOException {
+        try {
+            if (!permits.tryAcquire(permitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout waiting for an available request slot for " + uri);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an available request slot for " + uri);
+        }
+    }
+}
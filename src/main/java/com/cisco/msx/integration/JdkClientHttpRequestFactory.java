@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link ClientHttpRequestFactory} based on the JDK {@link HttpClient}, which multiplexes concurrent requests as
+ * HTTP/2 streams over a few connections when the server supports it, and falls back to HTTP/1.1 otherwise.
+ * <p>
+ * The JDK client manages its connections itself, so the number of concurrent requests is bounded instead: a request
+ * waits up to the connection request timeout for one of the max total slots, and holds it until its response is closed.
+ */
+public class JdkClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final HttpClient httpClient;
+
+    private final Duration requestTimeout;
+
+    private final Semaphore permits;
+
+    private final Duration permitTimeout;
+
+    /**
+     * @param httpClient     the client sending the requests
+     * @param requestTimeout timeout of each request until its response headers are received, zero for no timeout
+     * @param maxConcurrent  maximum number of concurrent requests
+     * @param permitTimeout  how long a request waits when the maximum number of concurrent requests is reached
+     */
+    public JdkClientHttpRequestFactory(HttpClient httpClient, Duration requestTimeout, int maxConcurrent, Duration permitTimeout) {
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.permitTimeout = permitTimeout;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new JdkClientHttpRequest(httpClient, uri, httpMethod, requestTimeout, permits, permitTimeout);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link org.springframework.http.client.ClientHttpResponse} of a {@link JdkClientHttpRequest}. A gzip encoded body is
+ * decompressed while it is read. Closing the response closes its body and releases the request slot it holds.
+ */
+class JdkClientHttpResponse extends AbstractClientHttpResponse {
+
+    static final String GZIP = "gzip";
+
+    private final HttpResponse<InputStream> response;
+
+    private final Runnable onClose;
+
+    private final boolean gzip;
+
+    private HttpHeaders headers;
+
+    private InputStream body;
+
+    private boolean closed;
+
+    JdkClientHttpResponse(HttpResponse<InputStream> response, Runnable onClose) {
+        this.response = response;
+        this.onClose = onClose;
+        this.gzip = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).map(GZIP::equalsIgnoreCase).orElse(false);
+    }
+
+    @Override
+    public int getRawStatusCode() {
+        return response.statusCode();
+    }
+
+    @Override
+    public String getStatusText() {
+        HttpStatus status = HttpStatus.resolve(response.statusCode());
+        return status != null ? status.getReasonPhrase() : "";
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        if (headers == null) {
+            HttpHeaders result = new HttpHeaders();
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                // HTTP/2 pseudo headers such as :status are not headers of the response
+                if (!header.getKey().startsWith(":") && !(gzip && isEncodingHeader(header.getKey()))) {
+                    result.addAll(header.getKey(), header.getValue());
+                }
+            }
+            headers = HttpHeaders.readOnlyHttpHeaders(result);
+        }
+        return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null) {
+            body = gzip ? new GZIPInputStream(response.body()) : response.body();
+        }
+        return body;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            (body != null ? body : response.body()).close();
+        } catch (IOException e) {
+            // the body is released either way
+        } finally {
+            onClose.run();
+        }
+    }
+
+    /**
+     * The encoding and the length describe the compressed body, not the body that is read
+     */
+    private static boolean isEncodingHeader(String name) {
+        return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+    }
+}
@@ -6,29 +6,236 @@
 package com.cisco.msx.integration;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the pooled http clients used by the MSX rest templates. Each client owns its connection pool, whose
+ * connections are kept alive for the configured keep-alive unless the server specifies otherwise, are closed once
+ * their time to live is reached, and are validated before reuse after a period of inactivity. Expired and idle
+ * connections are closed by a background evictor thread of the client, until the client is closed or
+ * {@link #close()} closes every client of the factory.
+ * <p>
+ * With the {@link MsxHttpClientProperties.Engine#JDK} engine, {@link #createRequestFactory()} is built on a JDK
+ * http client which multiplexes the requests over HTTP/2 instead.
+ * <p>
+ * When destinations are configured, {@link #createRequestFactory()} creates a separate client for each of them with
+ * its own settings, and routes the requests by destination, see {@link DestinationRoutingClientHttpRequestFactory}.
+ */
+@Slf4j
 @RequiredArgsConstructor
 public class MsxHttpClientFactory {
 
+    /**
+     * Destination of the clients created with the default settings
+     */
+    public static final String DEFAULT_DESTINATION = "default";
+
     private final MsxHttpClientProperties msxHttpClientProperties;
 
+    private final Map<String, Set<PoolingHttpClientConnectionManager>> connectionManagers = new ConcurrentHashMap<>();
+
+    /**
+     * @return the request factory of the configured {@link MsxHttpClientProperties.Engine}, routing the requests by
+     * destination if destinations are configured
+     */
+    public ClientHttpRequestFactory createRequestFactory() {
+        ClientHttpRequestFactory defaultRequestFactory = createRequestFactory(DEFAULT_DESTINATION,
+                msxHttpClientProperties.getRequest(), msxHttpClientProperties.getConnections());
+        Map<String, MsxHttpClientProperties.DestinationProperties> destinations = msxHttpClientProperties.getDestinations();
+        if (destinations.isEmpty()) {
+            return defaultRequestFactory;
+        }
+
+        Map<String, ClientHttpRequestFactory> requestFactories = new HashMap<>();
+        destinations.forEach((destination, destinationProperties) ->
+                requestFactories.put(destination.toLowerCase(Locale.ROOT), createRequestFactory(destination,
+                        request(destinationProperties), connections(destinationProperties))));
+        return new DestinationRoutingClientHttpRequestFactory(defaultRequestFactory, requestFactories);
+    }
+
+    public java.net.http.HttpClient createJdkHttpClient() {
+        return createJdkHttpClient(msxHttpClientProperties.getRequest());
+    }
+
     public HttpClient createHttpClient() {
+        return createHttpClient(DEFAULT_DESTINATION, msxHttpClientProperties.getRequest(), msxHttpClientProperties.getConnections());
+    }
+
+    /**
+     * Close the clients created by this factory and not closed yet, stopping their evictor threads
+     */
+    public void close() {
+        for (PoolingHttpClientConnectionManager connectionManager : getConnectionManagers()) {
+            ((TrackedConnectionManager) connectionManager).closeClient();
+        }
+    }
+
+    /**
+     * @return {@link #DEFAULT_DESTINATION} and the configured destinations
+     */
+    public Set<String> getDestinations() {
+        Set<String> destinations = new LinkedHashSet<>();
+        destinations.add(DEFAULT_DESTINATION);
+        destinations.addAll(msxHttpClientProperties.getDestinations().keySet());
+        return destinations;
+    }
+
+    /**
+     * @return the connection pools of the clients created by this factory and not closed yet
+     */
+    public List<PoolingHttpClientConnectionManager> getConnectionManagers() {
+        return connectionManagers.values().stream().flatMap(Set::stream).collect(Collectors.toList());
+    }
+
+    /**
+     * @param destination the destination, or {@link #DEFAULT_DESTINATION}
+     * @return the connection pools of the clients created by this factory for the destination and not closed yet
+     */
+    public List<PoolingHttpClientConnectionManager> getConnectionManagers(String destination) {
+        return List.copyOf(connectionManagers.getOrDefault(destination, Collections.emptySet()));
+    }
+
+    private ClientHttpRequestFactory createRequestFactory(String destination,
+                                                          MsxHttpClientProperties.RequestConfigProperties request,
+                                                          MsxHttpClientProperties.ConnectionPoolProperties connections) {
+        if (msxHttpClientProperties.getEngine() == MsxHttpClientProperties.Engine.JDK) {
+            return new JdkClientHttpRequestFactory(createJdkHttpClient(request), request.getSocketTimeout(),
+                    connections.getMaxTotal(), request.getConnectionRequestTimeout());
+        }
+        return new HttpComponentsClientHttpRequestFactory(createHttpClient(destination, request, connections));
+    }
+
+    private java.net.http.HttpClient createJdkHttpClient(MsxHttpClientProperties.RequestConfigProperties request) {
+        java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_2);
+        if (!request.getConnectTimeout().isZero()) {
+            builder.connectTimeout(request.getConnectTimeout());
+        }
+        return builder.build();
+    }
+
+    private HttpClient createHttpClient(String destination, MsxHttpClientProperties.RequestConfigProperties request,
+                                        MsxHttpClientProperties.ConnectionPoolProperties connections) {
 
         HttpClientBuilder httpClientBuilder = HttpClients.custom();
 
         RequestConfig.Builder requestConfigBuilder = RequestConfig.custom()
-                .setSocketTimeout((int) msxHttpClientProperties.getRequest().getSocketTimeout().toMillis())
-                .setConnectTimeout((int) msxHttpClientProperties.getRequest().getConnectTimeout().toMillis())
-                .setConnectionRequestTimeout((int) msxHttpClientProperties.getRequest().getConnectionRequestTimeout().toMillis());
+                .setSocketTimeout((int) request.getSocketTimeout().toMillis())
+                .setConnectTimeout((int) request.getConnectTimeout().toMillis())
+                .setConnectionRequestTimeout((int) request.getConnectionRequestTimeout().toMillis());
+
+        long timeToLive = connections.getTimeToLive().toMillis();
+        TrackedConnectionManager connectionManager = new TrackedConnectionManager(destination, timeToLive);
+        connectionManager.setMaxTotal(connections.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(connections.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity((int) connections.getValidateAfterInactivity().toMillis());
+        connectionManagers.computeIfAbsent(destination, key -> ConcurrentHashMap.newKeySet()).add(connectionManager);
+
+        httpClientBuilder.evictExpiredConnections();
+        long maxIdleTime = connections.getMaxIdleTime().toMillis();
+        if (maxIdleTime > 0) {
+            httpClientBuilder.evictIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+        }
 
-        return httpClientBuilder
+        CloseableHttpClient httpClient = httpClientBuilder
                 .setDefaultRequestConfig(requestConfigBuilder.build())
-                .setMaxConnTotal(msxHttpClientProperties.getConnections().getMaxTotal())
-                .setMaxConnPerRoute(msxHttpClientProperties.getConnections().getMaxPerRoute())
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy(connections.getKeepAlive().toMillis()))
                 .build();
+        connectionManager.client = httpClient;
+        return httpClient;
+    }
+
+    private MsxHttpClientProperties.RequestConfigProperties request(MsxHttpClientProperties.DestinationProperties destination) {
+        MsxHttpClientProperties.RequestConfigProperties defaults = msxHttpClientProperties.getRequest();
+        MsxHttpClientProperties.RequestConfigProperties request = new MsxHttpClientProperties.RequestConfigProperties();
+        request.setConnectionRequestTimeout(orDefault(destination.getConnectionRequestTimeout(), defaults.getConnectionRequestTimeout()));
+        request.setConnectTimeout(orDefault(destination.getConnectTimeout(), defaults.getConnectTimeout()));
+        request.setSocketTimeout(orDefault(destination.getSocketTimeout(), defaults.getSocketTimeout()));
+        return request;
+    }
+
+    private MsxHttpClientProperties.ConnectionPoolProperties connections(MsxHttpClientProperties.DestinationProperties destination) {
+        MsxHttpClientProperties.ConnectionPoolProperties defaults = msxHttpClientProperties.getConnections();
+        MsxHttpClientProperties.ConnectionPoolProperties connections = new MsxHttpClientProperties.ConnectionPoolProperties();
+        connections.setMaxTotal(orDefault(destination.getMaxTotal(), defaults.getMaxTotal()));
+        connections.setMaxPerRoute(orDefault(destination.getMaxPerRoute(), defaults.getMaxPerRoute()));
+        connections.setKeepAlive(defaults.getKeepAlive());
+        connections.setMaxIdleTime(defaults.getMaxIdleTime());
+        connections.setTimeToLive(defaults.getTimeToLive());
+        connections.setValidateAfterInactivity(defaults.getValidateAfterInactivity());
+        return connections;
+    }
+
+    private static <T> T orDefault(T value, T defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAlive) {
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+        };
+    }
+
+    /**
+     * Connection pool which is no longer tracked once shut down, which closing its client does
+     */
+    private final class TrackedConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private final String destination;
+
+        private volatile CloseableHttpClient client;
+
+        private TrackedConnectionManager(String destination, long timeToLive) {
+            super(timeToLive > 0 ? timeToLive : -1, TimeUnit.MILLISECONDS);
+            this.destination = destination;
+        }
+
+        @Override
+        public void shutdown() {
+            try {
+                super.shutdown();
+            } finally {
+                Set<PoolingHttpClientConnectionManager> destinationConnectionManagers = connectionManagers.get(destination);
+                if (destinationConnectionManagers != null) {
+                    destinationConnectionManagers.remove(this);
+                }
+            }
+        }
+
+        private void closeClient() {
+            try {
+                if (client != null) {
+                    client.close();
+                } else {
+                    shutdown();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to close the http client of {}", destination, e);
+            }
+        }
     }
 }
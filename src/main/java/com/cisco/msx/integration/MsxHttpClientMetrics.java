@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Publishes the connection pool gauges of the http clients created by the {@link MsxHttpClientFactory}, summed over
+ * the pools of each destination: msx.http.client.connections tagged with the state leased, pending or available, and
+ * msx.http.client.connections.max. All gauges are tagged with the destination.
+ */
+@RequiredArgsConstructor
+public class MsxHttpClientMetrics implements MeterBinder {
+
+    public static final String CONNECTIONS = "msx.http.client.connections";
+
+    private final MsxHttpClientFactory msxHttpClientFactory;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String destination : msxHttpClientFactory.getDestinations()) {
+            gauge(registry, destination, "leased", "Connections leased to requests", PoolStats::getLeased);
+            gauge(registry, destination, "pending", "Requests waiting for a connection", PoolStats::getPending);
+            gauge(registry, destination, "available", "Idle connections kept in the pool", PoolStats::getAvailable);
+            Gauge.builder(CONNECTIONS + ".max", msxHttpClientFactory, factory -> sum(factory, destination, PoolStats::getMax))
+                    .description("Maximum number of connections")
+                    .tag("destination", destination)
+                    .register(registry);
+        }
+    }
+
+    private void gauge(MeterRegistry registry, String destination, String state, String description, ToIntFunction<PoolStats> stat) {
+        Gauge.builder(CONNECTIONS, msxHttpClientFactory, factory -> sum(factory, destination, stat))
+                .description(description)
+                .tag("destination", destination)
+                .tag("state", state)
+                .register(registry);
+    }
+
+    private static double sum(MsxHttpClientFactory factory, String destination, ToIntFunction<PoolStats> stat) {
+        int sum = 0;
+        for (PoolingHttpClientConnectionManager connectionManager : factory.getConnectionManagers(destination)) {
+            sum += stat.applyAsInt(connectionManager.getTotalStats());
+        }
+        return sum;
+    }
+}
@@ -12,15 +12,40 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Data
 @ConfigurationProperties(prefix = "integration.http-client")
 @Validated
 public class MsxHttpClientProperties {
 
+    /**
+     * The http client the integration rest templates are built on.
+     */
+    private Engine engine = Engine.HTTP_COMPONENTS;
     private RequestConfigProperties request = new RequestConfigProperties();
     private ConnectionPoolProperties connections = new ConnectionPoolProperties();
 
+    /**
+     * Overrides of the request and connection pool settings per destination, keyed by service name. Each destination
+     * gets its own connection pool, so a slow destination only uses up its own connections.
+     */
+    private Map<String, DestinationProperties> destinations = new LinkedHashMap<>();
+
+    public enum Engine {
+        /**
+         * Apache HttpClient 4 with its HTTP/1.1 connection pool
+         */
+        HTTP_COMPONENTS,
+        /**
+         * JDK {@link java.net.http.HttpClient}, multiplexing concurrent requests as HTTP/2 streams over a few
+         * connections when the server supports it. The connect and socket timeouts carry over, and the max total
+         * connections bounds the concurrent requests instead, see {@link JdkClientHttpRequestFactory}.
+         */
+        JDK
+    }
+
     /**
      * See {@link RequestConfig}
      */
@@ -53,5 +78,40 @@ public class MsxHttpClientProperties {
     public static class ConnectionPoolProperties {
         private int maxTotal = 100;
         private int maxPerRoute = 50;
+
+        /**
+         * How long a connection is kept alive when the server response does not specify it with a Keep-Alive header.
+         */
+        private Duration keepAlive = Duration.ofSeconds(30);
+
+        /**
+         * Idle connections are closed by the background evictor once they have been idle for longer than this.
+         * A value of zero disables the eviction of idle connections.
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        /**
+         * Total life time of a pooled connection, regardless of its keep-alive.
+         * A value of zero is interpreted as an infinite time to live.
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        /**
+         * Pooled connections that have been inactive for longer than this are validated before they are leased.
+         * A value of zero disables the validation.
+         */
+        private Duration validateAfterInactivity = Duration.ofSeconds(2);
+    }
+
+    /**
+     * Settings of a destination, the settings left unset are inherited from the request and connection pool settings.
+     */
+    @Data
+    public static class DestinationProperties {
+        private Duration connectionRequestTimeout;
+        private Duration connectTimeout;
+        private Duration socketTimeout;
+        private Integer maxTotal;
+        private Integer maxPerRoute;
     }
 }
@@ -5,14 +5,21 @@
 
 package com.cisco.msx.integration.config;
 
+import com.cisco.msx.integration.DestinationClientHttpRequestInterceptor;
 import com.cisco.msx.integration.MsxHttpClientFactory;
+import com.cisco.msx.integration.MsxHttpClientMetrics;
 import com.cisco.msx.integration.MsxHttpClientProperties;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.client.RestTemplateCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 @PropertySource("classpath:/defaults-rest.properties")
@@ -21,15 +28,32 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 })
 public class IntegrationConfig {
 
-    @Bean
+    @Bean(destroyMethod = "close")
     public MsxHttpClientFactory msxHttpClientFactory(MsxHttpClientProperties msxHttpClientProperties) {
         return new MsxHttpClientFactory(msxHttpClientProperties);
     }
 
     @Bean
-    public RestTemplateCustomizer msxRestTemplateCustomizer(MsxHttpClientFactory msxHttpClientFactory) {
+    public RestTemplateCustomizer msxRestTemplateCustomizer(MsxHttpClientFactory msxHttpClientFactory,
+                                                            MsxHttpClientProperties msxHttpClientProperties) {
         return restTemplate -> {
-            restTemplate.setRequestFactory(new HttpComponentsClientHttpRequestFactory(msxHttpClientFactory.createHttpClient()));
+            restTemplate.setRequestFactory(msxHttpClientFactory.createRequestFactory());
+            if (!msxHttpClientProperties.getDestinations().isEmpty()) {
+                // the destination is captured ahead of the load balancer interceptor, which is added last
+                List<ClientHttpRequestInterceptor> interceptors = new ArrayList<>(restTemplate.getInterceptors());
+                interceptors.add(0, new DestinationClientHttpRequestInterceptor());
+                restTemplate.setInterceptors(interceptors);
+            }
         };
     }
+
+    @Configuration
+    @ConditionalOnClass(MeterBinder.class)
+    public static class MetricsConfiguration {
+
+        @Bean
+        public MsxHttpClientMetrics msxHttpClientMetrics(MsxHttpClientFactory msxHttpClientFactory) {
+            return new MsxHttpClientMetrics(msxHttpClientFactory);
+        }
+    }
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The non-blocking client implementation of IDM security APIs, the counterpart of {@link IdmSecurityApi}. Calls are
+ * sent with the JDK {@link HttpClient} and no thread waits for the response.
+ * <p>
+ * Service names in the base url are resolved with the {@link LoadBalancerClient} the same way as for the load balanced
+ * RestTemplate of {@link IdmSecurityApi}. The check_token and inactive token caches, when given, are shared with
+ * {@link IdmSecurityApi}.
+ * Concurrent calls to the same endpoint with the same argument share one outstanding HTTP call.
+ * <p>
+ * When a circuit breaker is given, typically the one of {@link IdmSecurityApi}, calls go through it and fail fast while
+ * IDM is unavailable or slow. Failed check_token calls then fall back to the cached result past its time to live, up to
+ * the configured staleness, and failed tenant hierarchy calls fall back to the last-known-good result held in the
+ * tenant hierarchy cache, if given, the same way as for {@link IdmSecurityApi}.
+ * <p>
+ * Responses are requested gzip encoded, and check_token responses are decoded with the streaming
+ * {@link SecurityContextDetailsReader}.
+ */
+@Slf4j
+public class AsyncIdmSecurityApi {
+
+    private static final String GZIP = "gzip";
+
+    private final HttpClient httpClient;
+
+    private final ObjectMapper objectMapper;
+
+    private final IntegrationSecurityProperties integrationSecurityProperties;
+
+    private final LoadBalancerClient loadBalancerClient;
+
+    private final Cache checkTokenCache;
+
+    private final Cache inactiveTokenCache;
+
+    private final Cache tenantHierarchyCache;
+
+    private final IdmCircuitBreaker circuitBreaker;
+
+    private final long timeToLiveMillis;
+
+    private final long maxStalenessMillis;
+
+    private final Duration requestTimeout;
+
+    private final String authorization;
+
+    private final JavaType tenantSetType;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    private IdmSecurityMetrics metrics = IdmSecurityMetrics.NONE;
+
+    public AsyncIdmSecurityApi(HttpClient httpClient, ObjectMapper objectMapper, IntegrationSecurityProperties integrationSecurityProperties,
+                               @Nullable LoadBalancerClient loadBalancerClient, @Nullable Cache checkTokenCache,
+                               @Nullable Cache inactiveTokenCache) {
+        this(httpClient, objectMapper, integrationSecurityProperties, loadBalancerClient, checkTokenCache, inactiveTokenCache,
+                null, null);
+    }
+
+    public AsyncIdmSecurityApi(HttpClient httpClient, ObjectMapper objectMapper, IntegrationSecurityProperties integrationSecurityProperties,
+                               @Nullable LoadBalancerClient loadBalancerClient, @Nullable Cache checkTokenCache,
+                               @Nullable Cache inactiveTokenCache, @Nullable IdmCircuitBreaker circuitBreaker,
+                               @Nullable Cache tenantHierarchyCache) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.integrationSecurityProperties = integrationSecurityProperties;
+        this.loadBalancerClient = loadBalancerClient;
+        this.checkTokenCache = checkTokenCache;
+        this.inactiveTokenCache = inactiveTokenCache;
+        this.circuitBreaker = circuitBreaker;
+        this.tenantHierarchyCache = circuitBreaker != null ? tenantHierarchyCache : null;
+        this.timeToLiveMillis = checkTokenCache != null ?
+                integrationSecurityProperties.getCache().getCheckToken().getTimeToLive().toMillis() : 0;
+        this.maxStalenessMillis = circuitBreaker != null ?
+                integrationSecurityProperties.getCircuitBreaker().getCheckTokenMaxStaleness().toMillis() : 0;
+        this.requestTimeout = integrationSecurityProperties.getAsync().getRequestTimeout();
+        this.authorization = integrationSecurityProperties.getClientId() != null ?
+                "Basic " + Base64.getEncoder().encodeToString((integrationSecurityProperties.getClientId() + ":" +
+                        integrationSecurityProperties.getClientSecret()).getBytes(StandardCharsets.UTF_8)) : null;
+        this.tenantSetType = objectMapper.getTypeFactory().constructCollectionType(Set.class, String.class);
+    }
+
+    public CompletableFuture<SecurityContextDetails> checkToken(String token) {
+        if (checkTokenCache == null && inactiveTokenCache == null) {
+            return fetchSecurityContextDetails(token);
+        }
+
+        String key = TokenDigest.sha256(token);
+        long now = System.currentTimeMillis();
+        if (checkTokenCache != null) {
+            CachedSecurityContextDetails cached = checkTokenCache.get(key, CachedSecurityContextDetails.class);
+            if (cached != null && !cached.isExpired(now)) {
+                return CompletableFuture.completedFuture(cached.getSecurityContextDetails());
+            }
+        }
+        if (inactiveTokenCache != null) {
+            SecurityContextDetails inactive = inactiveTokenCache.get(key, SecurityContextDetails.class);
+            if (inactive != null) {
+                return CompletableFuture.completedFuture(inactive);
+            }
+        }
+
+        return fetchSecurityContextDetails(token).handle((securityContextDetails, e) -> {
+            if (e != null) {
+                return staleOrThrow(key, now, e);
+            }
+            if (checkTokenCache != null) {
+                CachedSecurityContextDetails fetched = CachedSecurityContextDetails.of(securityContextDetails, now, timeToLiveMillis,
+                        maxStalenessMillis);
+                if (fetched == null) {
+                    checkTokenCache.evict(key);
+                } else {
+                    checkTokenCache.put(key, fetched);
+                }
+            }
+            if (inactiveTokenCache != null && securityContextDetails != null && !securityContextDetails.isActive()) {
+                inactiveTokenCache.put(key, securityContextDetails);
+            }
+            return securityContextDetails;
+        });
+    }
+
+    public CompletableFuture<String> getTenantRoot() {
+        return fetchTenantHierarchy(IdmSecurityApi.TENANT_HIERARCHY_ROOT, null, () ->
+                send(HttpRequest.newBuilder().GET(), integrationSecurityProperties.getEndpoints().getTenantHierarchyRoot(),
+                        null, null, body -> new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+    }
+
+    public CompletableFuture<String> getTenantParent(String tenantId) {
+        return fetchTenantHierarchy(IdmSecurityApi.TENANT_HIERARCHY_PARENT, tenantId, () ->
+                send(HttpRequest.newBuilder().GET(), integrationSecurityProperties.getEndpoints().getTenantHierarchyParent(),
+                        "tenantId", tenantId, body -> new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+    }
+
+    public CompletableFuture<Set<String>> getTenantChildren(String tenantId) {
+        return fetchTenantHierarchy(IdmSecurityApi.TENANT_HIERARCHY_CHILDREN, tenantId, () ->
+                send(HttpRequest.newBuilder().GET(), integrationSecurityProperties.getEndpoints().getTenantHierarchyChildren(),
+                        "tenantId", tenantId, body -> objectMapper.readValue(body, tenantSetType)));
+    }
+
+    public CompletableFuture<Set<String>> getTenantAncestors(String tenantId) {
+        return fetchTenantHierarchy(IdmSecurityApi.TENANT_HIERARCHY_ANCESTORS, tenantId, () ->
+                send(HttpRequest.newBuilder().GET(), integrationSecurityProperties.getEndpoints().getTenantHierarchyAncestors(),
+                        "tenantId", tenantId, body -> objectMapper.readValue(body, tenantSetType)));
+    }
+
+    /**
+     * @param metrics records the calls made to IDM, the coalesced calls are recorded once and counted apart
+     */
+    public void setMetrics(IdmSecurityMetrics metrics) {
+        this.metrics = metrics != null ? metrics : IdmSecurityMetrics.NONE;
+        this.metrics.bindCoalescedCalls("async", singleFlight);
+    }
+
+    /**
+     * @return the single flight coalescing concurrent calls of this client, with the number of coalesced calls per endpoint
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    private CompletableFuture<SecurityContextDetails> fetchSecurityContextDetails(String token) {
+        return call(IdmSecurityApi.CHECK_TOKEN, token, () ->
+                send(HttpRequest.newBuilder().POST(HttpRequest.BodyPublishers.noBody()), integrationSecurityProperties.getEndpoints().getCheckToken(),
+                        "token", token, SecurityContextDetailsReader::read));
+    }
+
+    private SecurityContextDetails staleOrThrow(String key, long now, Throwable e) {
+        CachedSecurityContextDetails stale = checkTokenCache != null ? checkTokenCache.get(key, CachedSecurityContextDetails.class) : null;
+        if (isFailure(e) && stale != null && stale.isStaleUsable(now)) {
+            log.debug("IDM unavailable, serving stale check_token result", e);
+            return stale.getSecurityContextDetails();
+        }
+        throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> fetchTenantHierarchy(String endpoint, String tenantId, Supplier<CompletableFuture<T>> request) {
+        if (tenantHierarchyCache == null) {
+            return call(endpoint, tenantId, request);
+        }
+
+        String key = endpoint + ":" + tenantId;
+        return call(endpoint, tenantId, request).handle((result, e) -> {
+            if (e == null) {
+                tenantHierarchyCache.put(key, result);
+                return result;
+            }
+            Cache.ValueWrapper lastKnownGood = isFailure(e) ? tenantHierarchyCache.get(key) : null;
+            if (lastKnownGood == null) {
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            log.debug("IDM unavailable, serving last-known-good {} result", endpoint, e);
+            return (T) lastKnownGood.get();
+        });
+    }
+
+    private <T> CompletableFuture<T> call(String endpoint, String argument, Supplier<CompletableFuture<T>> request) {
+        return singleFlight.executeAsync(endpoint, argument, () -> circuitBreaker != null ?
+                circuitBreaker.executeAsync(endpoint, () -> metrics.recordAsync(endpoint, request)) :
+                metrics.recordAsync(endpoint, request));
+    }
+
+    /**
+     * @return true if the call failed because IDM is unavailable and the circuit breaker is enabled
+     */
+    private boolean isFailure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return circuitBreaker != null && cause instanceof RuntimeException && IdmCircuitBreaker.isFailure((RuntimeException) cause);
+    }
+
+    private <T> CompletableFuture<T> send(HttpRequest.Builder requestBuilder, String path, String parameter, String value,
+                                          BodyDecoder<T> decoder) {
+        String url = integrationSecurityProperties.getServer().getBaseUrl() + path;
+        if (parameter != null) {
+            url += "?" + parameter + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8);
+        }
+
+        requestBuilder.uri(resolve(URI.create(url))).timeout(requestTimeout);
+        if (authorization != null) {
+            requestBuilder.header(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        requestBuilder.header(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        return httpClient.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    checkStatus(response);
+                    byte[] body = response.body();
+                    return body == null || body.length == 0 ? null : decode(response, decoder);
+                });
+    }
+
+    private static <T> T decode(HttpResponse<byte[]> response, BodyDecoder<T> decoder) {
+        boolean gzip = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).map(GZIP::equalsIgnoreCase).orElse(false);
+        try (InputStream body = gzip ? new GZIPInputStream(new ByteArrayInputStream(response.body())) :
+                new ByteArrayInputStream(response.body())) {
+            return decoder.decode(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private URI resolve(URI uri) {
+        if (loadBalancerClient == null) {
+            return uri;
+        }
+        ServiceInstance serviceInstance = loadBalancerClient.choose(uri.getHost());
+        if (serviceInstance == null) {
+            throw new IllegalStateException("No instances available for " + uri.getHost());
+        }
+        return loadBalancerClient.reconstructURI(serviceInstance, uri);
+    }
+
+    private static void checkStatus(HttpResponse<byte[]> response) {
+        int statusCode = response.statusCode();
+        if (statusCode >= 200 && statusCode < 300) {
+            return;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        HttpStatus status = HttpStatus.resolve(statusCode);
+        if (status == null) {
+            throw new UnknownHttpStatusCodeException(statusCode, "", headers, response.body(), StandardCharsets.UTF_8);
+        } else if (status.is4xxClientError()) {
+            throw HttpClientErrorException.create(status, status.getReasonPhrase(), headers, response.body(), StandardCharsets.UTF_8);
+        } else {
+            throw HttpServerErrorException.create(status, status.getReasonPhrase(), headers, response.body(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyDecoder<T> {
+        T decode(InputStream body) throws IOException;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.Getter;
+
+/**
+ * A check_token result held in the introspection cache, together with the time it was loaded, the time it expires and
+ * the time until which it may still be served while IDM is unavailable
+ */
+@Getter
+public class CachedSecurityContextDetails {
+
+    private final SecurityContextDetails securityContextDetails;
+
+    /**
+     * epoch millis when the result was fetched from IDM
+     */
+    private final long loadedAt;
+
+    /**
+     * epoch millis after which the result must not be served
+     */
+    private final long expiresAt;
+
+    /**
+     * epoch millis after which the result must not be served even while IDM is unavailable, not before expiresAt
+     */
+    private final long staleUntil;
+
+    public CachedSecurityContextDetails(SecurityContextDetails securityContextDetails, long loadedAt, long expiresAt) {
+        this(securityContextDetails, loadedAt, expiresAt, expiresAt);
+    }
+
+    public CachedSecurityContextDetails(SecurityContextDetails securityContextDetails, long loadedAt, long expiresAt, long staleUntil) {
+        this.securityContextDetails = securityContextDetails;
+        this.loadedAt = loadedAt;
+        this.expiresAt = expiresAt;
+        this.staleUntil = Math.max(staleUntil, expiresAt);
+    }
+
+    /**
+     * @param securityContextDetails check_token result
+     * @param now epoch millis when the result was fetched from IDM
+     * @param timeToLiveMillis maximum time the result may be cached
+     * @return the cache entry, or null if the result is inactive or already expired and must not be cached
+     */
+    public static CachedSecurityContextDetails of(SecurityContextDetails securityContextDetails, long now, long timeToLiveMillis) {
+        return of(securityContextDetails, now, timeToLiveMillis, 0);
+    }
+
+    /**
+     * @param securityContextDetails check_token result
+     * @param now epoch millis when the result was fetched from IDM
+     * @param timeToLiveMillis maximum time the result may be cached
+     * @param maxStalenessMillis maximum time past its expiry the result may be served while IDM is unavailable
+     * @return the cache entry, or null if the result is inactive or already expired and must not be cached
+     */
+    public static CachedSecurityContextDetails of(SecurityContextDetails securityContextDetails, long now, long timeToLiveMillis,
+                                                  long maxStalenessMillis) {
+        if (securityContextDetails == null || !securityContextDetails.isActive()) {
+            return null;
+        }
+
+        long exp = securityContextDetails.getExp() * 1000L;
+        long expiresAt = Math.min(exp, now + timeToLiveMillis);
+        if (expiresAt <= now) {
+            return null;
+        }
+        return new CachedSecurityContextDetails(securityContextDetails, now, expiresAt, Math.min(exp, expiresAt + maxStalenessMillis));
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    public boolean isStaleUsable(long now) {
+        return now < staleUntil;
+    }
+
+    public boolean isRefreshDue(long now, long refreshAfterMillis) {
+        return refreshAfterMillis > 0 && now - loadedAt >= refreshAfterMillis;
+    }
+}
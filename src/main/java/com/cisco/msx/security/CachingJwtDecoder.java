@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JwtDecoder} caching the tokens decoded by its delegate, so the signature of a token is verified and its
+ * claims are parsed once rather than on every request carrying it.
+ * <p>
+ * Entries are keyed by {@link TokenDigest#sha256(String)} and expire at the earlier of the token's exp and the
+ * configured time to live. Tokens without exp are not cached, and tokens the delegate rejects are never cached, so
+ * they go through the full validation every time.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+
+    private final long timeToLiveMillis;
+
+    private final Clock clock;
+
+    private final Cache<String, Jwt> cache;
+
+    public CachingJwtDecoder(JwtDecoder delegate, MsxJwtCacheProperties msxJwtCacheProperties) {
+        this(delegate, msxJwtCacheProperties, Clock.systemUTC());
+    }
+
+    CachingJwtDecoder(JwtDecoder delegate, MsxJwtCacheProperties msxJwtCacheProperties, Clock clock) {
+        this.delegate = delegate;
+        this.timeToLiveMillis = msxJwtCacheProperties.getTimeToLive().toMillis();
+        this.clock = clock;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(msxJwtCacheProperties.getMaxSize())
+                .expireAfter(new JwtExpiry())
+                .build();
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String key = TokenDigest.sha256(token);
+        Instant now = clock.instant();
+        Jwt cached = cache.getIfPresent(key);
+        if (cached != null && now.isBefore(cached.getExpiresAt())) {
+            return cached;
+        }
+
+        Jwt jwt = delegate.decode(token);
+        if (jwt.getExpiresAt() != null && now.isBefore(jwt.getExpiresAt())) {
+            cache.put(key, jwt);
+        }
+        return jwt;
+    }
+
+    private class JwtExpiry implements Expiry<String, Jwt> {
+
+        @Override
+        public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+            long remaining = Math.min(jwt.getExpiresAt().toEpochMilli() - clock.millis(), timeToLiveMillis);
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remaining, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, jwt, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -12,4 +12,12 @@ public class Constants {
     public final static String ACCESS_ALL_TENANTS = "ACCESS_ALL_TENANTS";
 
     public final static String CAFFEINE_CACHE_MANAGER = "caffeineCacheManager";
+
+    public final static String CHECK_TOKEN_CACHE = "msxSecurityCheckToken";
+
+    public final static String INACTIVE_TOKEN_CACHE = "msxSecurityInactiveToken";
+
+    public final static String INVALID_TENANT_CACHE = "msxSecurityInvalidTenant";
+
+    public final static String TENANT_HIERARCHY_CACHE = "msxSecurityTenantHierarchy";
 }
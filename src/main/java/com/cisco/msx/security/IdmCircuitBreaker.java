@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker of the calls made to IDM. After the configured number of consecutive failures the circuit opens and
+ * calls fail fast with {@link IdmCircuitOpenException} instead of waiting for IDM. Once the open duration has passed a
+ * single trial call is let through: the circuit closes again if it succeeds, and stays open for another open duration
+ * otherwise.
+ * <p>
+ * Client errors are answers from IDM and do not count as failures. Calls answered after the slow call threshold count
+ * as failures although their result is returned, so the circuit also opens while IDM is slow rather than only once
+ * calls time out.
+ */
+@Slf4j
+public class IdmCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openDurationMillis;
+
+    private final long slowCallThresholdMillis;
+
+    private final LongSupplier clock;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile long openedAt;
+
+    public IdmCircuitBreaker(IntegrationSecurityProperties.CircuitBreakerProperties circuitBreakerProperties) {
+        this(circuitBreakerProperties, System::currentTimeMillis);
+    }
+
+    IdmCircuitBreaker(IntegrationSecurityProperties.CircuitBreakerProperties circuitBreakerProperties, LongSupplier clock) {
+        this.failureThreshold = Math.max(circuitBreakerProperties.getFailureThreshold(), 1);
+        this.openDurationMillis = circuitBreakerProperties.getOpenDuration().toMillis();
+        this.slowCallThresholdMillis = circuitBreakerProperties.getSlowCallThreshold() != null ?
+                circuitBreakerProperties.getSlowCallThreshold().toMillis() : 0;
+        this.clock = clock;
+    }
+
+    /**
+     * Execute the call unless the circuit is open
+     * @param endpoint endpoint name
+     * @param call the call to execute
+     * @return the result of the call
+     * @throws IdmCircuitOpenException if the circuit is open
+     */
+    public <T> T execute(String endpoint, Supplier<T> call) {
+        if (!tryAcquire()) {
+            throw new IdmCircuitOpenException(endpoint);
+        }
+
+        // the outcome is recorded whatever the call throws, so a trial call always leaves the half open state
+        long startedAt = clock.getAsLong();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = isSlow(startedAt);
+            return result;
+        } catch (RuntimeException e) {
+            failed = isFailure(e);
+            throw e;
+        } finally {
+            if (failed) {
+                onFailure();
+            } else {
+                onSuccess();
+            }
+        }
+    }
+
+    /**
+     * Start the asynchronous call unless the circuit is open. The outcome is recorded when the returned future completes.
+     * @param endpoint endpoint name
+     * @param call the call to start
+     * @return the future result of the call, failed with {@link IdmCircuitOpenException} if the circuit is open
+     */
+    public <T> CompletableFuture<T> executeAsync(String endpoint, Supplier<CompletableFuture<T>> call) {
+        if (!tryAcquire()) {
+            return CompletableFuture.failedFuture(new IdmCircuitOpenException(endpoint));
+        }
+
+        long startedAt = clock.getAsLong();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException | Error e) {
+            record(e, startedAt);
+            throw e;
+        }
+        return future.whenComplete((result, e) -> record(e, startedAt));
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @param e exception of a call made to IDM
+     * @return true if IDM is considered unavailable, false for the answers of IDM such as client errors
+     */
+    public static boolean isFailure(RuntimeException e) {
+        return !(e instanceof HttpClientErrorException);
+    }
+
+    private void record(Throwable e, long startedAt) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        boolean failed = cause != null ? !(cause instanceof RuntimeException) || isFailure((RuntimeException) cause) :
+                isSlow(startedAt);
+        if (failed) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    private boolean isSlow(long startedAt) {
+        if (slowCallThresholdMillis <= 0 || clock.getAsLong() - startedAt <= slowCallThresholdMillis) {
+            return false;
+        }
+        log.debug("Slow IDM call counted as a failure");
+        return true;
+    }
+
+    private boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        // only one trial call is let through once the open duration has passed
+        return current == State.OPEN && clock.getAsLong() - openedAt >= openDurationMillis
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+            log.info("IDM circuit breaker closed");
+        }
+    }
+
+    private void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt = clock.getAsLong();
+            if (state.getAndSet(State.OPEN) != State.OPEN) {
+                log.warn("IDM circuit breaker opened, calls fail fast for {} ms", openDurationMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Thrown by {@link IdmCircuitBreaker} when a call is not made because the circuit is open
+ */
+public class IdmCircuitOpenException extends ResourceAccessException {
+
+    public IdmCircuitOpenException(String endpoint) {
+        super("IDM circuit breaker is open, " + endpoint + " call not permitted");
+    }
+}
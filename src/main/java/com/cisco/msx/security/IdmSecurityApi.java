@@ -5,45 +5,307 @@
 
 package com.cisco.msx.security;
 
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.lang.Nullable;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
- * The client implementation of IDM security APIs
+ * The client implementation of IDM security APIs.
+ * <p>
+ * When a check_token cache is given, active results are cached by the digest of the token until the earlier of the
+ * token's exp and the configured time to live, and are refreshed in the background once they reach the configured
+ * refresh-after age, on the given refresh executor that {@link #close()} shuts down. Inactive results are never cached
+ * with the active ones; when an inactive token cache is given, they are remembered there for its own, short time to
+ * live so repeated calls with the same inactive token do not reach IDM.
+ * <p>
+ * Concurrent calls to the same endpoint with the same argument are coalesced into one outstanding HTTP call, see
+ * {@link #getSingleFlight()} for the number of coalesced calls.
+ * <p>
+ * When the circuit breaker is enabled, calls go through an {@link IdmCircuitBreaker} and fail fast while IDM is
+ * unavailable or slow. Failed check_token calls then fall back to the cached result past its time to live, up to the
+ * configured staleness and never past the token's exp, and failed tenant hierarchy calls fall back to the
+ * last-known-good result held in the tenant hierarchy cache, if given. Without such a result the failure is thrown.
+ * <p>
+ * See {@link AsyncIdmSecurityApi} for the non-blocking counterpart.
  */
-@RequiredArgsConstructor
+@Slf4j
 public class IdmSecurityApi {
 
+    public static final String CHECK_TOKEN = "checkToken";
+    public static final String TENANT_HIERARCHY_ROOT = "tenantHierarchyRoot";
+    public static final String TENANT_HIERARCHY_PARENT = "tenantHierarchyParent";
+    public static final String TENANT_HIERARCHY_CHILDREN = "tenantHierarchyChildren";
+    public static final String TENANT_HIERARCHY_ANCESTORS = "tenantHierarchyAncestors";
+
     private final RestTemplate basicAuthIdmRestTemplate;
 
     private final IntegrationSecurityProperties integrationSecurityProperties;
 
+    private final Cache checkTokenCache;
+
+    private final Cache inactiveTokenCache;
+
+    private final Cache tenantHierarchyCache;
+
+    private final Executor refreshExecutor;
+
+    private final IdmCircuitBreaker circuitBreaker;
+
+    private final long maxStalenessMillis;
+
+    private final long timeToLiveMillis;
+
+    private final long refreshAfterMillis;
+
+    private final Set<String> refreshingTokens = ConcurrentHashMap.newKeySet();
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    private IdmSecurityMetrics metrics = IdmSecurityMetrics.NONE;
+
+    public IdmSecurityApi(RestTemplate basicAuthIdmRestTemplate, IntegrationSecurityProperties integrationSecurityProperties) {
+        this(basicAuthIdmRestTemplate, integrationSecurityProperties, null, null, null);
+    }
+
+    public IdmSecurityApi(RestTemplate basicAuthIdmRestTemplate, IntegrationSecurityProperties integrationSecurityProperties,
+                          @Nullable Cache checkTokenCache, @Nullable Executor refreshExecutor) {
+        this(basicAuthIdmRestTemplate, integrationSecurityProperties, checkTokenCache, refreshExecutor, null);
+    }
+
+    public IdmSecurityApi(RestTemplate basicAuthIdmRestTemplate, IntegrationSecurityProperties integrationSecurityProperties,
+                          @Nullable Cache checkTokenCache, @Nullable Executor refreshExecutor, @Nullable Cache inactiveTokenCache) {
+        this(basicAuthIdmRestTemplate, integrationSecurityProperties, checkTokenCache, refreshExecutor, inactiveTokenCache, null);
+    }
+
+    public IdmSecurityApi(RestTemplate basicAuthIdmRestTemplate, IntegrationSecurityProperties integrationSecurityProperties,
+                          @Nullable Cache checkTokenCache, @Nullable Executor refreshExecutor, @Nullable Cache inactiveTokenCache,
+                          @Nullable Cache tenantHierarchyCache) {
+        this.basicAuthIdmRestTemplate = basicAuthIdmRestTemplate;
+        this.integrationSecurityProperties = integrationSecurityProperties;
+        this.checkTokenCache = checkTokenCache;
+        this.inactiveTokenCache = inactiveTokenCache;
+        this.refreshExecutor = refreshExecutor;
+        IntegrationSecurityProperties.CircuitBreakerProperties circuitBreakerProperties = integrationSecurityProperties.getCircuitBreaker();
+        if (circuitBreakerProperties != null && circuitBreakerProperties.isEnabled()) {
+            this.circuitBreaker = new IdmCircuitBreaker(circuitBreakerProperties);
+            this.tenantHierarchyCache = tenantHierarchyCache;
+            this.maxStalenessMillis = circuitBreakerProperties.getCheckTokenMaxStaleness().toMillis();
+        } else {
+            this.circuitBreaker = null;
+            this.tenantHierarchyCache = null;
+            this.maxStalenessMillis = 0;
+        }
+        if (checkTokenCache != null) {
+            IntegrationSecurityProperties.CheckTokenCacheProperties cacheProperties = integrationSecurityProperties.getCache().getCheckToken();
+            this.timeToLiveMillis = cacheProperties.getTimeToLive().toMillis();
+            this.refreshAfterMillis = refreshExecutor != null ? cacheProperties.getRefreshAfter().toMillis() : 0;
+        } else {
+            this.timeToLiveMillis = 0;
+            this.refreshAfterMillis = 0;
+        }
+    }
+
     public SecurityContextDetails checkToken(String token) {
-        SecurityContextDetails securityContextDetails = basicAuthIdmRestTemplate.postForObject(integrationSecurityProperties.getServer().getBaseUrl() +
-                        integrationSecurityProperties.getEndpoints().getCheckToken() + "?token={token}",
-                null, SecurityContextDetails.class, token);
+        if (checkTokenCache == null && inactiveTokenCache == null) {
+            return fetchSecurityContextDetails(token);
+        }
+
+        String key = TokenDigest.sha256(token);
+        long now = System.currentTimeMillis();
+        if (checkTokenCache != null) {
+            CachedSecurityContextDetails cached = checkTokenCache.get(key, CachedSecurityContextDetails.class);
+            if (cached != null && !cached.isExpired(now)) {
+                if (cached.isRefreshDue(now, refreshAfterMillis)) {
+                    refreshAsync(key, token);
+                }
+                return cached.getSecurityContextDetails();
+            }
+        }
+        if (inactiveTokenCache != null) {
+            SecurityContextDetails inactive = inactiveTokenCache.get(key, SecurityContextDetails.class);
+            if (inactive != null) {
+                return inactive;
+            }
+        }
+
+        SecurityContextDetails securityContextDetails;
+        try {
+            securityContextDetails = fetchSecurityContextDetails(token);
+        } catch (RuntimeException e) {
+            CachedSecurityContextDetails stale = checkTokenCache != null ?
+                    checkTokenCache.get(key, CachedSecurityContextDetails.class) : null;
+            if (circuitBreaker != null && IdmCircuitBreaker.isFailure(e) && stale != null && stale.isStaleUsable(now)) {
+                log.debug("IDM unavailable, serving stale check_token result", e);
+                return stale.getSecurityContextDetails();
+            }
+            throw e;
+        }
+        cacheSecurityContextDetails(key, securityContextDetails, now);
         return securityContextDetails;
     }
 
     public String getTenantRoot() {
-        return basicAuthIdmRestTemplate.getForObject(integrationSecurityProperties.getServer().getBaseUrl() +
-                        integrationSecurityProperties.getEndpoints().getTenantHierarchyRoot(), String.class);
+        return fetchTenantHierarchy(TENANT_HIERARCHY_ROOT, null, this::requestTenantRoot);
     }
 
     public String getTenantParent(String tenantId) {
-        return basicAuthIdmRestTemplate.getForObject(integrationSecurityProperties.getServer().getBaseUrl() +
-                integrationSecurityProperties.getEndpoints().getTenantHierarchyParent() + "?tenantId={tenantId}", String.class, tenantId);
+        return fetchTenantHierarchy(TENANT_HIERARCHY_PARENT, tenantId, () ->
+                basicAuthIdmRestTemplate.getForObject(integrationSecurityProperties.getServer().getBaseUrl() +
+                        integrationSecurityProperties.getEndpoints().getTenantHierarchyParent() + "?tenantId={tenantId}", String.class, tenantId));
     }
 
     public Set<String> getTenantChildren(String tenantId) {
-        return basicAuthIdmRestTemplate.getForObject(integrationSecurityProperties.getServer().getBaseUrl() +
-                integrationSecurityProperties.getEndpoints().getTenantHierarchyChildren() + "?tenantId={tenantId}", Set.class, tenantId);
+        return fetchTenantHierarchy(TENANT_HIERARCHY_CHILDREN, tenantId, () -> requestTenantChildren(tenantId));
     }
 
+    @SuppressWarnings("unchecked")
     public Set<String> getTenantAncestors(String tenantId) {
+        return fetchTenantHierarchy(TENANT_HIERARCHY_ANCESTORS, tenantId, () ->
+                basicAuthIdmRestTemplate.getForObject(integrationSecurityProperties.getServer().getBaseUrl() +
+                        integrationSecurityProperties.getEndpoints().getTenantHierarchyAncestors() + "?tenantId={tenantId}", Set.class, tenantId));
+    }
+
+    /**
+     * Get the root tenant for a walk of the whole hierarchy, see {@link TenantHierarchyIndex}. Unlike
+     * {@link #getTenantRoot()}, the call is neither coalesced nor recorded, and its result is not kept as the
+     * last-known-good result, so a walk does not evict the results the RBAC checks fall back to. It still fails fast
+     * while the circuit breaker is open.
+     * @return the root tenantId
+     */
+    public String walkTenantRoot() {
+        return walk(TENANT_HIERARCHY_ROOT, this::requestTenantRoot);
+    }
+
+    /**
+     * Get the children of a tenant for a walk of the whole hierarchy, see {@link #walkTenantRoot()}
+     * @param tenantId tenantId to look up
+     * @return the children of the tenant
+     */
+    public Set<String> walkTenantChildren(String tenantId) {
+        return walk(TENANT_HIERARCHY_CHILDREN, () -> requestTenantChildren(tenantId));
+    }
+
+    /**
+     * @param metrics records the calls made to IDM, the coalesced calls are recorded once and counted apart
+     */
+    public void setMetrics(IdmSecurityMetrics metrics) {
+        this.metrics = metrics != null ? metrics : IdmSecurityMetrics.NONE;
+        this.metrics.bindCoalescedCalls("blocking", singleFlight);
+    }
+
+    /**
+     * Shut down the check_token refresh executor, if it is an ExecutorService. Refreshes already queued are dropped.
+     */
+    public void close() {
+        if (refreshExecutor instanceof ExecutorService) {
+            ((ExecutorService) refreshExecutor).shutdownNow();
+        }
+    }
+
+    /**
+     * @return the circuit breaker of this client, or null if it is not enabled
+     */
+    public IdmCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the single flight coalescing concurrent calls of this client, with the number of coalesced calls per endpoint
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    private SecurityContextDetails fetchSecurityContextDetails(String token) {
+        return call(CHECK_TOKEN, token, () ->
+                basicAuthIdmRestTemplate.postForObject(integrationSecurityProperties.getServer().getBaseUrl() +
+                                integrationSecurityProperties.getEndpoints().getCheckToken() + "?token={token}",
+                        null, SecurityContextDetails.class, token));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T fetchTenantHierarchy(String endpoint, String tenantId, Supplier<T> request) {
+        if (tenantHierarchyCache == null) {
+            return call(endpoint, tenantId, request);
+        }
+
+        String key = endpoint + ":" + tenantId;
+        T result;
+        try {
+            result = call(endpoint, tenantId, request);
+        } catch (RuntimeException e) {
+            Cache.ValueWrapper lastKnownGood = IdmCircuitBreaker.isFailure(e) ? tenantHierarchyCache.get(key) : null;
+            if (lastKnownGood == null) {
+                throw e;
+            }
+            log.debug("IDM unavailable, serving last-known-good {} result", endpoint, e);
+            return (T) lastKnownGood.get();
+        }
+        tenantHierarchyCache.put(key, result);
+        return result;
+    }
+
+    private String requestTenantRoot() {
+        return basicAuthIdmRestTemplate.getForObject(integrationSecurityProperties.getServer().getBaseUrl() +
+                integrationSecurityProperties.getEndpoints().getTenantHierarchyRoot(), String.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> requestTenantChildren(String tenantId) {
         return basicAuthIdmRestTemplate.getForObject(integrationSecurityProperties.getServer().getBaseUrl() +
-                integrationSecurityProperties.getEndpoints().getTenantHierarchyAncestors() + "?tenantId={tenantId}", Set.class, tenantId);
+                integrationSecurityProperties.getEndpoints().getTenantHierarchyChildren() + "?tenantId={tenantId}", Set.class, tenantId);
+    }
+
+    private <T> T walk(String endpoint, Supplier<T> request) {
+        return circuitBreaker != null ? circuitBreaker.execute(endpoint, request) : request.get();
+    }
+
+    private <T> T call(String endpoint, String argument, Supplier<T> request) {
+        return singleFlight.execute(endpoint, argument, () -> circuitBreaker != null ?
+                circuitBreaker.execute(endpoint, () -> metrics.record(endpoint, request)) :
+                metrics.record(endpoint, request));
+    }
+
+    private void cacheSecurityContextDetails(String key, SecurityContextDetails securityContextDetails, long now) {
+        if (checkTokenCache != null) {
+            CachedSecurityContextDetails cached = CachedSecurityContextDetails.of(securityContextDetails, now, timeToLiveMillis,
+                    maxStalenessMillis);
+            if (cached == null) {
+                checkTokenCache.evict(key);
+            } else {
+                checkTokenCache.put(key, cached);
+            }
+        }
+        if (inactiveTokenCache != null && securityContextDetails != null && !securityContextDetails.isActive()) {
+            inactiveTokenCache.put(key, securityContextDetails);
+        }
+    }
+
+    private void refreshAsync(String key, String token) {
+        if (!refreshingTokens.add(key)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    cacheSecurityContextDetails(key, fetchSecurityContextDetails(token), System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    log.debug("Failed to refresh cached check_token result", e);
+                } finally {
+                    refreshingTokens.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingTokens.remove(key);
+        }
     }
 }
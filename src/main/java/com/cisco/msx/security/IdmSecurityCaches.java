@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.lang.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the Caffeine caches backing {@link IdmSecurityApi} and {@link TokenBasedRBACUtils}, which record their
+ * statistics for the cache metrics. It is deliberately not a {@link org.springframework.cache.CacheManager}: the
+ * caches are private to the IDM clients, and a cache manager bean would switch off the cache auto-configuration of
+ * the application.
+ */
+public final class IdmSecurityCaches {
+
+    private final Map<String, CaffeineCache> caches = new LinkedHashMap<>();
+
+    public IdmSecurityCaches(IntegrationSecurityProperties integrationSecurityProperties) {
+        IntegrationSecurityProperties.CacheProperties cacheProperties = integrationSecurityProperties.getCache();
+        register(Constants.CHECK_TOKEN_CACHE, checkTokenCache(cacheProperties.getCheckToken()));
+        register(Constants.INACTIVE_TOKEN_CACHE, negativeCache(cacheProperties.getInactiveToken()));
+        register(Constants.INVALID_TENANT_CACHE, negativeCache(cacheProperties.getInvalidTenant()));
+        register(Constants.TENANT_HIERARCHY_CACHE, tenantHierarchyCache(integrationSecurityProperties.getCircuitBreaker()));
+    }
+
+    /**
+     * @param name name of the cache, one of the cache names of {@link Constants}
+     * @return the cache, or null if there is no such cache
+     */
+    @Nullable
+    public CaffeineCache getCache(String name) {
+        return caches.get(name);
+    }
+
+    public Collection<CaffeineCache> getCaches() {
+        return Collections.unmodifiableCollection(caches.values());
+    }
+
+    private void register(String name, Cache<Object, Object> cache) {
+        caches.put(name, new CaffeineCache(name, cache));
+    }
+
+    /**
+     * Cache of {@link CachedSecurityContextDetails} keyed by {@link TokenDigest#sha256(String)}. Every entry is evicted
+     * at its {@link CachedSecurityContextDetails#getStaleUntil()}.
+     */
+    public static Cache<Object, Object> checkTokenCache(IntegrationSecurityProperties.CheckTokenCacheProperties properties) {
+        return Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(new CachedSecurityContextDetailsExpiry())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Cache of negative results, every entry is evicted once the configured time to live has passed since it was written
+     */
+    public static Cache<Object, Object> negativeCache(IntegrationSecurityProperties.NegativeCacheProperties properties) {
+        return Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Cache of last-known-good tenant hierarchy results, every entry is evicted once the maximum staleness has passed
+     * since it was written
+     */
+    public static Cache<Object, Object> tenantHierarchyCache(IntegrationSecurityProperties.CircuitBreakerProperties properties) {
+        return Caffeine.newBuilder()
+                .maximumSize(properties.getTenantHierarchyMaxSize())
+                .expireAfterWrite(properties.getTenantHierarchyMaxStaleness())
+                .recordStats()
+                .build();
+    }
+
+    private static class CachedSecurityContextDetailsExpiry implements Expiry<Object, Object> {
+
+        @Override
+        public long expireAfterCreate(Object key, Object value, long currentTime) {
+            if (value instanceof CachedSecurityContextDetails) {
+                long remaining = ((CachedSecurityContextDetails) value).getStaleUntil() - System.currentTimeMillis();
+                return TimeUnit.MILLISECONDS.toNanos(Math.max(remaining, 0));
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.Value;
+import org.springframework.lang.Nullable;
+
+/**
+ * Eviction of an entry, or of every entry when the key is null, from one of the IDM security caches on every replica
+ */
+@Value
+public class IdmSecurityInvalidation {
+
+    String cacheName;
+
+    @Nullable
+    Object key;
+
+    public static IdmSecurityInvalidation evict(String cacheName, Object key) {
+        return new IdmSecurityInvalidation(cacheName, key);
+    }
+
+    public static IdmSecurityInvalidation clear(String cacheName) {
+        return new IdmSecurityInvalidation(cacheName, null);
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts {@link IdmSecurityInvalidation}s to every replica, typically over a pub/sub channel, so the local caches
+ * of all replicas are evicted together. Listeners are notified of the invalidations published by every replica,
+ * including their own.
+ */
+public interface IdmSecurityInvalidationBroadcaster {
+
+    void publish(IdmSecurityInvalidation invalidation);
+
+    void addListener(Consumer<IdmSecurityInvalidation> listener);
+}
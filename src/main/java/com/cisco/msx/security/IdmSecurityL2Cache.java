@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Shared second level of the IDM security caches, typically backed by a cache cluster every replica talks to. The
+ * local {@link IdmSecurityCaches} stay the first level, see {@link TwoTierCache}, so a result
+ * loaded from IDM by any replica is found by the others without calling IDM again.
+ * <p>
+ * Keys are the keys of the local caches, i.e. token digests and tenantIds, and values are the cached objects such as
+ * {@link CachedSecurityContextDetails}; implementations serialize them as they need. Implementations must be thread
+ * safe and should treat their own failures as misses rather than throw.
+ */
+public interface IdmSecurityL2Cache {
+
+    /**
+     * @param cacheName name of the local cache
+     * @param key       key of the entry
+     * @return the value, or null if there is none or it has expired
+     */
+    @Nullable
+    Object get(String cacheName, Object key);
+
+    /**
+     * @param cacheName  name of the local cache
+     * @param key        key of the entry
+     * @param value      value of the entry
+     * @param timeToLive time after which the entry must no longer be returned
+     */
+    void put(String cacheName, Object key, Object value, Duration timeToLive);
+
+    void evict(String cacheName, Object key);
+
+    void clear(String cacheName);
+}
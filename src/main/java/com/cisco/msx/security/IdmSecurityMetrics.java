@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Records the calls made by {@link IdmSecurityApi} and {@link AsyncIdmSecurityApi} to IDM, by endpoint and outcome, and
+ * the calls they coalesced.
+ * See {@link MicrometerIdmSecurityMetrics}.
+ */
+public interface IdmSecurityMetrics {
+
+    /**
+     * Records nothing
+     */
+    IdmSecurityMetrics NONE = new IdmSecurityMetrics() {
+        @Override
+        public <T> T record(String endpoint, Supplier<T> call) {
+            return call.get();
+        }
+
+        @Override
+        public <T> CompletableFuture<T> recordAsync(String endpoint, Supplier<CompletableFuture<T>> call) {
+            return call.get();
+        }
+    };
+
+    /**
+     * @param endpoint endpoint name, see the endpoint constants of {@link IdmSecurityApi}
+     * @param call the blocking call to IDM
+     * @return the result of the call
+     */
+    <T> T record(String endpoint, Supplier<T> call);
+
+    /**
+     * @param endpoint endpoint name, see the endpoint constants of {@link IdmSecurityApi}
+     * @param call the call to IDM, recorded when the returned future completes
+     * @return the future result of the call
+     */
+    <T> CompletableFuture<T> recordAsync(String endpoint, Supplier<CompletableFuture<T>> call);
+
+    /**
+     * Publish the number of calls coalesced by the single flight of an IDM client, does nothing by default
+     * @param client name of the client: blocking, async or reactive
+     * @param singleFlight the single flight of the client
+     */
+    default void bindCoalescedCalls(String client, SingleFlight singleFlight) {
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Reference {@link IdmSecurityInvalidationBroadcaster} notifying the listeners in memory, synchronously. Sharing one
+ * instance between several {@link TwoTierIdmSecurityCaches} stands for the replicas of a cluster, e.g. in tests.
+ */
+@Slf4j
+public class InMemoryIdmSecurityInvalidationBroadcaster implements IdmSecurityInvalidationBroadcaster {
+
+    private final List<Consumer<IdmSecurityInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(IdmSecurityInvalidation invalidation) {
+        for (Consumer<IdmSecurityInvalidation> listener : listeners) {
+            try {
+                listener.accept(invalidation);
+            } catch (RuntimeException e) {
+                log.warn("Failed to apply {}", invalidation, e);
+            }
+        }
+    }
+
+    @Override
+    public void addListener(Consumer<IdmSecurityInvalidation> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reference {@link IdmSecurityL2Cache} holding the entries in memory. Sharing one instance between several
+ * {@link TwoTierIdmSecurityCaches} stands for a cache cluster shared by several replicas, e.g. in tests.
+ */
+public class InMemoryIdmSecurityL2Cache implements IdmSecurityL2Cache {
+
+    private final Map<String, Map<Object, Entry>> caches = new ConcurrentHashMap<>();
+
+    private final Clock clock;
+
+    public InMemoryIdmSecurityL2Cache() {
+        this(Clock.systemUTC());
+    }
+
+    InMemoryIdmSecurityL2Cache(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    @Nullable
+    public Object get(String cacheName, Object key) {
+        Map<Object, Entry> cache = caches.get(cacheName);
+        Entry entry = cache != null ? cache.get(key) : null;
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= clock.millis()) {
+            cache.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public void put(String cacheName, Object key, Object value, Duration timeToLive) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            evict(cacheName, key);
+            return;
+        }
+        long expiresAt = clock.millis() + timeToLive.toMillis();
+        caches.computeIfAbsent(cacheName, name -> new ConcurrentHashMap<>()).put(key, new Entry(value, expiresAt));
+    }
+
+    @Override
+    public void evict(String cacheName, Object key) {
+        Map<Object, Entry> cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.remove(key);
+        }
+    }
+
+    @Override
+    public void clear(String cacheName) {
+        caches.remove(cacheName);
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expiresAt;
+
+        private Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
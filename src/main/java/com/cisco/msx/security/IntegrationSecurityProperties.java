@@ -9,6 +9,8 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
+
 @Data
 @ConfigurationProperties(prefix = "integration.security")
 @Validated
@@ -30,6 +32,16 @@ public class IntegrationSecurityProperties {
 
     private AuthEndpointProperties endpoints = new AuthEndpointProperties();
 
+    private CacheProperties cache = new CacheProperties();
+
+    private TenantHierarchyIndexProperties tenantHierarchyIndex = new TenantHierarchyIndexProperties();
+
+    private LocalClaimsProperties localClaims = new LocalClaimsProperties();
+
+    private AsyncProperties async = new AsyncProperties();
+
+    private CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
     @Data
     public static class AuthServerProperties {
         /**
@@ -55,4 +67,140 @@ public class IntegrationSecurityProperties {
         private String tenantHierarchyAncestors = DEFAULT_TENANT_HIERARCHY_ANCESTORS_PATH;
     }
 
+    @Data
+    public static class CacheProperties {
+        private CheckTokenCacheProperties checkToken = new CheckTokenCacheProperties();
+
+        /**
+         * negative cache of inactive check_token results
+         */
+        private NegativeCacheProperties inactiveToken = new NegativeCacheProperties();
+
+        /**
+         * negative cache of the tenantIds found invalid
+         */
+        private NegativeCacheProperties invalidTenant = new NegativeCacheProperties();
+    }
+
+    @Data
+    public static class CheckTokenCacheProperties {
+        /**
+         * whether active check_token results are cached
+         */
+        private boolean enabled = true;
+
+        /**
+         * maximum number of cached check_token results
+         */
+        private long maxSize = 10000;
+
+        /**
+         * upper bound of how long a result is cached; an entry never outlives the token's exp
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        /**
+         * age after which a cached result is refreshed in the background when it is read. Zero disables refresh-ahead
+         */
+        private Duration refreshAfter = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class NegativeCacheProperties {
+        /**
+         * whether the negative results are cached
+         */
+        private boolean enabled = true;
+
+        /**
+         * maximum number of cached negative results
+         */
+        private long maxSize = 10000;
+
+        /**
+         * how long a negative result is cached
+         */
+        private Duration timeToLive = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class TenantHierarchyIndexProperties {
+        /**
+         * whether the tenant hierarchy is replicated in memory to answer parent, ancestor and validity lookups
+         */
+        private boolean enabled = false;
+
+        /**
+         * delay between the end of one rebuild of the index and the start of the next
+         */
+        private Duration refreshInterval = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class LocalClaimsProperties {
+        /**
+         * whether the SecurityContextDetails are built from the claims of the verified JWT when it carries permissions,
+         * assigned_tenants and tenant_id, instead of calling check_token
+         */
+        private boolean enabled = false;
+    }
+
+    @Data
+    public static class AsyncProperties {
+        /**
+         * whether the non-blocking AsyncIdmSecurityApi is created
+         */
+        private boolean enabled = false;
+
+        /**
+         * connect timeout of the non-blocking http client
+         */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        /**
+         * timeout of each call made by the non-blocking http client
+         */
+        private Duration requestTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class CircuitBreakerProperties {
+        /**
+         * whether IdmSecurityApi calls go through a circuit breaker and fall back to last-known-good results
+         */
+        private boolean enabled = false;
+
+        /**
+         * number of consecutive failed calls after which the circuit opens
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * how long calls fail fast once the circuit has opened, before a trial call is let through
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * calls answered after this duration count as failures, so the circuit opens while IDM is slow; keep it well
+         * below the socket timeout, 0 to disable
+         */
+        private Duration slowCallThreshold = Duration.ofSeconds(5);
+
+        /**
+         * how long past its cache time to live a check_token result may still be served when IDM is unavailable,
+         * never past the token's exp
+         */
+        private Duration checkTokenMaxStaleness = Duration.ofMinutes(5);
+
+        /**
+         * how long a tenant hierarchy result may be served when IDM is unavailable
+         */
+        private Duration tenantHierarchyMaxStaleness = Duration.ofHours(1);
+
+        /**
+         * maximum number of last-known-good tenant hierarchy results
+         */
+        private long tenantHierarchyMaxSize = 10000;
+    }
+
 }
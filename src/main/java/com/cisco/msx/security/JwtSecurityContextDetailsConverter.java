@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The converter builds the {@link SecurityContextDetails} from the claims of a verified {@link Jwt}, so RBAC checks do
+ * not need the IDM check_token call. The token must carry the claims permissions, assigned_tenants and tenant_id,
+ * otherwise the converter returns null and the details have to be obtained from IDM.
+ */
+public class JwtSecurityContextDetailsConverter implements Converter<Jwt, SecurityContextDetails> {
+
+    static final String PERMISSIONS = "permissions";
+    static final String ASSIGNED_TENANTS = "assigned_tenants";
+    static final String TENANT_ID = "tenant_id";
+
+    /**
+     * Build the {@link SecurityContextDetails} from the given {@link Jwt}.
+     *
+     * @param jwt The verified {@link Jwt} token
+     * @return The {@link SecurityContextDetails}, or null if the token does not carry the required claims
+     */
+    @Override
+    public SecurityContextDetails convert(Jwt jwt) {
+        if (!jwt.containsClaim(PERMISSIONS) || !jwt.containsClaim(ASSIGNED_TENANTS) || !jwt.containsClaim(TENANT_ID)) {
+            return null;
+        }
+
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setActive(true);
+        securityContextDetails.setIss(jwt.getClaimAsString("iss"));
+        securityContextDetails.setSub(jwt.getSubject());
+        securityContextDetails.setAud(jwt.getAudience() != null ? String.join(" ", jwt.getAudience()) : null);
+        securityContextDetails.setExp(toEpochSecond(jwt.getExpiresAt()));
+        securityContextDetails.setIat(toEpochSecond(jwt.getIssuedAt()));
+        securityContextDetails.setAuthTime(toEpochSecond(jwt.getClaim("auth_time")));
+        securityContextDetails.setJti(jwt.getId());
+        securityContextDetails.setGivenName(jwt.getClaimAsString("given_name"));
+        securityContextDetails.setFamilyName(jwt.getClaimAsString("family_name"));
+        securityContextDetails.setEmail(jwt.getClaimAsString("email"));
+        securityContextDetails.setLocale(jwt.getClaimAsString("locale"));
+        securityContextDetails.setScope(toList(jwt.getClaim("scope")));
+        securityContextDetails.setClientId(jwt.getClaimAsString("client_id"));
+        securityContextDetails.setUsername(jwt.getClaimAsString("username"));
+        securityContextDetails.setUserId(jwt.getClaimAsString("user_id"));
+        securityContextDetails.setAccountType(jwt.getClaimAsString("account_type"));
+        securityContextDetails.setCurrency(jwt.getClaimAsString("currency"));
+        securityContextDetails.setTenantId(jwt.getClaimAsString(TENANT_ID));
+        securityContextDetails.setTenantName(jwt.getClaimAsString("tenant_name"));
+        securityContextDetails.setProviderId(jwt.getClaimAsString("provider_id"));
+        securityContextDetails.setProviderName(jwt.getClaimAsString("provider_name"));
+        securityContextDetails.setProviderEmail(jwt.getClaimAsString("provider_email"));
+        securityContextDetails.setAssignedTenants(toList(jwt.getClaim(ASSIGNED_TENANTS)));
+        securityContextDetails.setRoles(toList(jwt.getClaim("roles")));
+        securityContextDetails.setPermissions(toList(jwt.getClaim(PERMISSIONS)));
+        return securityContextDetails;
+    }
+
+    private static int toEpochSecond(Object value) {
+        if (value instanceof Instant) {
+            return (int) ((Instant) value).getEpochSecond();
+        } else if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return 0;
+    }
+
+    private static List<String> toList(Object value) {
+        if (value instanceof String) {
+            if (StringUtils.hasText((String) value)) {
+                return Arrays.asList(((String) value).split(" "));
+            } else {
+                return Collections.emptyList();
+            }
+        } else if (value instanceof Collection) {
+            return ((Collection<?>) value).stream().map(String::valueOf).collect(Collectors.toList());
+        }
+
+        return Collections.emptyList();
+    }
+}
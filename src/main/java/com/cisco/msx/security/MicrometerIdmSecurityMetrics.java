@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer implementation of {@link IdmSecurityMetrics}. Every call to IDM is timed by the timer
+ * msx.security.idm.requests, and every failed call increments the counter msx.security.idm.errors. Both are tagged
+ * with the endpoint and the outcome: SUCCESS, CLIENT_ERROR, SERVER_ERROR or ERROR for failures without a response.
+ * The calls that joined a call already in flight are counted by msx.security.idm.coalesced, tagged with the endpoint
+ * and the client.
+ */
+@RequiredArgsConstructor
+public class MicrometerIdmSecurityMetrics implements IdmSecurityMetrics {
+
+    public static final String REQUESTS = "msx.security.idm.requests";
+    public static final String ERRORS = "msx.security.idm.errors";
+    public static final String COALESCED = "msx.security.idm.coalesced";
+
+    private static final List<String> ENDPOINTS = List.of(IdmSecurityApi.CHECK_TOKEN, IdmSecurityApi.TENANT_HIERARCHY_ROOT,
+            IdmSecurityApi.TENANT_HIERARCHY_PARENT, IdmSecurityApi.TENANT_HIERARCHY_CHILDREN, IdmSecurityApi.TENANT_HIERARCHY_ANCESTORS);
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * The meters of every endpoint and outcome, registered on first use
+     */
+    private final Map<Tags, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<Tags, Counter> errors = new ConcurrentHashMap<>();
+
+    @Override
+    public <T> T record(String endpoint, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            T result = call.get();
+            stop(sample, endpoint, null);
+            return result;
+        } catch (RuntimeException | Error e) {
+            stop(sample, endpoint, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> recordAsync(String endpoint, Supplier<CompletableFuture<T>> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException | Error e) {
+            stop(sample, endpoint, e);
+            throw e;
+        }
+        return future.whenComplete((result, e) -> stop(sample, endpoint, e));
+    }
+
+    @Override
+    public void bindCoalescedCalls(String client, SingleFlight singleFlight) {
+        for (String endpoint : ENDPOINTS) {
+            FunctionCounter.builder(COALESCED, singleFlight, calls -> calls.getCoalescedCount(endpoint))
+                    .description("Calls to IDM that joined a call already in flight")
+                    .tags("endpoint", endpoint, "client", client)
+                    .register(meterRegistry);
+        }
+    }
+
+    private void stop(Timer.Sample sample, String endpoint, Throwable e) {
+        String outcome = outcome(e);
+        Tags tags = Tags.of("endpoint", endpoint, "outcome", outcome);
+        sample.stop(timers.computeIfAbsent(tags, key -> Timer.builder(REQUESTS)
+                .description("Calls made to IDM")
+                .tags(key)
+                .register(meterRegistry)));
+        if (e != null) {
+            errors.computeIfAbsent(tags, key -> Counter.builder(ERRORS)
+                    .description("Failed calls made to IDM")
+                    .tags(key)
+                    .register(meterRegistry))
+                    .increment();
+        }
+    }
+
+    private static String outcome(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e == null) {
+            return "SUCCESS";
+        }
+        if (e instanceof HttpStatusCodeException) {
+            return ((HttpStatusCodeException) e).getStatusCode().is4xxClientError() ? "CLIENT_ERROR" : "SERVER_ERROR";
+        }
+        return "ERROR";
+    }
+}
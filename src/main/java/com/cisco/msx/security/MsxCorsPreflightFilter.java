@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Servlet filter answering CORS preflight requests before they reach the security filter chain and the
+ * DispatcherServlet. Other requests, including the actual CORS requests, go through unchanged.
+ * <p>
+ * The response follows the {@code DefaultCorsProcessor} of Spring for the same {@link MsxSecurityCorsProperties}. The
+ * allowed origins, methods and headers are resolved to hash sets once, and the header values that do not depend on the
+ * request are rendered once, so a preflight costs a few lookups and header writes.
+ */
+public class MsxCorsPreflightFilter extends OncePerRequestFilter {
+
+    private static final String ALL = "*";
+
+    private static final List<String> DEFAULT_METHODS = List.of("GET", "HEAD");
+
+    private static final String VARY = String.join(", ", HttpHeaders.ORIGIN,
+            HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+
+    private static final byte[] INVALID_CORS_REQUEST = "Invalid CORS request".getBytes(StandardCharsets.UTF_8);
+
+    private final boolean anyOrigin;
+
+    private final Set<String> allowedOrigins = new HashSet<>();
+
+    private final boolean anyMethod;
+
+    private final Set<String> allowedMethods = new HashSet<>();
+
+    private final String allowMethods;
+
+    private final boolean anyHeader;
+
+    private final Set<String> allowedHeaders = new HashSet<>();
+
+    private final String allowCredentials;
+
+    private final String maxAge;
+
+    public MsxCorsPreflightFilter(MsxSecurityCorsProperties msxSecurityCorsProperties) {
+        List<String> origins = msxSecurityCorsProperties.getAllowedOrigins();
+        this.anyOrigin = origins != null && origins.contains(ALL);
+        if (origins != null) {
+            origins.forEach(origin -> allowedOrigins.add(origin.toLowerCase(Locale.ROOT)));
+        }
+
+        List<String> methods = CollectionUtils.isEmpty(msxSecurityCorsProperties.getAllowedMethods()) ?
+                DEFAULT_METHODS : msxSecurityCorsProperties.getAllowedMethods();
+        this.anyMethod = methods.contains(ALL);
+        this.allowedMethods.addAll(methods);
+        this.allowMethods = String.join(",", methods);
+
+        List<String> headers = msxSecurityCorsProperties.getAllowedHeaders();
+        this.anyHeader = headers != null && headers.contains(ALL);
+        if (headers != null) {
+            headers.forEach(header -> allowedHeaders.add(header.toLowerCase(Locale.ROOT)));
+        }
+
+        this.allowCredentials = msxSecurityCorsProperties.isAllowCredentials() ? "true" : null;
+        this.maxAge = msxSecurityCorsProperties.getMaxAge() != null ?
+                Long.toString(msxSecurityCorsProperties.getMaxAge().getSeconds()) : null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!CorsUtils.isPreFlightRequest(request) || !CorsUtils.isCorsRequest(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.VARY, VARY);
+        String allowOrigin = checkOrigin(request.getHeader(HttpHeaders.ORIGIN));
+        String allowMethod = checkMethod(request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD));
+        String allowHeaders = checkHeaders(request.getHeaders(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS));
+        if (allowOrigin == null || allowMethod == null || allowHeaders == null) {
+            response.setStatus(HttpStatus.FORBIDDEN.value());
+            response.getOutputStream().write(INVALID_CORS_REQUEST);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, allowOrigin);
+        response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, allowMethod);
+        if (!allowHeaders.isEmpty()) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, allowHeaders);
+        }
+        if (allowCredentials != null) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, allowCredentials);
+        }
+        if (maxAge != null) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_MAX_AGE, maxAge);
+        }
+        response.setStatus(HttpStatus.OK.value());
+    }
+
+    private String checkOrigin(String origin) {
+        if (!StringUtils.hasText(origin)) {
+            return null;
+        }
+        if (anyOrigin) {
+            return allowCredentials != null ? origin : ALL;
+        }
+        return allowedOrigins.contains(origin.toLowerCase(Locale.ROOT)) ? origin : null;
+    }
+
+    private String checkMethod(String method) {
+        if (anyMethod) {
+            return method;
+        }
+        return allowedMethods.contains(method) ? allowMethods : null;
+    }
+
+    /**
+     * @return the allowed requested headers, an empty string if none was requested, or null if none is allowed
+     */
+    private String checkHeaders(Enumeration<String> requestHeaders) {
+        List<String> allowed = new ArrayList<>();
+        boolean requested = false;
+        while (requestHeaders.hasMoreElements()) {
+            for (String header : StringUtils.tokenizeToStringArray(requestHeaders.nextElement(), ",")) {
+                requested = true;
+                if (anyHeader || allowedHeaders.contains(header.toLowerCase(Locale.ROOT))) {
+                    allowed.add(header);
+                }
+            }
+        }
+        if (!requested) {
+            return "";
+        }
+        return allowed.isEmpty() ? null : String.join(", ", allowed);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.lang.Nullable;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.expression.DenyAllPermissionEvaluator;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.access.expression.SecurityExpressionRoot;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import reactor.core.publisher.Mono;
+
+/**
+ * Authorizes WebFlux requests with a security.resources rule expression, the reactive counterpart of the web
+ * expressions of the servlet configuration. The expression is parsed once by {@link MsxSecurityExpressionParser} and
+ * evaluated against a {@link SecurityExpressionRoot} of the authentication, or of an anonymous authentication when the
+ * request is not authenticated. The variables of the matching rule and the exchange are available as expression
+ * variables.
+ */
+public class MsxExpressionReactiveAuthorizationManager implements ReactiveAuthorizationManager<AuthorizationContext> {
+
+    private static final Authentication ANONYMOUS = new AnonymousAuthenticationToken("anonymous", "anonymousUser",
+            AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+    private static final AuthenticationTrustResolver TRUST_RESOLVER = new AuthenticationTrustResolverImpl();
+
+    private static final PermissionEvaluator PERMISSION_EVALUATOR = new DenyAllPermissionEvaluator();
+
+    private final Expression expression;
+
+    private final String rolePrefix;
+
+    private final RoleHierarchy roleHierarchy;
+
+    private final BeanResolver beanResolver;
+
+    public MsxExpressionReactiveAuthorizationManager(String expression, MsxSecurityExpressionParser parser, String rolePrefix,
+                                                    @Nullable RoleHierarchy roleHierarchy, @Nullable BeanResolver beanResolver) {
+        this.expression = parser.parseExpression(expression);
+        this.rolePrefix = rolePrefix;
+        this.roleHierarchy = roleHierarchy;
+        this.beanResolver = beanResolver;
+    }
+
+    @Override
+    public Mono<AuthorizationDecision> check(Mono<Authentication> authentication, AuthorizationContext context) {
+        return authentication
+                .defaultIfEmpty(ANONYMOUS)
+                .map(auth -> new AuthorizationDecision(ExpressionUtils.evaluateAsBoolean(expression, evaluationContext(auth, context))));
+    }
+
+    private StandardEvaluationContext evaluationContext(Authentication authentication, AuthorizationContext context) {
+        SecurityExpressionRoot root = new SecurityExpressionRoot(authentication) {
+        };
+        root.setTrustResolver(TRUST_RESOLVER);
+        root.setPermissionEvaluator(PERMISSION_EVALUATOR);
+        root.setDefaultRolePrefix(rolePrefix);
+        root.setRoleHierarchy(roleHierarchy);
+
+        StandardEvaluationContext evaluationContext = new StandardEvaluationContext(root);
+        evaluationContext.setVariables(context.getVariables());
+        evaluationContext.setVariable("exchange", context.getExchange());
+        if (beanResolver != null) {
+            evaluationContext.setBeanResolver(beanResolver);
+        }
+        return evaluationContext;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("security.jwt-cache")
+@Validated
+public class MsxJwtCacheProperties {
+
+    /**
+     * whether the decoded JWTs are cached, see {@link CachingJwtDecoder}
+     */
+    private boolean enabled = false;
+
+    /**
+     * maximum number of cached JWTs
+     */
+    private long maxSize = 10000;
+
+    /**
+     * maximum time a decoded JWT is cached, entries never outlive the token's exp
+     */
+    private Duration timeToLive = Duration.ofMinutes(5);
+}
@@ -5,24 +5,32 @@
 
 package com.cisco.msx.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
-import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 
 /**
  * The converter extracts the claims authorities and scope and converts them into Collection<GrantedAuthority>.
+ * <p>
+ * The set of distinct authorities is small, so every {@link GrantedAuthority} is created once and shared by the
+ * collections of the tokens carrying it. The shared authorities are bounded, the least recently used being evicted.
  */
 public class MsxJwtGrantedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
 
     private static final String DEFAULT_AUTHORITY_PREFIX = "SCOPE_";
 
+    private static final int MAX_CACHED = 4096;
+
+    private final Cache<String, GrantedAuthority> authorities = Caffeine.newBuilder().maximumSize(MAX_CACHED).build();
+
+    private final Cache<String, GrantedAuthority> scopeAuthorities = Caffeine.newBuilder().maximumSize(MAX_CACHED).build();
+
     /**
      * Extract {@link GrantedAuthority}s from the given {@link Jwt}.
      *
@@ -32,36 +40,35 @@ public class MsxJwtGrantedAuthoritiesConverter implements Converter<Jwt, Collect
     @Override
     public Collection<GrantedAuthority> convert(Jwt jwt) {
         Collection<GrantedAuthority> grantedAuthorities = new ArrayList<>();
-        for (String authority : getAuthorities(jwt)) {
-            grantedAuthorities.add(new SimpleGrantedAuthority(authority));
-        }
-        for (String scope : getScopes(jwt)) {
-            grantedAuthorities.add(new SimpleGrantedAuthority(this.DEFAULT_AUTHORITY_PREFIX + scope));
-        }
+        addAuthorities(grantedAuthorities, jwt.getClaim("authorities"), authorities, "");
+        addAuthorities(grantedAuthorities, jwt.getClaim("scope"), scopeAuthorities, DEFAULT_AUTHORITY_PREFIX);
         return grantedAuthorities;
     }
 
-    private Collection<String> getAuthorities(Jwt jwt) {
-        Object authorities = jwt.getClaim("authorities");
-        return convertAuthorities(authorities);
-    }
-
-    private Collection<String> getScopes(Jwt jwt) {
-        Object authorities = jwt.getClaim("scope");
-        return convertAuthorities(authorities);
-    }
-
-    private Collection<String> convertAuthorities(Object authorities) {
-        if (authorities instanceof String) {
-            if (StringUtils.hasText((String) authorities)) {
-                return Arrays.asList(((String) authorities).split(" "));
-            } else {
-                return Collections.emptyList();
+    private static void addAuthorities(Collection<GrantedAuthority> grantedAuthorities, Object claim,
+                                       Cache<String, GrantedAuthority> cache, String prefix) {
+        if (claim instanceof String) {
+            // space separated values, split without the intermediate array
+            String values = (String) claim;
+            int start = 0;
+            while (start < values.length()) {
+                int end = values.indexOf(' ', start);
+                if (end < 0) {
+                    end = values.length();
+                }
+                if (end > start) {
+                    grantedAuthorities.add(authority(values.substring(start, end), cache, prefix));
+                }
+                start = end + 1;
+            }
+        } else if (claim instanceof Collection) {
+            for (Object value : (Collection<?>) claim) {
+                grantedAuthorities.add(authority(String.valueOf(value), cache, prefix));
             }
-        } else if (authorities instanceof Collection) {
-            return (Collection<String>) authorities;
         }
+    }
 
-        return Collections.emptyList();
+    private static GrantedAuthority authority(String value, Cache<String, GrantedAuthority> cache, String prefix) {
+        return cache.get(value, key -> new SimpleGrantedAuthority(prefix.isEmpty() ? key : prefix + key));
     }
 }
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.lang.Nullable;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.security.web.util.matcher.RequestVariablesExtractor;
+import org.springframework.util.AntPathMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled dispatcher of the {@link MsxOAuthResourceProperties} rules. It finds the first rule, in configuration order,
+ * with a pattern matching the request, with the same semantics as one
+ * {@link org.springframework.security.web.util.matcher.AntPathRequestMatcher} or
+ * {@link org.springframework.security.web.util.matcher.RegexRequestMatcher} per pattern evaluated in turn.
+ * <p>
+ * Ant patterns are indexed in a trie by their literal leading path segments, so only the patterns sharing a prefix
+ * with the request path are evaluated. Regex patterns are combined into one alternation evaluated in a single pass,
+ * except for the patterns with back references which would be renumbered by the combination.
+ * <p>
+ * The matcher itself matches the requests matched by any rule, {@link #ruleMatcher(int)} gives the matcher of a single
+ * rule. The first matching rule is computed once per request path and remembered in a request attribute. Matching
+ * only depends on the path and the query string, see {@link #firstMatch(String, String)}, so the same rules apply to
+ * reactive requests as well.
+ */
+public class MsxResourceRuleMatcher implements RequestMatcher {
+
+    static final int NO_MATCH = -1;
+
+    private static final String MATCH_ALL = "/**";
+
+    private static final AntPathMatcher ANT_PATH_MATCHER = new AntPathMatcher();
+
+    static {
+        ANT_PATH_MATCHER.setTrimTokens(false);
+    }
+
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+    private final String attributeName = MsxResourceRuleMatcher.class.getName() + "@" + Integer.toHexString(hashCode());
+
+    private final AntNode antRoot = new AntNode();
+
+    private final boolean hasAntPatterns;
+
+    private final Pattern combinedRegex;
+
+    private final int[] combinedRegexRules;
+
+    private final int[] combinedRegexGroups;
+
+    private final List<RegexPattern> separateRegexPatterns = new ArrayList<>();
+
+    public MsxResourceRuleMatcher(List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules) {
+        boolean antPatterns = false;
+        StringBuilder regex = new StringBuilder();
+        List<Integer> regexRules = new ArrayList<>();
+        List<Integer> regexGroups = new ArrayList<>();
+        int group = 0;
+        for (int rule = 0; rule < rules.size(); rule++) {
+            MsxOAuthResourceProperties.ResourceSecurityRuleProperties properties = rules.get(rule);
+            if (properties.getPatterns() == null || properties.getPatterns().isEmpty()) {
+                continue;
+            }
+            for (String pattern : properties.getPatterns()) {
+                if (properties.getType() == MsxOAuthResourceProperties.ResourceSecurityRuleProperties.PatternType.regex) {
+                    Pattern compiled = Pattern.compile(pattern);
+                    int groupCount = compiled.matcher("").groupCount();
+                    if (!isCombinable(pattern, groupCount)) {
+                        separateRegexPatterns.add(new RegexPattern(rule, compiled));
+                        continue;
+                    }
+                    // every alternative ends with an empty group telling which one matched
+                    regex.append(regex.length() > 0 ? "|" : "").append(alternative(pattern));
+                    group += groupCount + 1;
+                    regexRules.add(rule);
+                    regexGroups.add(group);
+                } else {
+                    antRoot.insert(pattern, new AntPattern(rule, pattern));
+                    antPatterns = true;
+                }
+            }
+        }
+        this.hasAntPatterns = antPatterns;
+        this.combinedRegex = regex.length() > 0 ? Pattern.compile(regex.toString()) : null;
+        this.combinedRegexRules = regexRules.stream().mapToInt(Integer::intValue).toArray();
+        this.combinedRegexGroups = regexGroups.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return true if any rule matches the request
+     */
+    @Override
+    public boolean matches(HttpServletRequest request) {
+        return firstMatch(request) != NO_MATCH;
+    }
+
+    /**
+     * @param rule index of the rule in the configured rules
+     * @return the matcher matching the requests for which the given rule is the first matching rule
+     */
+    public RequestMatcher ruleMatcher(int rule) {
+        return new RuleMatcher(rule);
+    }
+
+    /**
+     * @param request the request to match
+     * @return index of the first rule matching the request, or {@link #NO_MATCH}
+     */
+    public int firstMatch(HttpServletRequest request) {
+        return ruleMatch(request).rule;
+    }
+
+    /**
+     * @param path        the path within the application, i.e. the servlet path and path info of a servlet request
+     * @param queryString the raw query string, if any
+     * @return index of the first rule matching the path and query string, or {@link #NO_MATCH}
+     */
+    public int firstMatch(String path, @Nullable String queryString) {
+        return match(path, queryString).rule;
+    }
+
+    /**
+     * @param rule        index of the rule in the configured rules
+     * @param path        the path within the application
+     * @param queryString the raw query string, if any
+     * @return the URI template variables of the ant pattern of the given rule matching the path, if it is the first
+     * matching rule, or an empty map
+     */
+    public Map<String, String> extractUriTemplateVariables(int rule, String path, @Nullable String queryString) {
+        return match(path, queryString).uriTemplateVariables(rule);
+    }
+
+    private RuleMatch ruleMatch(HttpServletRequest request) {
+        String path = getRequestPath(request);
+        String queryString = request.getQueryString();
+        Object attribute = request.getAttribute(attributeName);
+        if (attribute instanceof RuleMatch && ((RuleMatch) attribute).isFor(path, queryString)) {
+            return (RuleMatch) attribute;
+        }
+
+        RuleMatch ruleMatch = match(path, queryString);
+        request.setAttribute(attributeName, ruleMatch);
+        return ruleMatch;
+    }
+
+    private RuleMatch match(String path, @Nullable String queryString) {
+        AntPattern antPattern = hasAntPatterns ? antRoot.match(path) : null;
+        int antRule = antPattern != null ? antPattern.rule : NO_MATCH;
+        int rule = matchRegex(path, queryString, antRule);
+        return new RuleMatch(path, queryString, rule, rule == antRule ? antPattern : null);
+    }
+
+    private int matchRegex(String path, String queryString, int best) {
+        if (combinedRegex == null && separateRegexPatterns.isEmpty()) {
+            return best;
+        }
+
+        String url = queryString != null ? path + "?" + queryString : path;
+        if (combinedRegex != null && (best == NO_MATCH || combinedRegexRules[0] < best)) {
+            Matcher matcher = combinedRegex.matcher(url);
+            if (matcher.matches()) {
+                for (int i = 0; i < combinedRegexGroups.length; i++) {
+                    if (matcher.start(combinedRegexGroups[i]) != -1) {
+                        best = best == NO_MATCH ? combinedRegexRules[i] : Math.min(best, combinedRegexRules[i]);
+                        break;
+                    }
+                }
+            }
+        }
+        for (RegexPattern regexPattern : separateRegexPatterns) {
+            if ((best == NO_MATCH || regexPattern.rule < best) && regexPattern.pattern.matcher(url).matches()) {
+                best = regexPattern.rule;
+            }
+        }
+        return best;
+    }
+
+    private static String getRequestPath(HttpServletRequest request) {
+        String servletPath = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        return pathInfo != null ? servletPath + pathInfo : servletPath;
+    }
+
+    private static String alternative(String pattern) {
+        return "(?:" + pattern + ")()";
+    }
+
+    /**
+     * Patterns with back references, or quoting or comments swallowing the enclosing group, are not combinable.
+     */
+    private static boolean isCombinable(String pattern, int groupCount) {
+        if (BACK_REFERENCE.matcher(pattern).find()) {
+            return false;
+        }
+        try {
+            return Pattern.compile(alternative(pattern)).matcher("").groupCount() == groupCount + 1;
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
+    }
+
+    private static boolean isLiteral(String segment) {
+        return segment.indexOf('*') == -1 && segment.indexOf('?') == -1 && segment.indexOf('{') == -1;
+    }
+
+    private static final class AntNode {
+
+        private final Map<String, AntNode> children = new HashMap<>();
+
+        private final List<AntPattern> patterns = new ArrayList<>();
+
+        private void insert(String pattern, AntPattern antPattern) {
+            AntNode node = this;
+            if (pattern.startsWith("/")) {
+                int start = 1;
+                while (start <= pattern.length()) {
+                    int end = pattern.indexOf('/', start);
+                    if (end == -1) {
+                        end = pattern.length();
+                    }
+                    String segment = pattern.substring(start, end);
+                    if (!isLiteral(segment)) {
+                        break;
+                    }
+                    if (!segment.isEmpty()) {
+                        node = node.children.computeIfAbsent(segment, s -> new AntNode());
+                    }
+                    start = end + 1;
+                }
+            }
+            node.patterns.add(antPattern);
+        }
+
+        private AntPattern match(String path) {
+            AntPattern best = matchPatterns(path, null);
+            AntNode node = this;
+            int start = path.startsWith("/") ? 1 : path.length();
+            while (start < path.length()) {
+                int end = path.indexOf('/', start);
+                if (end == -1) {
+                    end = path.length();
+                }
+                if (end > start) {
+                    node = node.children.get(path.substring(start, end));
+                    if (node == null) {
+                        break;
+                    }
+                    best = node.matchPatterns(path, best);
+                }
+                start = end + 1;
+            }
+            return best;
+        }
+
+        private AntPattern matchPatterns(String path, AntPattern best) {
+            for (AntPattern antPattern : patterns) {
+                if (best != null && antPattern.rule >= best.rule) {
+                    break;
+                }
+                if (antPattern.matches(path)) {
+                    return antPattern;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Matcher of a single rule, extracting the URI template variables of the matching ant pattern so they remain
+     * available to the rule's expression.
+     */
+    @SuppressWarnings("deprecation")
+    private final class RuleMatcher implements RequestMatcher, RequestVariablesExtractor {
+
+        private final int rule;
+
+        private RuleMatcher(int rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        public boolean matches(HttpServletRequest request) {
+            return firstMatch(request) == rule;
+        }
+
+        @Override
+        public Map<String, String> extractUriTemplateVariables(HttpServletRequest request) {
+            return ruleMatch(request).uriTemplateVariables(rule);
+        }
+
+        @Override
+        public String toString() {
+            return "MsxResourceRule[" + rule + "]";
+        }
+    }
+
+    /**
+     * Ant pattern matched the way AntPathRequestMatcher matches it, without the request.
+     */
+    private static final class AntPattern {
+        private final int rule;
+        private final String pattern;
+        private final boolean matchAll;
+        private final String subpath;
+
+        private AntPattern(int rule, String pattern) {
+            this.rule = rule;
+            this.pattern = pattern;
+            this.matchAll = MATCH_ALL.equals(pattern) || "**".equals(pattern);
+            boolean subpathPattern = !matchAll && pattern.endsWith(MATCH_ALL) && pattern.indexOf('?') == -1 &&
+                    pattern.indexOf('{') == -1 && pattern.indexOf('}') == -1 && pattern.indexOf('*') == pattern.length() - 2;
+            this.subpath = subpathPattern ? pattern.substring(0, pattern.length() - MATCH_ALL.length()) : null;
+        }
+
+        private boolean matches(String path) {
+            if (matchAll) {
+                return true;
+            }
+            if (subpath != null) {
+                return path.startsWith(subpath) && (path.length() == subpath.length() || path.charAt(subpath.length()) == '/');
+            }
+            return ANT_PATH_MATCHER.match(pattern, path);
+        }
+
+        private Map<String, String> uriTemplateVariables(String path) {
+            return matchAll || subpath != null ? Collections.emptyMap() : ANT_PATH_MATCHER.extractUriTemplateVariables(pattern, path);
+        }
+    }
+
+    private static final class RegexPattern {
+        private final int rule;
+        private final Pattern pattern;
+
+        private RegexPattern(int rule, Pattern pattern) {
+            this.rule = rule;
+            this.pattern = pattern;
+        }
+    }
+
+    private static final class RuleMatch {
+        private final String path;
+        private final String queryString;
+        private final int rule;
+        private final AntPattern antPattern;
+
+        private RuleMatch(String path, String queryString, int rule, AntPattern antPattern) {
+            this.path = path;
+            this.queryString = queryString;
+            this.rule = rule;
+            this.antPattern = antPattern;
+        }
+
+        private Map<String, String> uriTemplateVariables(int rule) {
+            return this.rule == rule && antPattern != null ? antPattern.uriTemplateVariables(path) : Collections.emptyMap();
+        }
+
+        private boolean isFor(String path, String queryString) {
+            return this.path.equals(path) && (this.queryString == null ? queryString == null : this.queryString.equals(queryString));
+        }
+    }
+}
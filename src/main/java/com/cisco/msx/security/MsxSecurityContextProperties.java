@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@ConfigurationProperties("security.context")
+@Validated
+public class MsxSecurityContextProperties {
+
+    /**
+     * whether the SecurityContextHolder is switched to the global inheritable thread local mode, copying the context
+     * into every thread created while it is set. Prefer {@link SecurityContextPropagation} for work handed to pools.
+     */
+    private boolean inheritableThreadLocal = false;
+
+    /**
+     * whether a TaskDecorator propagating the SecurityContext is registered, unless the application declares its own.
+     * Off unless the application opts in with security.context.taskDecorator=true
+     */
+    private boolean taskDecorator = false;
+}
@@ -58,6 +58,11 @@ public class MsxSecurityCorsProperties {
     @DurationUnit(ChronoUnit.SECONDS)
     private Duration maxAge = Duration.ofSeconds(1800);
 
+    /**
+     * Whether pre-flight requests are answered by {@link MsxCorsPreflightFilter} ahead of the security filter chain.
+     */
+    private boolean preflightFilter = true;
+
     public CorsConfiguration toCorsConfiguration() {
         if (!this.enabled || CollectionUtils.isEmpty(this.allowedOrigins)) {
             return null;
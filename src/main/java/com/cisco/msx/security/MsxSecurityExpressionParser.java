@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.EvaluationException;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.ParseException;
+import org.springframework.expression.ParserContext;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.common.ExpressionUtils;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.lang.Nullable;
+import org.springframework.security.access.expression.SecurityExpressionOperations;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ExpressionParser} of the security rule expressions, compiling them once at startup.
+ * <p>
+ * The common forms, conjunctions and disjunctions of {@code hasAuthority}, {@code hasAnyAuthority}, {@code hasRole},
+ * {@code hasAnyRole} and {@code isAuthenticated} with string literal arguments, become native predicates: the
+ * authorities they refer to are numbered at parse time, and an evaluation maps the granted authorities to a bit mask
+ * with one hash lookup each, then tests the mask.
+ * <p>
+ * Any other expression is parsed by SpEL in {@link SpelCompilerMode#MIXED} mode, so it is compiled to bytecode once it
+ * has been interpreted and falls back to the interpreter if the compiled form fails.
+ */
+public class MsxSecurityExpressionParser implements ExpressionParser {
+
+    private static final int MAX_AUTHORITIES = Long.SIZE;
+
+    private final SpelExpressionParser spelExpressionParser;
+
+    private final String rolePrefix;
+
+    private final RoleHierarchy roleHierarchy;
+
+    public MsxSecurityExpressionParser() {
+        this("ROLE_", null);
+    }
+
+    /**
+     * @param rolePrefix    prefix added to the roles without it, as in {@code SecurityExpressionRoot}
+     * @param roleHierarchy role hierarchy the granted authorities are expanded with, if any
+     */
+    public MsxSecurityExpressionParser(@Nullable String rolePrefix, @Nullable RoleHierarchy roleHierarchy) {
+        this.spelExpressionParser = new SpelExpressionParser(
+                new SpelParserConfiguration(SpelCompilerMode.MIXED, MsxSecurityExpressionParser.class.getClassLoader()));
+        this.rolePrefix = rolePrefix;
+        this.roleHierarchy = roleHierarchy;
+    }
+
+    @Override
+    public Expression parseExpression(String expressionString) throws ParseException {
+        Expression expression = new NativeParser(expressionString).parse();
+        return expression != null ? expression : spelExpressionParser.parseExpression(expressionString);
+    }
+
+    @Override
+    public Expression parseExpression(String expressionString, @Nullable ParserContext context) throws ParseException {
+        if (context != null && context.isTemplate()) {
+            return spelExpressionParser.parseExpression(expressionString, context);
+        }
+        return parseExpression(expressionString);
+    }
+
+    private String withRolePrefix(String role) {
+        if (rolePrefix == null || rolePrefix.isEmpty() || role.startsWith(rolePrefix)) {
+            return role;
+        }
+        return rolePrefix + role;
+    }
+
+    private interface Predicate {
+        boolean test(long mask, SecurityExpressionOperations root);
+    }
+
+    /**
+     * Recursive descent parser of the native forms, returning null for anything else.
+     */
+    private final class NativeParser {
+
+        private final String expressionString;
+
+        private final Map<String, Integer> authorities = new HashMap<>();
+
+        private int position;
+
+        private NativeParser(String expressionString) {
+            this.expressionString = expressionString;
+        }
+
+        private Expression parse() {
+            Predicate predicate = parseOr();
+            skipWhitespace();
+            if (predicate == null || position != expressionString.length() || authorities.size() > MAX_AUTHORITIES) {
+                return null;
+            }
+            return new NativeExpression(expressionString, Map.copyOf(authorities), predicate);
+        }
+
+        private Predicate parseOr() {
+            List<Predicate> operands = new ArrayList<>();
+            do {
+                Predicate operand = parseAnd();
+                if (operand == null) {
+                    return null;
+                }
+                operands.add(operand);
+            } while (operator("or", "||"));
+            if (operands.size() == 1) {
+                return operands.get(0);
+            }
+            Predicate[] predicates = operands.toArray(new Predicate[0]);
+            return (mask, root) -> {
+                for (Predicate predicate : predicates) {
+                    if (predicate.test(mask, root)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+
+        private Predicate parseAnd() {
+            List<Predicate> operands = new ArrayList<>();
+            do {
+                Predicate operand = parseOperand();
+                if (operand == null) {
+                    return null;
+                }
+                operands.add(operand);
+            } while (operator("and", "&&"));
+            if (operands.size() == 1) {
+                return operands.get(0);
+            }
+            Predicate[] predicates = operands.toArray(new Predicate[0]);
+            return (mask, root) -> {
+                for (Predicate predicate : predicates) {
+                    if (!predicate.test(mask, root)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+
+        private Predicate parseOperand() {
+            skipWhitespace();
+            if (consume('(')) {
+                Predicate predicate = parseOr();
+                skipWhitespace();
+                return predicate != null && consume(')') ? predicate : null;
+            }
+
+            String name = identifier();
+            skipWhitespace();
+            if (name == null || !consume('(')) {
+                return null;
+            }
+            List<String> arguments = arguments();
+            if (arguments == null) {
+                return null;
+            }
+            switch (name) {
+                case "isAuthenticated":
+                    return arguments.isEmpty() ? (mask, root) -> root.isAuthenticated() : null;
+                case "hasAuthority":
+                    return arguments.size() == 1 ? any(arguments) : null;
+                case "hasAnyAuthority":
+                    return any(arguments);
+                case "hasRole":
+                    return arguments.size() == 1 ? any(roles(arguments)) : null;
+                case "hasAnyRole":
+                    return any(roles(arguments));
+                default:
+                    return null;
+            }
+        }
+
+        private Predicate any(List<String> arguments) {
+            long bits = 0;
+            for (String authority : arguments) {
+                int index = authorities.computeIfAbsent(authority, a -> authorities.size());
+                if (index < MAX_AUTHORITIES) {
+                    bits |= 1L << index;
+                }
+            }
+            long anyOf = bits;
+            return (mask, root) -> (mask & anyOf) != 0;
+        }
+
+        private List<String> roles(List<String> arguments) {
+            List<String> roles = new ArrayList<>(arguments.size());
+            for (String role : arguments) {
+                roles.add(withRolePrefix(role));
+            }
+            return roles;
+        }
+
+        private List<String> arguments() {
+            List<String> arguments = new ArrayList<>();
+            skipWhitespace();
+            if (consume(')')) {
+                return arguments;
+            }
+            do {
+                skipWhitespace();
+                String argument = stringLiteral();
+                if (argument == null) {
+                    return null;
+                }
+                arguments.add(argument);
+                skipWhitespace();
+            } while (consume(','));
+            return consume(')') ? arguments : null;
+        }
+
+        private String stringLiteral() {
+            if (!consume('\'')) {
+                return null;
+            }
+            StringBuilder literal = new StringBuilder();
+            while (position < expressionString.length()) {
+                char c = expressionString.charAt(position++);
+                if (c != '\'') {
+                    literal.append(c);
+                } else if (consume('\'')) {
+                    literal.append('\'');
+                } else {
+                    return literal.toString();
+                }
+            }
+            return null;
+        }
+
+        private String identifier() {
+            int start = position;
+            while (position < expressionString.length() && Character.isJavaIdentifierPart(expressionString.charAt(position))) {
+                position++;
+            }
+            return position > start ? expressionString.substring(start, position) : null;
+        }
+
+        private boolean operator(String word, String symbol) {
+            skipWhitespace();
+            int start = position;
+            if (expressionString.startsWith(symbol, position)) {
+                position += symbol.length();
+                return true;
+            }
+            String name = identifier();
+            if (word.equalsIgnoreCase(name)) {
+                return true;
+            }
+            position = start;
+            return false;
+        }
+
+        private boolean consume(char c) {
+            if (position < expressionString.length() && expressionString.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (position < expressionString.length() && Character.isWhitespace(expressionString.charAt(position))) {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Native boolean expression over the {@link SecurityExpressionOperations} root object.
+     */
+    private final class NativeExpression implements Expression {
+
+        private final String expressionString;
+
+        private final Map<String, Integer> authorities;
+
+        private final Predicate predicate;
+
+        private NativeExpression(String expressionString, Map<String, Integer> authorities, Predicate predicate) {
+            this.expressionString = expressionString;
+            this.authorities = authorities;
+            this.predicate = predicate;
+        }
+
+        private boolean evaluate(@Nullable Object rootObject) {
+            if (!(rootObject instanceof SecurityExpressionOperations)) {
+                throw new EvaluationException(expressionString, "Root object is not a SecurityExpressionOperations");
+            }
+            SecurityExpressionOperations root = (SecurityExpressionOperations) rootObject;
+            return predicate.test(mask(root.getAuthentication().getAuthorities()), root);
+        }
+
+        private long mask(Collection<? extends GrantedAuthority> grantedAuthorities) {
+            Collection<? extends GrantedAuthority> reachable = roleHierarchy != null ?
+                    roleHierarchy.getReachableGrantedAuthorities(grantedAuthorities) : grantedAuthorities;
+            long mask = 0;
+            for (GrantedAuthority grantedAuthority : reachable) {
+                Integer index = authorities.get(grantedAuthority.getAuthority());
+                if (index != null) {
+                    mask |= 1L << index;
+                }
+            }
+            return mask;
+        }
+
+        @Override
+        public String getExpressionString() {
+            return expressionString;
+        }
+
+        @Override
+        public Object getValue() throws EvaluationException {
+            return evaluate(null);
+        }
+
+        @Override
+        public <T> T getValue(@Nullable Class<T> desiredResultType) throws EvaluationException {
+            return convert(null, getValue(), desiredResultType);
+        }
+
+        @Override
+        public Object getValue(@Nullable Object rootObject) throws EvaluationException {
+            return evaluate(rootObject);
+        }
+
+        @Override
+        public <T> T getValue(@Nullable Object rootObject, @Nullable Class<T> desiredResultType) throws EvaluationException {
+            return convert(null, getValue(rootObject), desiredResultType);
+        }
+
+        @Override
+        public Object getValue(EvaluationContext context) throws EvaluationException {
+            return evaluate(context.getRootObject().getValue());
+        }
+
+        @Override
+        public Object getValue(EvaluationContext context, @Nullable Object rootObject) throws EvaluationException {
+            return evaluate(rootObject);
+        }
+
+        @Override
+        public <T> T getValue(EvaluationContext context, @Nullable Class<T> desiredResultType) throws EvaluationException {
+            return convert(context, getValue(context), desiredResultType);
+        }
+
+        @Override
+        public <T> T getValue(EvaluationContext context, @Nullable Object rootObject, @Nullable Class<T> desiredResultType)
+                throws EvaluationException {
+            return convert(context, getValue(context, rootObject), desiredResultType);
+        }
+
+        @Override
+        public Class<?> getValueType() {
+            return Boolean.class;
+        }
+
+        @Override
+        public Class<?> getValueType(@Nullable Object rootObject) {
+            return Boolean.class;
+        }
+
+        @Override
+        public Class<?> getValueType(EvaluationContext context) {
+            return Boolean.class;
+        }
+
+        @Override
+        public Class<?> getValueType(EvaluationContext context, @Nullable Object rootObject) {
+            return Boolean.class;
+        }
+
+        @Override
+        public TypeDescriptor getValueTypeDescriptor() {
+            return TypeDescriptor.valueOf(Boolean.class);
+        }
+
+        @Override
+        public TypeDescriptor getValueTypeDescriptor(@Nullable Object rootObject) {
+            return TypeDescriptor.valueOf(Boolean.class);
+        }
+
+        @Override
+        public TypeDescriptor getValueTypeDescriptor(EvaluationContext context) {
+            return TypeDescriptor.valueOf(Boolean.class);
+        }
+
+        @Override
+        public TypeDescriptor getValueTypeDescriptor(EvaluationContext context, @Nullable Object rootObject) {
+            return TypeDescriptor.valueOf(Boolean.class);
+        }
+
+        @Override
+        public boolean isWritable(@Nullable Object rootObject) {
+            return false;
+        }
+
+        @Override
+        public boolean isWritable(EvaluationContext context) {
+            return false;
+        }
+
+        @Override
+        public boolean isWritable(EvaluationContext context, @Nullable Object rootObject) {
+            return false;
+        }
+
+        @Override
+        public void setValue(@Nullable Object rootObject, @Nullable Object value) throws EvaluationException {
+            throw new EvaluationException(expressionString, "Security expressions are not writable");
+        }
+
+        @Override
+        public void setValue(EvaluationContext context, @Nullable Object value) throws EvaluationException {
+            throw new EvaluationException(expressionString, "Security expressions are not writable");
+        }
+
+        @Override
+        public void setValue(EvaluationContext context, @Nullable Object rootObject, @Nullable Object value)
+                throws EvaluationException {
+            throw new EvaluationException(expressionString, "Security expressions are not writable");
+        }
+
+        private <T> T convert(@Nullable EvaluationContext context, Object value, @Nullable Class<T> desiredResultType) {
+            return ExpressionUtils.convertTypedValue(context, new TypedValue(value), desiredResultType);
+        }
+
+        @Override
+        public String toString() {
+            return expressionString;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cache.Cache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The reactive client implementation of IDM security APIs, the counterpart of {@link IdmSecurityApi} for WebFlux
+ * applications. Calls are sent with the given {@link WebClient}, which is expected to carry the basic authentication
+ * of the client and, for service names in the base url, the load balancer exchange filter.
+ * <p>
+ * The check_token and inactive token caches, when given, are shared with {@link IdmSecurityApi}. Concurrent calls to
+ * the same endpoint with the same argument share one outstanding HTTP call, as for {@link AsyncIdmSecurityApi}.
+ * Nothing is sent before the returned Mono is subscribed.
+ * <p>
+ * The second level of a {@link TwoTierCache} is a blocking remote store, so it is read and written on
+ * {@link Schedulers#boundedElastic()}; hits of the first level are still answered on the subscribing thread.
+ */
+public class ReactiveIdmSecurityApi {
+
+    private static final String GZIP = "gzip";
+
+    private final WebClient webClient;
+
+    private final ObjectMapper objectMapper;
+
+    private final IntegrationSecurityProperties integrationSecurityProperties;
+
+    private final Cache checkTokenCache;
+
+    private final Cache inactiveTokenCache;
+
+    private final long timeToLiveMillis;
+
+    private final boolean sharedCaches;
+
+    private final Duration requestTimeout;
+
+    private final JavaType tenantSetType;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    private IdmSecurityMetrics metrics = IdmSecurityMetrics.NONE;
+
+    public ReactiveIdmSecurityApi(WebClient webClient, ObjectMapper objectMapper, IntegrationSecurityProperties integrationSecurityProperties,
+                                  @Nullable Cache checkTokenCache, @Nullable Cache inactiveTokenCache) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.integrationSecurityProperties = integrationSecurityProperties;
+        this.checkTokenCache = checkTokenCache;
+        this.inactiveTokenCache = inactiveTokenCache;
+        this.sharedCaches = checkTokenCache instanceof TwoTierCache || inactiveTokenCache instanceof TwoTierCache;
+        this.timeToLiveMillis = checkTokenCache != null ?
+                integrationSecurityProperties.getCache().getCheckToken().getTimeToLive().toMillis() : 0;
+        this.requestTimeout = integrationSecurityProperties.getAsync().getRequestTimeout();
+        this.tenantSetType = objectMapper.getTypeFactory().constructCollectionType(Set.class, String.class);
+    }
+
+    public Mono<SecurityContextDetails> checkToken(String token) {
+        if (checkTokenCache == null && inactiveTokenCache == null) {
+            return fetchSecurityContextDetails(token);
+        }
+
+        return Mono.defer(() -> {
+            String key = TokenDigest.sha256(token);
+            long now = System.currentTimeMillis();
+            Mono<SecurityContextDetails> local = cached(key, now, true);
+            if (local != null) {
+                return local;
+            }
+            if (!sharedCaches) {
+                return fetchAndRemember(token, key, now);
+            }
+            return Mono.fromCallable(() -> Optional.ofNullable(cached(key, now, false)))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(shared -> shared.orElseGet(() -> fetchAndRemember(token, key, now)));
+        });
+    }
+
+    public Mono<String> getTenantRoot() {
+        return call(IdmSecurityApi.TENANT_HIERARCHY_ROOT, null, () ->
+                send(HttpMethod.GET, integrationSecurityProperties.getEndpoints().getTenantHierarchyRoot(),
+                        null, null, body -> new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+    }
+
+    public Mono<String> getTenantParent(String tenantId) {
+        return call(IdmSecurityApi.TENANT_HIERARCHY_PARENT, tenantId, () ->
+                send(HttpMethod.GET, integrationSecurityProperties.getEndpoints().getTenantHierarchyParent(),
+                        "tenantId", tenantId, body -> new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+    }
+
+    public Mono<Set<String>> getTenantChildren(String tenantId) {
+        return call(IdmSecurityApi.TENANT_HIERARCHY_CHILDREN, tenantId, () ->
+                send(HttpMethod.GET, integrationSecurityProperties.getEndpoints().getTenantHierarchyChildren(),
+                        "tenantId", tenantId, body -> objectMapper.readValue(body, tenantSetType)));
+    }
+
+    public Mono<Set<String>> getTenantAncestors(String tenantId) {
+        return call(IdmSecurityApi.TENANT_HIERARCHY_ANCESTORS, tenantId, () ->
+                send(HttpMethod.GET, integrationSecurityProperties.getEndpoints().getTenantHierarchyAncestors(),
+                        "tenantId", tenantId, body -> objectMapper.readValue(body, tenantSetType)));
+    }
+
+    /**
+     * @param metrics records the calls made to IDM, the coalesced calls are recorded once and counted apart
+     */
+    public void setMetrics(IdmSecurityMetrics metrics) {
+        this.metrics = metrics != null ? metrics : IdmSecurityMetrics.NONE;
+        this.metrics.bindCoalescedCalls("reactive", singleFlight);
+    }
+
+    /**
+     * @return the single flight coalescing concurrent calls of this client, with the number of coalesced calls per endpoint
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    private Mono<SecurityContextDetails> fetchSecurityContextDetails(String token) {
+        return call(IdmSecurityApi.CHECK_TOKEN, token, () ->
+                send(HttpMethod.POST, integrationSecurityProperties.getEndpoints().getCheckToken(),
+                        "token", token, SecurityContextDetailsReader::read));
+    }
+
+    /**
+     * @param localOnly whether the second level of a {@link TwoTierCache} is left out
+     * @return the cached result, or null if the token is not cached
+     */
+    @Nullable
+    private Mono<SecurityContextDetails> cached(String key, long now, boolean localOnly) {
+        if (checkTokenCache != null) {
+            CachedSecurityContextDetails cached = get(checkTokenCache, key, CachedSecurityContextDetails.class, localOnly);
+            if (cached != null && !cached.isExpired(now)) {
+                return Mono.justOrEmpty(cached.getSecurityContextDetails());
+            }
+        }
+        if (inactiveTokenCache != null) {
+            SecurityContextDetails inactive = get(inactiveTokenCache, key, SecurityContextDetails.class, localOnly);
+            if (inactive != null) {
+                return Mono.just(inactive);
+            }
+        }
+        return null;
+    }
+
+    private Mono<SecurityContextDetails> fetchAndRemember(String token, String key, long now) {
+        return fetchSecurityContextDetails(token)
+                .flatMap(securityContextDetails -> remember(key, now, securityContextDetails).thenReturn(securityContextDetails))
+                .switchIfEmpty(remember(key, now, null).then(Mono.empty()));
+    }
+
+    private Mono<Void> remember(String key, long now, @Nullable SecurityContextDetails securityContextDetails) {
+        Mono<Void> remember = Mono.fromRunnable(() -> {
+            if (checkTokenCache != null) {
+                CachedSecurityContextDetails fetched = CachedSecurityContextDetails.of(securityContextDetails, now, timeToLiveMillis);
+                if (fetched == null) {
+                    checkTokenCache.evict(key);
+                } else {
+                    checkTokenCache.put(key, fetched);
+                }
+            }
+            if (inactiveTokenCache != null && securityContextDetails != null && !securityContextDetails.isActive()) {
+                inactiveTokenCache.put(key, securityContextDetails);
+            }
+        });
+        return sharedCaches ? remember.subscribeOn(Schedulers.boundedElastic()) : remember;
+    }
+
+    @Nullable
+    private static <T> T get(Cache cache, String key, Class<T> type, boolean localOnly) {
+        if (!localOnly || !(cache instanceof TwoTierCache)) {
+            return cache.get(key, type);
+        }
+        Cache.ValueWrapper local = ((TwoTierCache) cache).getLocal(key);
+        Object value = local != null ? local.get() : null;
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    /**
+     * The HTTP call is shared through the {@link SingleFlight}, so a subscriber cancelling its Mono does not cancel the
+     * call other subscribers are waiting for.
+     */
+    private <T> Mono<T> call(String endpoint, String argument, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> Mono.fromFuture(singleFlight.executeAsync(endpoint, argument, () ->
+                metrics.recordAsync(endpoint, () -> call.get().toFuture()))));
+    }
+
+    private <T> Mono<T> send(HttpMethod method, String path, String parameter, String value, BodyDecoder<T> decoder) {
+        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromUriString(integrationSecurityProperties.getServer().getBaseUrl() + path);
+        if (parameter != null) {
+            uriBuilder.queryParam(parameter, "{value}");
+        }
+        URI uri = parameter != null ? uriBuilder.build(value) : uriBuilder.build().toUri();
+
+        // @formatter:off
+        return webClient.method(method)
+                .uri(uri)
+                .header(HttpHeaders.ACCEPT_ENCODING, GZIP)
+                .exchange()
+                .flatMap(response -> response.statusCode().isError() ?
+                        response.createException().flatMap(Mono::<T>error) :
+                        response.bodyToMono(byte[].class).flatMap(body -> Mono.justOrEmpty(decode(response, body, decoder))))
+                .timeout(requestTimeout);
+        // @formatter:on
+    }
+
+    private static <T> T decode(ClientResponse response, byte[] body, BodyDecoder<T> decoder) {
+        boolean gzip = response.headers().header(HttpHeaders.CONTENT_ENCODING).stream().anyMatch(GZIP::equalsIgnoreCase);
+        try (InputStream input = gzip ? new GZIPInputStream(new ByteArrayInputStream(body)) : new ByteArrayInputStream(body)) {
+            return decoder.decode(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyDecoder<T> {
+        T decode(InputStream body) throws IOException;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The {@link MsxResourceRuleMatcher} for WebFlux requests. The path within the application and the raw query string
+ * of the request are matched against the compiled rules, and the first matching rule is remembered in an exchange
+ * attribute so the matcher of every rule reuses it.
+ */
+public class ReactiveMsxResourceRuleMatcher implements ServerWebExchangeMatcher {
+
+    private final MsxResourceRuleMatcher ruleMatcher;
+
+    private final String attributeName = ReactiveMsxResourceRuleMatcher.class.getName() + "@" + Integer.toHexString(hashCode());
+
+    public ReactiveMsxResourceRuleMatcher(List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules) {
+        this.ruleMatcher = new MsxResourceRuleMatcher(rules);
+    }
+
+    @Override
+    public Mono<MatchResult> matches(ServerWebExchange exchange) {
+        return firstMatch(exchange) != MsxResourceRuleMatcher.NO_MATCH ? MatchResult.match() : MatchResult.notMatch();
+    }
+
+    /**
+     * @return index of the first rule matching the request, or {@link MsxResourceRuleMatcher#NO_MATCH}
+     */
+    public int firstMatch(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        String queryString = request.getURI().getRawQuery();
+        Object attribute = exchange.getAttribute(attributeName);
+        if (attribute instanceof RuleIndex && ((RuleIndex) attribute).isFor(path, queryString)) {
+            return ((RuleIndex) attribute).rule;
+        }
+
+        int rule = ruleMatcher.firstMatch(path, queryString);
+        exchange.getAttributes().put(attributeName, new RuleIndex(path, queryString, rule));
+        return rule;
+    }
+
+    /**
+     * @param rule index of the rule in the configured rules
+     * @return matcher of the requests whose first matching rule is the given rule, with the URI template variables of
+     * its matching ant pattern as the variables of the match
+     */
+    public ServerWebExchangeMatcher ruleMatcher(int rule) {
+        return exchange -> {
+            if (firstMatch(exchange) != rule) {
+                return MatchResult.notMatch();
+            }
+            ServerHttpRequest request = exchange.getRequest();
+            return MatchResult.match(new HashMap<>(ruleMatcher.extractUriTemplateVariables(rule,
+                    request.getPath().pathWithinApplication().value(), request.getURI().getRawQuery())));
+        };
+    }
+
+    private static final class RuleIndex {
+        private final String path;
+        private final String queryString;
+        private final int rule;
+
+        private RuleIndex(String path, String queryString, int rule) {
+            this.path = path;
+            this.queryString = queryString;
+            this.rule = rule;
+        }
+
+        private boolean isFor(String path, String queryString) {
+            return this.path.equals(path) && Objects.equals(this.queryString, queryString);
+        }
+    }
+}
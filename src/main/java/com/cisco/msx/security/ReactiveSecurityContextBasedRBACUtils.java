@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * The reactive counterpart of {@link SecurityContextBasedRBACUtils}. The permission and access check is based on the
+ * SecurityContextDetails of the JWT in the {@link ReactiveSecurityContextHolder}, so the returned Monos must be
+ * subscribed within the reactive chain of the request.
+ * <p>
+ * When a JwtSecurityContextDetailsConverter is given, the SecurityContextDetails are built from the claims of the
+ * verified JWT and check_token is only called for tokens that do not carry the required claims.
+ */
+@RequiredArgsConstructor
+public class ReactiveSecurityContextBasedRBACUtils {
+
+    private final ReactiveIdmSecurityApi reactiveIdmSecurityApi;
+    private final ReactiveTokenBasedRBACUtils reactiveTokenBasedRBACUtils;
+    @Nullable
+    private final JwtSecurityContextDetailsConverter jwtSecurityContextDetailsConverter;
+
+    public Mono<SecurityContextDetails> getSecurityContextDetails() {
+        return extractJwt().flatMap(jwt -> {
+            if (jwtSecurityContextDetailsConverter != null) {
+                SecurityContextDetails securityContextDetails = jwtSecurityContextDetailsConverter.convert(jwt);
+                if (securityContextDetails != null) {
+                    return Mono.just(securityContextDetails);
+                }
+            }
+            return reactiveIdmSecurityApi.checkToken(jwt.getTokenValue());
+        });
+    }
+
+    public Mono<String> extractToken() {
+        return extractJwt().map(Jwt::getTokenValue);
+    }
+
+    /**
+     *  Check if the user associated with the current SecurityContextDetails has the specified permission
+     * @param permission permission to check
+     * @return Mono of true if the user has the permission; false otherwise
+     */
+    public Mono<Boolean> hasPermission(String permission) {
+        return getSecurityContextDetails()
+                .map(securityContextDetails -> securityContextDetails.getAccess().hasPermission(permission))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Check if the user associated with the current SecurityContextDetails has the permission Constants.ACCESS_ALL_TENANTS
+     * @return Mono of true if the user has the permission; false otherwise
+     */
+    public Mono<Boolean> hasAccessAllTenantsPermission() {
+        return hasPermission(Constants.ACCESS_ALL_TENANTS);
+    }
+
+    /**
+     * Convenient method to check if the user associated with the current SecurityContextDetails has access to this tenant.
+     * If the tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * @param tenantId tenantId to check
+     * @return Mono of true if the user has access to the tenant; false otherwise
+     */
+    public Mono<Boolean> hasAccessToTenant(String tenantId) {
+        return getSecurityContextDetails()
+                .flatMap(securityContextDetails -> reactiveTokenBasedRBACUtils.hasAccessToTenant(securityContextDetails, tenantId))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Convenient method to check if the user associated with the current SecurityContextDetails has access to every item in the list.
+     * If any tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * See {@link ReactiveTokenBasedRBACUtils#hasAccessToTenants(SecurityContextDetails, Collection)}.
+     * @param tenantIds tenantIds to check
+     * @return Mono of false if the user doesn't have access to any of the tenant id in the collection.
+     */
+    public Mono<Boolean> hasAccessToTenants(Collection<String> tenantIds) {
+        if (tenantIds.isEmpty()) {
+            return Mono.just(true);
+        }
+        return getSecurityContextDetails()
+                .flatMap(securityContextDetails -> reactiveTokenBasedRBACUtils.hasAccessToTenants(securityContextDetails, tenantIds))
+                .defaultIfEmpty(false);
+    }
+
+    private Mono<Jwt> extractJwt() {
+        return ReactiveSecurityContextHolder.getContext()
+                .flatMap(context -> Mono.justOrEmpty(context.getAuthentication()))
+                .filter(JwtAuthenticationToken.class::isInstance)
+                .map(authentication -> ((JwtAuthenticationToken) authentication).getToken())
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("JwtAuthenticationToken not found in SecurityContext")));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The reactive counterpart of {@link TokenBasedRBACUtils}, backed by the {@link ReactiveIdmSecurityApi}. Every check
+ * returns a Mono completed with the decision, and a token whose SecurityContextDetails can not be found is denied.
+ * TenantIds found invalid are remembered in the invalid tenant cache, when given, for its time to live.
+ */
+@RequiredArgsConstructor
+public class ReactiveTokenBasedRBACUtils {
+
+    private final ReactiveIdmSecurityApi reactiveIdmSecurityApi;
+
+    @Nullable
+    private final Cache invalidTenantCache;
+
+    /**
+     * Check if the user associated with the oauth2Token has the specified permission
+     * @param oauth2Token oauth2 token
+     * @param permission permission to check
+     * @return Mono of true if the user has the permission; false otherwise
+     */
+    public Mono<Boolean> hasPermission(String oauth2Token, String permission) {
+        return reactiveIdmSecurityApi.checkToken(oauth2Token)
+                .map(securityContextDetails -> securityContextDetails.getAccess().hasPermission(permission))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Check if the user associated with the oauth2Token has the permission Constants.ACCESS_ALL_TENANTS
+     * @param oauth2Token oauth2 token
+     * @return Mono of true if the user has the permission; false otherwise
+     */
+    public Mono<Boolean> hasAccessAllTenantsPermission(String oauth2Token) {
+        return hasPermission(oauth2Token, Constants.ACCESS_ALL_TENANTS);
+    }
+
+    /**
+     * Convenient method to check if the user has access to this tenant.
+     * If the tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * @param oauth2Token oauth2 token
+     * @param tenantId tenantId to check
+     * @return Mono of true if the user has access to the tenant; false otherwise
+     */
+    public Mono<Boolean> hasAccessToTenant(String oauth2Token, String tenantId) {
+        return hasAccessToTenant(reactiveIdmSecurityApi.checkToken(oauth2Token), tenantId);
+    }
+
+    /**
+     * Check if the user associated with the securityContextDetails has access to this tenant.
+     * If the tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * @param securityContextDetails securityContextDetails
+     * @param tenantId tenantId to check
+     * @return Mono of true if the user has access to the tenant; false otherwise
+     */
+    public Mono<Boolean> hasAccessToTenant(SecurityContextDetails securityContextDetails, String tenantId) {
+        return hasAccessToTenant(Mono.just(securityContextDetails), tenantId);
+    }
+
+    /**
+     * Convenient method to check if the user has access to every item in the list.
+     * If any tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * The token is checked once for the whole collection.
+     * @param oauth2Token oauth2 token
+     * @param tenantIds tenantIds to check
+     * @return Mono of false if the user doesn't have access to any of the tenant id in the collection.
+     */
+    public Mono<Boolean> hasAccessToTenants(String oauth2Token, Collection<String> tenantIds) {
+        if (tenantIds.isEmpty()) {
+            return Mono.just(true);
+        }
+        return hasAccessToTenants(reactiveIdmSecurityApi.checkToken(oauth2Token).cache(), tenantIds);
+    }
+
+    /**
+     * Check if the user associated with the securityContextDetails has access to every item in the list.
+     * If any tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * Duplicate tenantIds are checked once, the tenants are checked concurrently and the evaluation stops at the first
+     * tenant the user has no access to.
+     * @param securityContextDetails securityContextDetails
+     * @param tenantIds tenantIds to check
+     * @return Mono of false if the user doesn't have access to any of the tenant id in the collection.
+     */
+    public Mono<Boolean> hasAccessToTenants(SecurityContextDetails securityContextDetails, Collection<String> tenantIds) {
+        return hasAccessToTenants(Mono.just(securityContextDetails), tenantIds);
+    }
+
+    /**
+     * Check if the tenantId is valid. If the tenant is valid, it must be in the tenant hierarchy either as a node (which has a parent), or as the root.
+     * @param tenantId tenantId to check
+     * @return Mono of true if the tenantId is valid; false otherwise
+     */
+    public Mono<Boolean> isTenantIdValid(String tenantId) {
+        return Mono.defer(() -> {
+            if (isKnownInvalid(tenantId)) {
+                return Mono.just(false);
+            }
+            return reactiveIdmSecurityApi.getTenantParent(tenantId)
+                    .filter(parentId -> !parentId.isBlank())
+                    .map(parentId -> true)
+                    .switchIfEmpty(Mono.defer(() -> reactiveIdmSecurityApi.getTenantRoot()
+                            .map(tenantId::equals)
+                            .defaultIfEmpty(false)
+                            .map(valid -> rememberValidity(tenantId, valid))));
+        });
+    }
+
+    /**
+     * Get the ancestors of the tenant from IDM
+     * @param tenantId tenantId to look up
+     * @return Mono of the ancestors of the tenant
+     */
+    public Mono<Set<String>> getTenantAncestors(String tenantId) {
+        return reactiveIdmSecurityApi.getTenantAncestors(tenantId);
+    }
+
+    private Mono<Boolean> hasAccessToTenants(Mono<SecurityContextDetails> securityContextDetails, Collection<String> tenantIds) {
+        return Flux.fromIterable(new LinkedHashSet<>(tenantIds))
+                .flatMap(tenantId -> hasAccessToTenant(securityContextDetails, tenantId))
+                .all(Boolean::booleanValue);
+    }
+
+    /**
+     * The token check and the tenant validation are issued concurrently, the ancestors are only looked up when the
+     * tenant is valid and not assigned to the user
+     */
+    private Mono<Boolean> hasAccessToTenant(Mono<SecurityContextDetails> securityContextDetails, String tenantId) {
+        return Mono.zip(isTenantIdValid(tenantId), securityContextDetails)
+                .flatMap(validAndDetails -> {
+                    if (!validAndDetails.getT1()) {
+                        return Mono.just(false);
+                    }
+                    SecurityContextAccess access = validAndDetails.getT2().getAccess();
+                    if (access.hasPermission(Constants.ACCESS_ALL_TENANTS) || access.isAssigned(tenantId)) {
+                        return Mono.just(true);
+                    }
+                    return getTenantAncestors(tenantId).map(access::isAnyAssigned).defaultIfEmpty(false);
+                })
+                .defaultIfEmpty(false);
+    }
+
+    private boolean isKnownInvalid(String tenantId) {
+        return invalidTenantCache != null && invalidTenantCache.get(tenantId) != null;
+    }
+
+    private boolean rememberValidity(String tenantId, boolean valid) {
+        if (!valid && invalidTenantCache != null) {
+            invalidTenantCache.put(tenantId, Boolean.TRUE);
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable, hashed view of the permissions and the assigned tenants of a {@link SecurityContextDetails}, so the RBAC
+ * checks are constant time lookups instead of list scans. It is built once per SecurityContextDetails, see
+ * {@link SecurityContextDetails#getAccess()}.
+ */
+public final class SecurityContextAccess {
+
+    private final Set<String> permissions;
+
+    private final Set<String> assignedTenants;
+
+    private volatile TenantHierarchyIndex.AssignedSubtrees assignedSubtrees;
+
+    SecurityContextAccess(Collection<String> permissions, Collection<String> assignedTenants) {
+        this.permissions = copyOf(permissions);
+        this.assignedTenants = copyOf(assignedTenants);
+    }
+
+    public boolean hasPermission(String permission) {
+        return permission != null && permissions.contains(permission);
+    }
+
+    public boolean isAssigned(String tenantId) {
+        return tenantId != null && assignedTenants.contains(tenantId);
+    }
+
+    /**
+     * @param tenantIds tenantIds to check
+     * @return true if any of the tenants is assigned
+     */
+    public boolean isAnyAssigned(Collection<String> tenantIds) {
+        if (tenantIds == null || assignedTenants.isEmpty()) {
+            return false;
+        }
+        for (String tenantId : tenantIds) {
+            if (isAssigned(tenantId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Set<String> getAssignedTenants() {
+        return assignedTenants;
+    }
+
+    /**
+     * @return the subtrees of the assigned tenants in the last build of the {@link TenantHierarchyIndex} they were
+     * looked up in, or null
+     */
+    TenantHierarchyIndex.AssignedSubtrees getAssignedSubtrees() {
+        return assignedSubtrees;
+    }
+
+    void setAssignedSubtrees(TenantHierarchyIndex.AssignedSubtrees assignedSubtrees) {
+        this.assignedSubtrees = assignedSubtrees;
+    }
+
+    private static Set<String> copyOf(Collection<String> values) {
+        if (values == null) {
+            return Set.of();
+        }
+        // IDM responses may carry null entries, which Set.copyOf rejects
+        return values.stream().filter(Objects::nonNull).collect(Collectors.toUnmodifiableSet());
+    }
+}
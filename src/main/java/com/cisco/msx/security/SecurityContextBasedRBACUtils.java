@@ -6,29 +6,65 @@
 package com.cisco.msx.security;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import java.util.Collection;
-import java.util.List;
-import java.util.Set;
 
 /**
  * RBAC utils based on the SecurityContext. The permission and access check is based on the SecurityContextDetails
  * in SecurityContext and IDM tenant APIs. It can only be executed in the http servlet request handling thread or
- * a thread which inherits the thread local of the http servlet request handling thread.
+ * a task which runs with the SecurityContext of the http servlet request handling thread, see {@link SecurityContextPropagation}.
+ * <p>
+ * Within an http servlet request, the SecurityContextDetails are resolved once and kept as a request attribute, so
+ * every RBAC check made while handling the request shares a single check_token call. When a
+ * JwtSecurityContextDetailsConverter is given, the SecurityContextDetails are built from the claims of the verified JWT
+ * and check_token is only called for tokens that do not carry the required claims.
  */
-@RequiredArgsConstructor
 public class SecurityContextBasedRBACUtils {
 
+    static final String SECURITY_CONTEXT_DETAILS_ATTRIBUTE = SecurityContextBasedRBACUtils.class.getName() + ".SECURITY_CONTEXT_DETAILS";
+
     private final IdmSecurityApi idmSecurityApi;
     private final TokenBasedRBACUtils tokenBasedRBACUtils;
+    @Nullable
+    private final JwtSecurityContextDetailsConverter jwtSecurityContextDetailsConverter;
+
+    public SecurityContextBasedRBACUtils(IdmSecurityApi idmSecurityApi, TokenBasedRBACUtils tokenBasedRBACUtils) {
+        this(idmSecurityApi, tokenBasedRBACUtils, null);
+    }
+
+    @Autowired
+    public SecurityContextBasedRBACUtils(IdmSecurityApi idmSecurityApi, TokenBasedRBACUtils tokenBasedRBACUtils,
+                                         @Nullable JwtSecurityContextDetailsConverter jwtSecurityContextDetailsConverter) {
+        this.idmSecurityApi = idmSecurityApi;
+        this.tokenBasedRBACUtils = tokenBasedRBACUtils;
+        this.jwtSecurityContextDetailsConverter = jwtSecurityContextDetailsConverter;
+    }
 
     public SecurityContextDetails getSecurityContextDetails() {
-        return idmSecurityApi.checkToken(extractToken());
+        String token = extractToken();
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            return resolveSecurityContextDetails(token);
+        }
+
+        Object resolved = requestAttributes.getAttribute(SECURITY_CONTEXT_DETAILS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (resolved instanceof ResolvedSecurityContextDetails && ((ResolvedSecurityContextDetails) resolved).isResolvedFor(token)) {
+            return ((ResolvedSecurityContextDetails) resolved).securityContextDetails;
+        }
+
+        SecurityContextDetails securityContextDetails = resolveSecurityContextDetails(token);
+        requestAttributes.setAttribute(SECURITY_CONTEXT_DETAILS_ATTRIBUTE,
+                new ResolvedSecurityContextDetails(token, securityContextDetails), RequestAttributes.SCOPE_REQUEST);
+        return securityContextDetails;
     }
 
     public String extractToken() {
@@ -73,28 +109,49 @@ public class SecurityContextBasedRBACUtils {
         if (hasAccessAllTenantsPermission()){
             return true;
         }
-        SecurityContextDetails securityContextDetails = getSecurityContextDetails();
-        List<String> assignedTenants = securityContextDetails.getAssignedTenants();
-        if (assignedTenants.contains(tenantId)) {
+        SecurityContextAccess access = getSecurityContextDetails().getAccess();
+        if (access.isAssigned(tenantId)) {
             return true;
         }
-        Set<String> ancestors = idmSecurityApi.getTenantAncestors(tenantId);
-        return ancestors.stream().anyMatch(ancestor -> assignedTenants.contains(ancestor));
+        return tokenBasedRBACUtils.isInAssignedSubtree(access, tenantId);
     }
 
     /**
      * Convenient method to check if the user associated with the current SecurityContextDetails has access to every item in the list.
      * If any tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * See {@link TokenBasedRBACUtils#hasAccessToTenants(SecurityContextDetails, Collection)}.
      * @param tenantIds tenantIds to check
      * @return false if the user doesn't have access to any of the tenant id in the collection.
      */
     public boolean hasAccessToTenants(Collection<String> tenantIds) {
-        for (String tenantId : tenantIds) {
-            if (!hasAccessToTenant(tenantId)) {
-                return false;
+        if (tenantIds.isEmpty()) {
+            return true;
+        }
+        return tokenBasedRBACUtils.hasAccessToTenants(getSecurityContextDetails(), tenantIds);
+    }
+
+    private SecurityContextDetails resolveSecurityContextDetails(String token) {
+        if (jwtSecurityContextDetailsConverter != null) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication instanceof JwtAuthenticationToken) {
+                Jwt jwt = ((JwtAuthenticationToken) authentication).getToken();
+                SecurityContextDetails securityContextDetails = token.equals(jwt.getTokenValue()) ?
+                        jwtSecurityContextDetailsConverter.convert(jwt) : null;
+                if (securityContextDetails != null) {
+                    return securityContextDetails;
+                }
             }
         }
-        return true;
+        return idmSecurityApi.checkToken(token);
     }
 
+    @RequiredArgsConstructor
+    private static class ResolvedSecurityContextDetails {
+        private final String token;
+        private final SecurityContextDetails securityContextDetails;
+
+        boolean isResolvedFor(String token) {
+            return this.token.equals(token);
+        }
+    }
 }
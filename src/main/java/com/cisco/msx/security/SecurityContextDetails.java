@@ -5,9 +5,15 @@
 
 package com.cisco.msx.security;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.util.List;
 
@@ -83,4 +89,36 @@ public class SecurityContextDetails {
 
     private List<String> permissions;
 
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient SecurityContextAccess access;
+
+    public void setAssignedTenants(List<String> assignedTenants) {
+        this.assignedTenants = assignedTenants;
+        this.access = null;
+    }
+
+    public void setPermissions(List<String> permissions) {
+        this.permissions = permissions;
+        this.access = null;
+    }
+
+    /**
+     * The access view is built on first use and kept until the permissions or the assigned tenants are replaced.
+     * Changes made to the returned lists are not reflected.
+     * @return the hashed view of the permissions and the assigned tenants
+     */
+    @JsonIgnore
+    public SecurityContextAccess getAccess() {
+        SecurityContextAccess current = access;
+        if (current == null) {
+            current = new SecurityContextAccess(permissions, assignedTenants);
+            access = current;
+        }
+        return current;
+    }
+
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Reads the IDM check_token response into {@link SecurityContextDetails} with the streaming
+ * {@link SecurityContextDetailsReader}. The converter is never selected for writing, which is left to the other
+ * converters; a direct write is delegated to Jackson.
+ */
+public class SecurityContextDetailsHttpMessageConverter extends AbstractHttpMessageConverter<SecurityContextDetails> {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    public SecurityContextDetailsHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SecurityContextDetails.class == clazz;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected SecurityContextDetails readInternal(Class<? extends SecurityContextDetails> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try {
+            return SecurityContextDetailsReader.read(inputMessage.getBody());
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("Could not read check_token response: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(SecurityContextDetails securityContextDetails, HttpOutputMessage outputMessage) throws IOException {
+        OBJECT_MAPPER.writeValue(outputMessage.getBody(), securityContextDetails);
+    }
+}
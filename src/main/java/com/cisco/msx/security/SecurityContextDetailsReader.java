@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder of the IDM check_token response. The {@link SecurityContextDetails} is built token by token from
+ * the stream, and its string arrays such as the assigned tenants and the permissions are read into a reused buffer and
+ * copied to ArrayLists of the exact size, mutable like the lists bound by Jackson.
+ * <p>
+ * Unknown properties are skipped, the same way {@link SecurityContextDetails} is bound by Jackson. Known properties
+ * must hold a value of their type, scalars being coerced the way Jackson coerces them; an array or an object where a
+ * scalar is expected, a scalar where an array is expected, or a truncated document fail the read.
+ */
+public final class SecurityContextDetailsReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final ThreadLocal<String[]> BUFFER = ThreadLocal.withInitial(() -> new String[64]);
+
+    private SecurityContextDetailsReader() {
+    }
+
+    /**
+     * @param inputStream the check_token response body, which is not closed
+     * @return the decoded {@link SecurityContextDetails}, or null if the body is empty or the JSON null
+     * @throws IOException if the body is not a valid check_token response
+     */
+    public static SecurityContextDetails read(InputStream inputStream) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            return read(parser);
+        }
+    }
+
+    static SecurityContextDetails read(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a check_token object but found " + token);
+        }
+
+        SecurityContextDetails details = new SecurityContextDetails();
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            parser.nextToken();
+            // @formatter:off
+            switch (name) {
+                case "iss": details.setIss(readString(parser, name)); break;
+                case "sub": details.setSub(readString(parser, name)); break;
+                case "aud": details.setAud(readString(parser, name)); break;
+                case "exp": details.setExp(readInt(parser, name)); break;
+                case "iat": details.setIat(readInt(parser, name)); break;
+                case "jti": details.setJti(readString(parser, name)); break;
+                case "auth_time": details.setAuthTime(readInt(parser, name)); break;
+                case "given_name": details.setGivenName(readString(parser, name)); break;
+                case "family_name": details.setFamilyName(readString(parser, name)); break;
+                case "email": details.setEmail(readString(parser, name)); break;
+                case "locale": details.setLocale(readString(parser, name)); break;
+                case "active": details.setActive(readBoolean(parser, name)); break;
+                case "scope": details.setScope(readStrings(parser, name)); break;
+                case "client_id": details.setClientId(readString(parser, name)); break;
+                case "username": details.setUsername(readString(parser, name)); break;
+                case "user_id": details.setUserId(readString(parser, name)); break;
+                case "account_type": details.setAccountType(readString(parser, name)); break;
+                case "currency": details.setCurrency(readString(parser, name)); break;
+                case "tenant_id": details.setTenantId(readString(parser, name)); break;
+                case "tenant_name": details.setTenantName(readString(parser, name)); break;
+                case "provider_id": details.setProviderId(readString(parser, name)); break;
+                case "provider_name": details.setProviderName(readString(parser, name)); break;
+                case "provider_email": details.setProviderEmail(readString(parser, name)); break;
+                case "assigned_tenants": details.setAssignedTenants(readStrings(parser, name)); break;
+                case "roles": details.setRoles(readStrings(parser, name)); break;
+                case "permissions": details.setPermissions(readStrings(parser, name)); break;
+                default: parser.skipChildren();
+            }
+            // @formatter:on
+        }
+        if (parser.currentToken() != JsonToken.END_OBJECT) {
+            throw new IOException("Expected the end of the check_token object but found " + parser.currentToken());
+        }
+        return details;
+    }
+
+    private static String readString(JsonParser parser, String name) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw unexpected(name, "a string", token);
+        }
+        return parser.getValueAsString();
+    }
+
+    private static int readInt(JsonParser parser, String name) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getValueAsInt();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            try {
+                return text.isEmpty() ? 0 : Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                throw unexpected(name, "an integer", token);
+            }
+        }
+        throw unexpected(name, "an integer", token);
+    }
+
+    private static boolean readBoolean(JsonParser parser, String name) throws IOException {
+        JsonToken token = parser.currentToken();
+        switch (token) {
+            case VALUE_TRUE:
+                return true;
+            case VALUE_FALSE:
+            case VALUE_NULL:
+                return false;
+            case VALUE_NUMBER_INT:
+                return parser.getIntValue() != 0;
+            case VALUE_STRING:
+                String text = parser.getText().trim();
+                if (text.isEmpty() || "false".equals(text)) {
+                    return false;
+                }
+                if ("true".equals(text)) {
+                    return true;
+                }
+                throw unexpected(name, "a boolean", token);
+            default:
+                throw unexpected(name, "a boolean", token);
+        }
+    }
+
+    private static List<String> readStrings(JsonParser parser, String name) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw unexpected(name, "an array", token);
+        }
+
+        String[] buffer = BUFFER.get();
+        int size = 0;
+        try {
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null || !token.isScalarValue()) {
+                    throw unexpected(name, "an array of strings", token);
+                }
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
+                    BUFFER.set(buffer);
+                }
+                buffer[size++] = token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+            }
+        } catch (IOException e) {
+            Arrays.fill(buffer, 0, size, null);
+            throw e;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(buffer[i]);
+        }
+        Arrays.fill(buffer, 0, size, null);
+        return values;
+    }
+
+    private static IOException unexpected(String name, String expected, JsonToken token) {
+        return new IOException("Expected " + expected + " for the check_token property " + name + " but found " + token);
+    }
+}
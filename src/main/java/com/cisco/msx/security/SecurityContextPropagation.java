@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Propagates the SecurityContext of the submitting thread to the tasks it hands to an executor. The context is
+ * captured when a task is submitted, set for the time the task runs and the previous context of the worker thread is
+ * restored afterwards, so pooled threads never keep the context of an earlier task.
+ * <p>
+ * This replaces the global inheritable thread local mode, which copies the context on every thread creation only.
+ */
+public final class SecurityContextPropagation {
+
+    private SecurityContextPropagation() {
+    }
+
+    /**
+     * @param executor executor running the tasks
+     * @return executor running every task with the SecurityContext of the thread submitting it
+     */
+    public static Executor executor(Executor executor) {
+        return new DelegatingSecurityContextExecutor(executor);
+    }
+
+    /**
+     * @param executorService executor service running the tasks
+     * @return executor service running every task with the SecurityContext of the thread submitting it
+     */
+    public static ExecutorService executorService(ExecutorService executorService) {
+        return new DelegatingSecurityContextExecutorService(executorService);
+    }
+
+    /**
+     * @return TaskDecorator running every decorated task with the SecurityContext of the thread submitting it, for the
+     * task executors built by Spring
+     */
+    public static TaskDecorator taskDecorator() {
+        return runnable -> new DelegatingSecurityContextRunnable(runnable);
+    }
+}
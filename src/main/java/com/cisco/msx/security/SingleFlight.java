@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls made for the same endpoint and argument into a single execution. Callers arriving while a
+ * call is in flight wait for it and share its result or exception instead of issuing their own.
+ */
+public class SingleFlight {
+
+    private final ConcurrentMap<CallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongAdder> coalescedCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Execute the call, or join the call already in flight for the same endpoint and argument
+     * @param endpoint endpoint name
+     * @param argument argument of the call, may be null
+     * @param call the call to execute
+     * @return the result of the call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String endpoint, String argument, Supplier<T> call) {
+        CallKey key = new CallKey(endpoint, argument);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCalls.computeIfAbsent(endpoint, k -> new LongAdder()).increment();
+            return (T) join(existing);
+        }
+
+        try {
+            T result = call.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Start the asynchronous call, or share the future of the call already in flight for the same endpoint and argument
+     * @param endpoint endpoint name
+     * @param argument argument of the call, may be null
+     * @param call the call to start
+     * @return the future result of the call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(String endpoint, String argument, Supplier<CompletableFuture<T>> call) {
+        CallKey key = new CallKey(endpoint, argument);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCalls.computeIfAbsent(endpoint, k -> new LongAdder()).increment();
+            return (CompletableFuture<T>) existing.thenApply(result -> result);
+        }
+
+        try {
+            call.get().whenComplete((result, e) -> {
+                inFlight.remove(key, future);
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(result);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) future.thenApply(result -> result);
+    }
+
+    /**
+     * @param endpoint endpoint name
+     * @return number of calls to the endpoint that joined a call already in flight
+     */
+    public long getCoalescedCount(String endpoint) {
+        LongAdder count = coalescedCalls.get(endpoint);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * @return number of coalesced calls by endpoint name
+     */
+    public Map<String, Long> getCoalescedCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        coalescedCalls.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class CallKey {
+        private final String endpoint;
+        private final String argument;
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory replica of the IDM tenant hierarchy. The index is built by walking the hierarchy from
+ * {@link IdmSecurityApi#walkTenantRoot()} through {@link IdmSecurityApi#walkTenantChildren(String)}, and rebuilt in the
+ * background after every refresh interval. The walk bypasses the last-known-good results of IdmSecurityApi; the index
+ * keeps its own last complete build instead.
+ * <p>
+ * Lookups are answered from the last complete build only. Until the first build completes, or for tenants created
+ * after the last build, {@link #contains(String)} is false and callers are expected to fall back to IDM.
+ * <p>
+ * Every build also labels the tenants with the pre-order and post-order numbers of a depth-first traversal, so that
+ * a tenant is an ancestor of another when its interval encloses the other's. Ancestor checks are then integer
+ * comparisons, whatever the depth of the hierarchy.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class TenantHierarchyIndex {
+
+    /**
+     * Generation numbers of the builds, unique across the indexes so memos of one build can be told from any other
+     */
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final IdmSecurityApi idmSecurityApi;
+
+    private final IntegrationSecurityProperties.TenantHierarchyIndexProperties tenantHierarchyIndexProperties;
+
+    private volatile Snapshot snapshot;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Schedule the background builds of the index if it is enabled. The first build starts immediately.
+     */
+    public synchronized void start() {
+        if (!tenantHierarchyIndexProperties.isEnabled() || scheduler != null) {
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("msx-tenant-hierarchy-index-");
+        threadFactory.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0,
+                tenantHierarchyIndexProperties.getRefreshInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Rebuild the index in the background as soon as possible, e.g. after the tenant hierarchy changed. Does nothing
+     * unless the background builds are scheduled.
+     */
+    public synchronized void requestRefresh() {
+        if (scheduler != null) {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * Rebuild the index from IDM. The previous build keeps serving lookups until the new one is complete.
+     */
+    public void refresh() {
+        String root = idmSecurityApi.walkTenantRoot();
+        if (root == null || root.isBlank()) {
+            throw new IllegalStateException("IDM returned no tenant hierarchy root");
+        }
+
+        Map<String, String> parents = new HashMap<>();
+        Map<String, List<String>> children = new HashMap<>();
+        parents.put(root, null);
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            String tenantId = pending.poll();
+            Set<String> tenantChildren = idmSecurityApi.walkTenantChildren(tenantId);
+            if (tenantChildren == null) {
+                continue;
+            }
+            for (String child : tenantChildren) {
+                if (!parents.containsKey(child)) {
+                    parents.put(child, tenantId);
+                    children.computeIfAbsent(tenantId, parent -> new ArrayList<>()).add(child);
+                    pending.add(child);
+                }
+            }
+        }
+
+        snapshot = new Snapshot(GENERATIONS.incrementAndGet(), root, parents, label(root, children, parents.size()));
+        log.debug("Tenant hierarchy index rebuilt with {} tenants", parents.size());
+    }
+
+    /**
+     * @return true once the index has been built
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * @param tenantId tenantId to look up
+     * @return true if the tenant is in the index
+     */
+    public boolean contains(String tenantId) {
+        Snapshot current = snapshot;
+        return current != null && current.parents.containsKey(tenantId);
+    }
+
+    /**
+     * @return the root tenantId, or null if the index is not built yet
+     */
+    public String getRoot() {
+        Snapshot current = snapshot;
+        return current != null ? current.root : null;
+    }
+
+    /**
+     * @param tenantId tenantId to look up
+     * @return the parent tenantId, or null for the root and for tenants that are not in the index
+     */
+    public String getParent(String tenantId) {
+        Snapshot current = snapshot;
+        return current != null ? current.parents.get(tenantId) : null;
+    }
+
+    /**
+     * @param tenantId tenantId to look up
+     * @return the ancestors of the tenant from its parent up to the root, or null if the tenant is not in the index
+     */
+    @Nullable
+    public Set<String> getAncestors(String tenantId) {
+        Snapshot current = snapshot;
+        if (current == null || !current.parents.containsKey(tenantId)) {
+            return null;
+        }
+        Set<String> ancestors = new LinkedHashSet<>();
+        String parent = current.parents.get(tenantId);
+        while (parent != null && ancestors.add(parent)) {
+            parent = current.parents.get(parent);
+        }
+        return ancestors;
+    }
+
+    /**
+     * @param ancestorId tenantId of the presumed ancestor
+     * @param tenantId   tenantId to look up
+     * @return true if ancestorId is a proper ancestor of tenantId, or null if either tenant is not in the index
+     */
+    @Nullable
+    public Boolean isAncestor(String ancestorId, String tenantId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        Label ancestor = current.labels.get(ancestorId);
+        Label tenant = current.labels.get(tenantId);
+        if (ancestor == null || tenant == null) {
+            return null;
+        }
+        return ancestor.pre < tenant.pre && tenant.post < ancestor.post;
+    }
+
+    /**
+     * Check if the tenant is assigned or descends from an assigned tenant, in time logarithmic in the number of
+     * assigned tenants. The subtrees of the assigned tenants are merged once per build of the index and remembered by
+     * the SecurityContextAccess, see {@link SecurityContextAccess#getAssignedSubtrees()}.
+     * @param access   the assigned tenants
+     * @param tenantId tenantId to look up
+     * @return true if the tenant is in the subtree of an assigned tenant, or null if it is not in the index
+     */
+    @Nullable
+    public Boolean isInAssignedSubtree(SecurityContextAccess access, String tenantId) {
+        Snapshot current = snapshot;
+        Label tenant = current != null ? current.labels.get(tenantId) : null;
+        if (tenant == null) {
+            return null;
+        }
+        AssignedSubtrees assignedSubtrees = access.getAssignedSubtrees();
+        if (assignedSubtrees == null || assignedSubtrees.generation != current.generation) {
+            assignedSubtrees = new AssignedSubtrees(current, access.getAssignedTenants());
+            access.setAssignedSubtrees(assignedSubtrees);
+        }
+        return assignedSubtrees.encloses(tenant);
+    }
+
+    /**
+     * Iterative depth-first traversal numbering every tenant on entry and on exit
+     */
+    private static Map<String, Label> label(String root, Map<String, List<String>> children, int size) {
+        Map<String, Label> labels = new HashMap<>(size * 2);
+        Deque<String> path = new ArrayDeque<>();
+        Deque<Iterator<String>> remaining = new ArrayDeque<>();
+        int counter = 0;
+        labels.put(root, new Label(counter++));
+        path.push(root);
+        remaining.push(children.getOrDefault(root, Collections.emptyList()).iterator());
+        while (!path.isEmpty()) {
+            Iterator<String> next = remaining.peek();
+            if (next.hasNext()) {
+                String child = next.next();
+                labels.put(child, new Label(counter++));
+                path.push(child);
+                remaining.push(children.getOrDefault(child, Collections.emptyList()).iterator());
+            } else {
+                labels.get(path.pop()).post = counter++;
+                remaining.pop();
+            }
+        }
+        return labels;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Failed to rebuild the tenant hierarchy index, keeping the previous build", e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Snapshot {
+        private final long generation;
+        private final String root;
+        private final Map<String, String> parents;
+        private final Map<String, Label> labels;
+    }
+
+    private static final class Label {
+        private final int pre;
+        private int post;
+
+        private Label(int pre) {
+            this.pre = pre;
+        }
+    }
+
+    /**
+     * Disjoint pre/post-order intervals of the subtrees of a set of tenants in one build of the index, sorted by
+     * their pre-order number. Subtrees nested in the subtree of another tenant of the set are dropped. Only the
+     * generation number of the build is kept, so a remembered instance does not hold on to the build itself.
+     */
+    static final class AssignedSubtrees {
+
+        private final long generation;
+
+        private final int[] pres;
+
+        private final int[] posts;
+
+        private AssignedSubtrees(Snapshot snapshot, Collection<String> tenantIds) {
+            this.generation = snapshot.generation;
+            Label[] labels = tenantIds.stream()
+                    .map(snapshot.labels::get)
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingInt(label -> label.pre))
+                    .toArray(Label[]::new);
+            int[] pres = new int[labels.length];
+            int[] posts = new int[labels.length];
+            int size = 0;
+            for (Label label : labels) {
+                if (size == 0 || label.post > posts[size - 1]) {
+                    pres[size] = label.pre;
+                    posts[size] = label.post;
+                    size++;
+                }
+            }
+            this.pres = Arrays.copyOf(pres, size);
+            this.posts = Arrays.copyOf(posts, size);
+        }
+
+        private boolean encloses(Label tenant) {
+            int i = Arrays.binarySearch(pres, tenant.pre);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            return i >= 0 && tenant.post <= posts[i];
+        }
+    }
+}
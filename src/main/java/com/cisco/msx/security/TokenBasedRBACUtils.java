@@ -5,21 +5,69 @@
 
 package com.cisco.msx.security;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.lang.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * RBAC utils based on the oauth2 token. It uses the oauth2 token to retrieve the SecurityContextDetails from IDM. The permission and access check
- *  is based on the SecurityContextDetails and the IDM tenant APIs
+ *  is based on the SecurityContextDetails and the IDM tenant APIs. Tenant lookups are answered by the TenantHierarchyIndex
+ *  for the tenants it contains. TenantIds found invalid are remembered in the invalid tenant cache, when given, for its
+ *  time to live.
+ * <p>
+ * The methods suffixed with Async are the non-blocking counterparts, backed by the {@link AsyncIdmSecurityApi}. They
+ * issue the independent lookups in parallel and are only available when the AsyncIdmSecurityApi is enabled.
  */
-@RequiredArgsConstructor
 public class TokenBasedRBACUtils {
 
+    /**
+     * Tenants of a batch looked up at the same time by {@link #hasAccessToTenantsAsync(String, Collection)}
+     */
+    private static final int MAX_CONCURRENT_TENANT_LOOKUPS = 4;
+
     private final IdmSecurityApi idmSecurityApi;
 
+    private final TenantHierarchyIndex tenantHierarchyIndex;
+
+    @Nullable
+    private final AsyncIdmSecurityApi asyncIdmSecurityApi;
+
+    @Nullable
+    private final Cache invalidTenantCache;
+
+    public TokenBasedRBACUtils(IdmSecurityApi idmSecurityApi) {
+        this(idmSecurityApi, new TenantHierarchyIndex(idmSecurityApi, new IntegrationSecurityProperties.TenantHierarchyIndexProperties()));
+    }
+
+    public TokenBasedRBACUtils(IdmSecurityApi idmSecurityApi, TenantHierarchyIndex tenantHierarchyIndex) {
+        this(idmSecurityApi, tenantHierarchyIndex, null);
+    }
+
+    public TokenBasedRBACUtils(IdmSecurityApi idmSecurityApi, TenantHierarchyIndex tenantHierarchyIndex,
+                               @Nullable AsyncIdmSecurityApi asyncIdmSecurityApi) {
+        this(idmSecurityApi, tenantHierarchyIndex, asyncIdmSecurityApi, null);
+    }
+
+    @Autowired
+    public TokenBasedRBACUtils(IdmSecurityApi idmSecurityApi, TenantHierarchyIndex tenantHierarchyIndex,
+                               @Nullable AsyncIdmSecurityApi asyncIdmSecurityApi, @Nullable Cache invalidTenantCache) {
+        this.idmSecurityApi = idmSecurityApi;
+        this.tenantHierarchyIndex = tenantHierarchyIndex;
+        this.asyncIdmSecurityApi = asyncIdmSecurityApi;
+        this.invalidTenantCache = invalidTenantCache;
+    }
+
     /**
      *  Check if the user associated with the oauth2Token has the specified permission
      * @param oauth2Token oauth2 token
@@ -38,8 +86,7 @@ public class TokenBasedRBACUtils {
      * @return true if the user has the permission; false otherwise
      */
     public boolean hasPermission(SecurityContextDetails securityContextDetails, String permission) {
-        List<String> permissions = securityContextDetails.getPermissions();
-        return permissions.contains(permission);
+        return securityContextDetails.getAccess().hasPermission(permission);
     }
 
     /**
@@ -67,25 +114,42 @@ public class TokenBasedRBACUtils {
         if (hasAccessAllTenantsPermission(oauth2Token)){
             return true;
         }
-        SecurityContextDetails securityContextDetails = idmSecurityApi.checkToken(oauth2Token);
-        List<String> assignedTenants = securityContextDetails.getAssignedTenants();
-        if (assignedTenants.contains(tenantId)) {
+        SecurityContextAccess access = idmSecurityApi.checkToken(oauth2Token).getAccess();
+        if (access.isAssigned(tenantId)) {
             return true;
         }
-        Set<String> ancestors = idmSecurityApi.getTenantAncestors(tenantId);
-        return ancestors.stream().anyMatch(ancestor -> assignedTenants.contains(ancestor));
+        return isInAssignedSubtree(access, tenantId);
     }
 
     /**
      * Convenient method to check if the user has access to every item in the list.
      * If any tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * The token is checked once for the whole collection, see {@link #hasAccessToTenants(SecurityContextDetails, Collection)}.
      * @param oauth2Token oauth2 token
      * @param tenantIds tenantIds to check
      * @return false if the user doesn't have access to any of the tenant id in the collection.
      */
     public boolean hasAccessToTenants(String oauth2Token, Collection<String> tenantIds) {
-        for (String tenantId : tenantIds) {
-            if (!hasAccessToTenant(oauth2Token, tenantId)) {
+        if (tenantIds.isEmpty()) {
+            return true;
+        }
+        SecurityContextDetails securityContextDetails = idmSecurityApi.checkToken(oauth2Token);
+        return hasAccessToTenants(securityContextDetails, tenantIds);
+    }
+
+    /**
+     * Check if the user associated with the securityContextDetails has access to every item in the list.
+     * If any tenantId is not valid (i.e. does not exist), the return value will also be false.
+     * Duplicate tenantIds are checked once, tenant lookups are shared between the tenantIds of the collection and the
+     * evaluation stops at the first tenant the user has no access to.
+     * @param securityContextDetails securityContextDetails
+     * @param tenantIds tenantIds to check
+     * @return false if the user doesn't have access to any of the tenant id in the collection.
+     */
+    public boolean hasAccessToTenants(SecurityContextDetails securityContextDetails, Collection<String> tenantIds) {
+        TenantAccessEvaluator evaluator = new TenantAccessEvaluator(securityContextDetails);
+        for (String tenantId : new LinkedHashSet<>(tenantIds)) {
+            if (!evaluator.hasAccess(tenantId)) {
                 return false;
             }
         }
@@ -98,12 +162,436 @@ public class TokenBasedRBACUtils {
      * @return true if the tenantId is valid; false otherwise
      */
     public boolean isTenantIdValid(String tenantId) {
+        if (tenantHierarchyIndex.contains(tenantId)) {
+            return true;
+        }
+        if (isKnownInvalid(tenantId)) {
+            return false;
+        }
+
         String parentId = idmSecurityApi.getTenantParent(tenantId);
 
         if (parentId != null && !parentId.isBlank()) {
             return true;
         } else {
-            return idmSecurityApi.getTenantRoot().equals(tenantId);
+            return rememberValidity(tenantId, idmSecurityApi.getTenantRoot().equals(tenantId));
+        }
+    }
+
+    /**
+     * Get the ancestors of the tenant, from the tenant hierarchy index if the tenant is indexed and from IDM otherwise
+     * @param tenantId tenantId to look up
+     * @return the ancestors of the tenant
+     */
+    public Set<String> getTenantAncestors(String tenantId) {
+        Set<String> indexed = tenantHierarchyIndex.getAncestors(tenantId);
+        return indexed != null ? indexed : idmSecurityApi.getTenantAncestors(tenantId);
+    }
+
+    /**
+     * Check if a tenant is an ancestor of another. Tenants of the tenant hierarchy index are compared by their
+     * pre/post-order labels, in constant time, other tenants are looked up in IDM.
+     * @param ancestorTenantId tenantId of the presumed ancestor
+     * @param tenantId tenantId to check
+     * @return true if ancestorTenantId is a proper ancestor of tenantId; false otherwise
+     */
+    public boolean isTenantAncestor(String ancestorTenantId, String tenantId) {
+        Boolean indexed = tenantHierarchyIndex.isAncestor(ancestorTenantId, tenantId);
+        if (indexed != null) {
+            return indexed;
+        }
+        Set<String> ancestors = idmSecurityApi.getTenantAncestors(tenantId);
+        return ancestors != null && ancestors.contains(ancestorTenantId);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #hasPermission(String, String)}
+     * @param oauth2Token oauth2 token
+     * @param permission permission to check
+     * @return future completed with true if the user has the permission; false otherwise
+     */
+    public CompletableFuture<Boolean> hasPermissionAsync(String oauth2Token, String permission) {
+        return asyncIdmSecurityApi().checkToken(oauth2Token)
+                .thenApply(securityContextDetails -> hasPermission(securityContextDetails, permission));
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #hasAccessAllTenantsPermission(String)}
+     * @param oauth2Token oauth2 token
+     * @return future completed with true if the user has the permission; false otherwise
+     */
+    public CompletableFuture<Boolean> hasAccessAllTenantsPermissionAsync(String oauth2Token) {
+        return hasPermissionAsync(oauth2Token, Constants.ACCESS_ALL_TENANTS);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #hasAccessToTenant(String, String)}. The token check, the tenant validation and
+     * the ancestors lookup are issued in parallel.
+     * @param oauth2Token oauth2 token
+     * @param tenantId tenantId to check
+     * @return future completed with true if the user has access to the tenant; false otherwise
+     */
+    public CompletableFuture<Boolean> hasAccessToTenantAsync(String oauth2Token, String tenantId) {
+        return hasAccessToTenantAsync(asyncIdmSecurityApi().checkToken(oauth2Token), tenantId);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #hasAccessToTenants(String, Collection)}. The token is checked first; the
+     * tenants which can be decided from the SecurityContextDetails, the tenant hierarchy index and the invalid tenant
+     * cache are decided without any lookup, and the other tenants are looked up a few at a time, sharing the lookups the
+     * same way {@link #hasAccessToTenants(SecurityContextDetails, Collection)} does. The evaluation stops at the first
+     * tenant the user has no access to.
+     * @param oauth2Token oauth2 token
+     * @param tenantIds tenantIds to check
+     * @return future completed with false if the user doesn't have access to any of the tenant id in the collection.
+     */
+    public CompletableFuture<Boolean> hasAccessToTenantsAsync(String oauth2Token, Collection<String> tenantIds) {
+        if (tenantIds.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        Set<String> distinctTenantIds = new LinkedHashSet<>(tenantIds);
+        return asyncIdmSecurityApi().checkToken(oauth2Token).thenCompose(securityContextDetails -> {
+            TenantAccessEvaluator evaluator = new TenantAccessEvaluator(securityContextDetails);
+            List<String> undecided = new ArrayList<>();
+            for (String tenantId : distinctTenantIds) {
+                Boolean decision = evaluator.decideLocally(tenantId);
+                if (decision == null) {
+                    undecided.add(tenantId);
+                } else if (!decision) {
+                    return CompletableFuture.completedFuture(false);
+                }
+            }
+            return undecided.isEmpty() ? CompletableFuture.completedFuture(true) : new TenantAccessBatch(evaluator, undecided).start();
+        });
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #isTenantIdValid(String)}
+     * @param tenantId tenantId to check
+     * @return future completed with true if the tenantId is valid; false otherwise
+     */
+    public CompletableFuture<Boolean> isTenantIdValidAsync(String tenantId) {
+        if (tenantHierarchyIndex.contains(tenantId)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        if (isKnownInvalid(tenantId)) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return asyncIdmSecurityApi().getTenantParent(tenantId).thenCompose(parentId -> {
+            if (parentId != null && !parentId.isBlank()) {
+                return CompletableFuture.completedFuture(true);
+            }
+            return asyncIdmSecurityApi().getTenantRoot().thenApply(root -> rememberValidity(tenantId, tenantId.equals(root)));
+        });
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #getTenantAncestors(String)}
+     * @param tenantId tenantId to look up
+     * @return future completed with the ancestors of the tenant
+     */
+    public CompletableFuture<Set<String>> getTenantAncestorsAsync(String tenantId) {
+        Set<String> indexed = tenantHierarchyIndex.getAncestors(tenantId);
+        return indexed != null ? CompletableFuture.completedFuture(indexed) : asyncIdmSecurityApi().getTenantAncestors(tenantId);
+    }
+
+    private CompletableFuture<Boolean> hasAccessToTenantAsync(CompletableFuture<SecurityContextDetails> securityContextDetails, String tenantId) {
+        CompletableFuture<Boolean> valid = isTenantIdValidAsync(tenantId);
+        CompletableFuture<Set<String>> ancestors = tenantHierarchyIndex.contains(tenantId) ? null : getTenantAncestorsAsync(tenantId);
+        return valid.thenCompose(isValid -> {
+            if (!isValid) {
+                return CompletableFuture.completedFuture(false);
+            }
+            return securityContextDetails.thenCompose(details -> {
+                SecurityContextAccess access = details.getAccess();
+                if (access.hasPermission(Constants.ACCESS_ALL_TENANTS) || access.isAssigned(tenantId)) {
+                    return CompletableFuture.completedFuture(true);
+                }
+                Boolean indexed = tenantHierarchyIndex.isInAssignedSubtree(access, tenantId);
+                if (indexed != null) {
+                    return CompletableFuture.completedFuture(indexed);
+                }
+                // the ancestors are only needed, and their lookup failures only matter, when the tenant is not assigned
+                return (ancestors != null ? ancestors : asyncIdmSecurityApi().getTenantAncestors(tenantId)).thenApply(access::isAnyAssigned);
+            });
+        });
+    }
+
+    /**
+     * Check if the tenant is in the subtree of any tenant assigned to the user. Indexed tenants are checked against the
+     * subtrees of the assigned tenants, other tenants, including tenants dropped from the index since they were found
+     * valid, against their ancestors from IDM
+     * @param access access of the user
+     * @param tenantId tenantId to check
+     * @return true if an assigned tenant is a proper ancestor of the tenant; false otherwise
+     */
+    public boolean isInAssignedSubtree(SecurityContextAccess access, String tenantId) {
+        Boolean indexed = tenantHierarchyIndex.isInAssignedSubtree(access, tenantId);
+        if (indexed != null) {
+            return indexed;
+        }
+        return access.isAnyAssigned(idmSecurityApi.getTenantAncestors(tenantId));
+    }
+
+    private boolean isKnownInvalid(String tenantId) {
+        return invalidTenantCache != null && invalidTenantCache.get(tenantId) != null;
+    }
+
+    private boolean rememberValidity(String tenantId, boolean valid) {
+        if (!valid && invalidTenantCache != null) {
+            invalidTenantCache.put(tenantId, Boolean.TRUE);
+        }
+        return valid;
+    }
+
+    private AsyncIdmSecurityApi asyncIdmSecurityApi() {
+        if (asyncIdmSecurityApi == null) {
+            throw new IllegalStateException("AsyncIdmSecurityApi is not enabled, see integration.security.async.enabled");
+        }
+        return asyncIdmSecurityApi;
+    }
+
+    /**
+     * Evaluates tenant access of one SecurityContextDetails for a batch of tenants. The tenant root, the parents and
+     * the access decisions found along the way are remembered, so a tenant whose parent was already decided costs a
+     * single validity lookup and tenants sharing ancestors share one ancestors lookup. Tenants of the tenant hierarchy
+     * index are decided by their pre/post-order labels without any lookup.
+     * <p>
+     * The lookups are made blocking by {@link #hasAccess(String)} and non-blocking by {@link #hasAccessAsync(String)},
+     * whose completions may update the remembered state from several threads.
+     */
+    private class TenantAccessEvaluator {
+
+        private final boolean accessAllTenants;
+
+        private final SecurityContextAccess access;
+
+        private final Map<String, Boolean> decisions = new HashMap<>();
+
+        private final Map<String, String> parents = new HashMap<>();
+
+        private String root;
+
+        private CompletableFuture<String> rootAsync;
+
+        TenantAccessEvaluator(SecurityContextDetails securityContextDetails) {
+            this.access = securityContextDetails.getAccess();
+            this.accessAllTenants = access.hasPermission(Constants.ACCESS_ALL_TENANTS);
+        }
+
+        boolean hasAccess(String tenantId) {
+            Boolean valid = validLocally(tenantId);
+            if (valid == null) {
+                String parentId = idmSecurityApi.getTenantParent(tenantId);
+                String tenantRoot = parentId != null && !parentId.isBlank() ? null : root();
+                valid = recordValidity(tenantId, parentId, tenantRoot);
+            }
+            if (!valid) {
+                return false;
+            }
+            Boolean granted = grantedLocally(tenantId);
+            if (granted != null) {
+                return granted;
+            }
+            return recordAncestors(tenantId, getTenantAncestors(tenantId));
+        }
+
+        CompletableFuture<Boolean> hasAccessAsync(String tenantId) {
+            Boolean valid = validLocally(tenantId);
+            CompletableFuture<Boolean> validity = valid != null ? CompletableFuture.completedFuture(valid) :
+                    asyncIdmSecurityApi().getTenantParent(tenantId).thenCompose(parentId -> parentId != null && !parentId.isBlank() ?
+                            CompletableFuture.completedFuture(recordValidity(tenantId, parentId, null)) :
+                            rootAsync().thenApply(tenantRoot -> recordValidity(tenantId, parentId, tenantRoot)));
+            return validity.thenCompose(isValid -> {
+                if (!isValid) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                Boolean granted = grantedLocally(tenantId);
+                if (granted != null) {
+                    return CompletableFuture.completedFuture(granted);
+                }
+                return asyncIdmSecurityApi().getTenantAncestors(tenantId).thenApply(ancestors -> recordAncestors(tenantId, ancestors));
+            });
+        }
+
+        /**
+         * @return the decision if it can be made without any lookup, or null
+         */
+        @Nullable
+        Boolean decideLocally(String tenantId) {
+            Boolean valid = validLocally(tenantId);
+            if (valid == null) {
+                return null;
+            }
+            return valid ? grantedLocally(tenantId) : Boolean.FALSE;
+        }
+
+        /**
+         * @return whether the tenant is valid if known without any lookup, or null
+         */
+        @Nullable
+        private synchronized Boolean validLocally(String tenantId) {
+            if (parents.containsKey(tenantId) || decisions.containsKey(tenantId)) {
+                return true;
+            }
+            if (tenantHierarchyIndex.contains(tenantId)) {
+                parents.put(tenantId, tenantHierarchyIndex.getParent(tenantId));
+                return true;
+            }
+            if (isKnownInvalid(tenantId)) {
+                return false;
+            }
+            return null;
+        }
+
+        /**
+         * @return whether the valid tenant is granted if known without any lookup, or null
+         */
+        @Nullable
+        private synchronized Boolean grantedLocally(String tenantId) {
+            if (accessAllTenants || access.isAssigned(tenantId)) {
+                return true;
+            }
+
+            Boolean decision = decisions.get(tenantId);
+            if (decision != null) {
+                return decision;
+            }
+
+            Boolean indexed = tenantHierarchyIndex.isInAssignedSubtree(access, tenantId);
+            if (indexed != null) {
+                decisions.put(tenantId, indexed);
+                return indexed;
+            }
+
+            String parentId = parents.get(tenantId);
+            if (parentId != null) {
+                Boolean parentDecision = access.isAssigned(parentId) ? Boolean.TRUE : decisions.get(parentId);
+                if (parentDecision != null) {
+                    decisions.put(tenantId, parentDecision);
+                    return parentDecision;
+                }
+            }
+            return null;
+        }
+
+        private synchronized boolean recordValidity(String tenantId, @Nullable String parentId, @Nullable String tenantRoot) {
+            if (parentId != null && !parentId.isBlank()) {
+                parents.put(tenantId, parentId);
+                return true;
+            }
+            if (tenantId.equals(tenantRoot)) {
+                parents.put(tenantId, null);
+                return true;
+            }
+            return rememberValidity(tenantId, false);
+        }
+
+        private synchronized boolean recordAncestors(String tenantId, @Nullable Set<String> ancestors) {
+            boolean granted = access.isAnyAssigned(ancestors);
+            decisions.put(tenantId, granted);
+            String parentId = parents.get(tenantId);
+            if (!granted && ancestors != null) {
+                // none of the ancestors is assigned, so none of them grants access to itself either
+                ancestors.forEach(ancestor -> decisions.put(ancestor, false));
+            } else if (granted && parentId != null) {
+                // the assigned ancestor is the parent or one of its ancestors
+                decisions.put(parentId, true);
+            }
+            return granted;
+        }
+
+        private String root() {
+            if (root == null) {
+                root = idmSecurityApi.getTenantRoot();
+            }
+            return root;
+        }
+
+        private synchronized CompletableFuture<String> rootAsync() {
+            if (rootAsync == null) {
+                rootAsync = asyncIdmSecurityApi().getTenantRoot();
+            }
+            return rootAsync;
+        }
+    }
+
+    /**
+     * Non-blocking evaluation of a batch of tenants which could not be decided locally. At most
+     * {@link #MAX_CONCURRENT_TENANT_LOOKUPS} tenants are looked up at a time, and the result completes with false on the
+     * first denial without starting the lookups of the remaining tenants.
+     */
+    private static class TenantAccessBatch {
+
+        private final TenantAccessEvaluator evaluator;
+
+        private final Iterator<String> pending;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private int inFlight;
+
+        TenantAccessBatch(TenantAccessEvaluator evaluator, Collection<String> tenantIds) {
+            this.evaluator = evaluator;
+            this.pending = tenantIds.iterator();
+        }
+
+        CompletableFuture<Boolean> start() {
+            next();
+            return result;
+        }
+
+        private void next() {
+            while (true) {
+                String tenantId;
+                synchronized (this) {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    if (!pending.hasNext()) {
+                        if (inFlight == 0) {
+                            result.complete(true);
+                        }
+                        return;
+                    }
+                    if (inFlight >= MAX_CONCURRENT_TENANT_LOOKUPS) {
+                        return;
+                    }
+                    tenantId = pending.next();
+                    inFlight++;
+                }
+                CompletableFuture<Boolean> decision = evaluator.hasAccessAsync(tenantId);
+                if (!decision.isDone()) {
+                    decision.whenComplete((granted, e) -> {
+                        if (onDecision(decision)) {
+                            next();
+                        }
+                    });
+                } else if (!onDecision(decision)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return true if the remaining tenants are to be checked
+         */
+        private boolean onDecision(CompletableFuture<Boolean> decision) {
+            synchronized (this) {
+                inFlight--;
+            }
+            try {
+                if (!Boolean.TRUE.equals(decision.join())) {
+                    result.complete(false);
+                    return false;
+                }
+                return true;
+            } catch (CompletionException e) {
+                result.completeExceptionally(e.getCause());
+                return false;
+            }
         }
     }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Computes the digest used to key token-derived data, so raw tokens are never kept as cache keys.
+ */
+public final class TokenDigest {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private TokenDigest() {
+    }
+
+    /**
+     * @param token oauth2 token
+     * @return the URL-safe base64 encoded SHA-256 digest of the token
+     */
+    public static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance(ALGORITHM).digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported by this JVM", e);
+        }
+    }
+}
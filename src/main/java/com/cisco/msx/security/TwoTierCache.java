@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One of the IDM security caches with a local first level in front of the shared {@link IdmSecurityL2Cache}. Reads
+ * are answered by the first level, then by the second level whose hits are copied to the first level. Writes go to
+ * both levels, each entry living in the second level for the time to live given for its value.
+ * <p>
+ * {@link #evict(Object)} stays local: it evicts the second level only for an entry found in the first level, and
+ * publishes nothing, so the results that are never cached cost no remote call. Real invalidations go through
+ * {@link #evictEverywhere(Object)} and {@link #clear()}, which are published as {@link IdmSecurityInvalidation}s so the
+ * first level of every replica is evicted as well.
+ */
+@Slf4j
+public class TwoTierCache implements Cache {
+
+    private final Cache localCache;
+
+    @Nullable
+    private final IdmSecurityL2Cache l2Cache;
+
+    private final Function<Object, Duration> timeToLive;
+
+    private final Consumer<IdmSecurityInvalidation> invalidations;
+
+    /**
+     * @param localCache    first level
+     * @param l2Cache       second level, or null to only broadcast the evictions of the first level
+     * @param timeToLive    time to live in the second level of a value, values with no positive time to live are not written to it
+     * @param invalidations receives the evictions and the clears to apply on every replica
+     */
+    public TwoTierCache(Cache localCache, @Nullable IdmSecurityL2Cache l2Cache, Function<Object, Duration> timeToLive,
+                        Consumer<IdmSecurityInvalidation> invalidations) {
+        this.localCache = localCache;
+        this.l2Cache = l2Cache;
+        this.timeToLive = timeToLive;
+        this.invalidations = invalidations;
+    }
+
+    @Override
+    public String getName() {
+        return localCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache.getNativeCache();
+    }
+
+    @Override
+    @Nullable
+    public ValueWrapper get(Object key) {
+        ValueWrapper local = localCache.get(key);
+        if (local != null) {
+            return local;
+        }
+        Object shared = getShared(key);
+        if (shared == null) {
+            return null;
+        }
+        localCache.put(key, shared);
+        return new SimpleValueWrapper(shared);
+    }
+
+    /**
+     * @return the entry of the first level, without reading the second level
+     */
+    @Nullable
+    public ValueWrapper getLocal(Object key) {
+        return localCache.get(key);
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, @Nullable Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value = localCache.get(key, valueLoader);
+        putShared(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, @Nullable Object value) {
+        localCache.put(key, value);
+        putShared(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        if (localCache.get(key) == null) {
+            return;
+        }
+        localCache.evict(key);
+        evictShared(key);
+    }
+
+    /**
+     * Evict the entry from both levels and from the first level of every replica, whether or not it was found here
+     */
+    public void evictEverywhere(Object key) {
+        localCache.evict(key);
+        evictShared(key);
+        invalidations.accept(IdmSecurityInvalidation.evict(getName(), key));
+    }
+
+    @Override
+    public void clear() {
+        localCache.clear();
+        if (l2Cache != null) {
+            try {
+                l2Cache.clear(getName());
+            } catch (RuntimeException e) {
+                log.warn("Failed to clear the shared {} cache", getName(), e);
+            }
+        }
+        invalidations.accept(IdmSecurityInvalidation.clear(getName()));
+    }
+
+    @Nullable
+    private Object getShared(Object key) {
+        if (l2Cache == null) {
+            return null;
+        }
+        try {
+            return l2Cache.get(getName(), key);
+        } catch (RuntimeException e) {
+            log.debug("Failed to read the shared {} cache", getName(), e);
+            return null;
+        }
+    }
+
+    private void putShared(Object key, @Nullable Object value) {
+        if (l2Cache == null || value == null) {
+            return;
+        }
+        Duration ttl = timeToLive.apply(value);
+        if (ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+        try {
+            l2Cache.put(getName(), key, value, ttl);
+        } catch (RuntimeException e) {
+            log.debug("Failed to write the shared {} cache", getName(), e);
+        }
+    }
+
+    private void evictShared(Object key) {
+        if (l2Cache == null) {
+            return;
+        }
+        try {
+            l2Cache.evict(getName(), key);
+        } catch (RuntimeException e) {
+            log.warn("Failed to evict from the shared {} cache", getName(), e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Hands out the local {@link IdmSecurityCaches} as
+ * {@link TwoTierCache}s when an {@link IdmSecurityL2Cache} or an {@link IdmSecurityInvalidationBroadcaster} is
+ * configured, and as they are otherwise.
+ * <p>
+ * Invalidations, published by any replica, evict the first level of this replica's caches and are then passed to the
+ * invalidation listeners. Without a broadcaster they are applied to this replica only.
+ */
+@Slf4j
+public class TwoTierIdmSecurityCaches {
+
+    private final IdmSecurityCaches localCaches;
+
+    @Nullable
+    private final IdmSecurityL2Cache l2Cache;
+
+    @Nullable
+    private final IdmSecurityInvalidationBroadcaster broadcaster;
+
+    private final IntegrationSecurityProperties integrationSecurityProperties;
+
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    private final List<Consumer<IdmSecurityInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    public TwoTierIdmSecurityCaches(IdmSecurityCaches localCaches, @Nullable IdmSecurityL2Cache l2Cache,
+                                    @Nullable IdmSecurityInvalidationBroadcaster broadcaster,
+                                    IntegrationSecurityProperties integrationSecurityProperties) {
+        this.localCaches = localCaches;
+        this.l2Cache = l2Cache;
+        this.broadcaster = broadcaster;
+        this.integrationSecurityProperties = integrationSecurityProperties;
+        if (broadcaster != null) {
+            broadcaster.addListener(this::apply);
+        }
+    }
+
+    /**
+     * @param name name of the cache, one of the cache names of {@link Constants}
+     * @return the cache, or null if there is no such local cache
+     */
+    @Nullable
+    public Cache getCache(String name) {
+        Cache localCache = localCaches.getCache(name);
+        if (localCache == null || (l2Cache == null && broadcaster == null)) {
+            return localCache;
+        }
+        return caches.computeIfAbsent(name, key -> new TwoTierCache(localCache, l2Cache, value -> timeToLive(name, value), this::invalidate));
+    }
+
+    /**
+     * Evict the check_token results of a revoked token on every replica, so the next check goes to IDM
+     */
+    public void revokeToken(String token) {
+        String key = TokenDigest.sha256(token);
+        evictEverywhere(Constants.CHECK_TOKEN_CACHE, key);
+        evictEverywhere(Constants.INACTIVE_TOKEN_CACHE, key);
+    }
+
+    /**
+     * Discard the tenant hierarchy results of every replica after a tenant was created, moved or deleted
+     */
+    public void tenantMoved(String tenantId) {
+        evictEverywhere(Constants.INVALID_TENANT_CACHE, tenantId);
+        Cache tenantHierarchyCache = getCache(Constants.TENANT_HIERARCHY_CACHE);
+        if (tenantHierarchyCache != null) {
+            tenantHierarchyCache.clear();
+        } else {
+            invalidate(IdmSecurityInvalidation.clear(Constants.TENANT_HIERARCHY_CACHE));
+        }
+    }
+
+    /**
+     * @param listener notified of every invalidation once the first level of this replica's cache has been evicted
+     */
+    public void addInvalidationListener(Consumer<IdmSecurityInvalidation> listener) {
+        listeners.add(listener);
+    }
+
+    private void evictEverywhere(String cacheName, Object key) {
+        Cache cache = getCache(cacheName);
+        if (cache instanceof TwoTierCache) {
+            ((TwoTierCache) cache).evictEverywhere(key);
+        } else {
+            if (cache != null) {
+                cache.evict(key);
+            }
+            invalidate(IdmSecurityInvalidation.evict(cacheName, key));
+        }
+    }
+
+    private void invalidate(IdmSecurityInvalidation invalidation) {
+        if (broadcaster != null) {
+            broadcaster.publish(invalidation);
+        } else {
+            apply(invalidation);
+        }
+    }
+
+    private void apply(IdmSecurityInvalidation invalidation) {
+        Cache localCache = localCaches.getCache(invalidation.getCacheName());
+        if (localCache != null) {
+            if (invalidation.getKey() == null) {
+                localCache.clear();
+            } else {
+                localCache.evict(invalidation.getKey());
+            }
+        }
+        for (Consumer<IdmSecurityInvalidation> listener : listeners) {
+            try {
+                listener.accept(invalidation);
+            } catch (RuntimeException e) {
+                log.warn("Failed to apply {}", invalidation, e);
+            }
+        }
+    }
+
+    private Duration timeToLive(String cacheName, Object value) {
+        switch (cacheName) {
+            case Constants.CHECK_TOKEN_CACHE:
+                return value instanceof CachedSecurityContextDetails ?
+                        Duration.ofMillis(((CachedSecurityContextDetails) value).getStaleUntil() - System.currentTimeMillis()) : Duration.ZERO;
+            case Constants.INACTIVE_TOKEN_CACHE:
+                return integrationSecurityProperties.getCache().getInactiveToken().getTimeToLive();
+            case Constants.INVALID_TENANT_CACHE:
+                return integrationSecurityProperties.getCache().getInvalidTenant().getTimeToLive();
+            case Constants.TENANT_HIERARCHY_CACHE:
+                return integrationSecurityProperties.getCircuitBreaker().getTenantHierarchyMaxStaleness();
+            default:
+                return Duration.ZERO;
+        }
+    }
+}
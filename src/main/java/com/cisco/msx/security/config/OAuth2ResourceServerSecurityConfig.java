@@ -5,21 +5,39 @@
 
 package com.cisco.msx.security.config;
 
+import com.cisco.msx.security.CachingJwtDecoder;
+import com.cisco.msx.security.MsxCorsPreflightFilter;
+import com.cisco.msx.security.MsxJwtCacheProperties;
 import com.cisco.msx.security.MsxJwtGrantedAuthoritiesConverter;
 import com.cisco.msx.security.MsxOAuthResourceProperties;
+import com.cisco.msx.security.MsxResourceRuleMatcher;
 import com.cisco.msx.security.MsxSecurityCorsProperties;
+import com.cisco.msx.security.MsxSecurityExpressionParser;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.expression.SecurityExpressionHandler;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.configurers.ExpressionUrlAuthorizationConfigurer;
+import org.springframework.security.config.core.GrantedAuthorityDefaults;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.expression.DefaultWebSecurityExpressionHandler;
 import org.springframework.security.web.authentication.session.NullAuthenticatedSessionStrategy;
 import org.springframework.util.StringUtils;
 import org.springframework.web.cors.CorsConfiguration;
@@ -27,8 +45,10 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @EnableWebSecurity
-@EnableConfigurationProperties({MsxSecurityCorsProperties.class, MsxOAuthResourceProperties.class})
+@EnableConfigurationProperties({MsxSecurityCorsProperties.class, MsxOAuthResourceProperties.class, MsxJwtCacheProperties.class})
 public class OAuth2ResourceServerSecurityConfig extends WebSecurityConfigurerAdapter {
 
     @Autowired
@@ -37,6 +57,12 @@ public class OAuth2ResourceServerSecurityConfig extends WebSecurityConfigurerAda
     @Autowired
     private MsxSecurityCorsProperties msxSecurityCorsProperties;
 
+    @Autowired
+    private MsxJwtCacheProperties msxJwtCacheProperties;
+
+    @Autowired
+    private ObjectProvider<JwtDecoder> jwtDecoder;
+
     @Override
     public void configure(WebSecurity web) {
         web.ignoring().antMatchers(HttpMethod.OPTIONS, "/**");
@@ -44,37 +70,26 @@ public class OAuth2ResourceServerSecurityConfig extends WebSecurityConfigurerAda
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
-        for (MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule : msxOAuthResourceProperties.getRules()) {
-            if (rule.getPatterns() == null || rule.getPatterns().isEmpty()) {
-                continue;
+        List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules = msxOAuthResourceProperties.getRules();
+        if (rules != null && rules.stream().anyMatch(rule -> rule.getPatterns() != null && !rule.getPatterns().isEmpty())) {
+            // the rules are dispatched by one compiled matcher rather than one matcher per pattern evaluated in turn
+            MsxResourceRuleMatcher ruleMatcher = new MsxResourceRuleMatcher(rules);
+            http.requestMatchers().requestMatchers(ruleMatcher);
+            http.authorizeRequests().expressionHandler(webSecurityExpressionHandler(http));
+            for (int i = 0; i < rules.size(); i++) {
+                MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule = rules.get(i);
+                if (rule.getPatterns() == null || rule.getPatterns().isEmpty()) {
+                    continue;
+                }
+
+                ExpressionUrlAuthorizationConfigurer<HttpSecurity>.AuthorizedUrl authorizedUrl =
+                        http.authorizeRequests().requestMatchers(ruleMatcher.ruleMatcher(i));
+                if (StringUtils.hasText(rule.getExpr())) {
+                    authorizedUrl.access(rule.getExpr());
+                } else {
+                    authorizedUrl.fullyAuthenticated();
+                }
             }
-
-            // @formatter:off
-            ExpressionUrlAuthorizationConfigurer<HttpSecurity>.AuthorizedUrl authorizedUrl;
-            switch (rule.getType()) {
-                case regex:
-                    authorizedUrl = http.requestMatchers()
-                            .regexMatchers(rule.getPatterns().toArray(new String[0]))
-                            .and()
-                            .authorizeRequests()
-                            .regexMatchers(rule.getPatterns().toArray(new String[0]));
-                    break;
-                case ant:
-                default:
-                    authorizedUrl = http.requestMatchers()
-                            .antMatchers(rule.getPatterns().toArray(new String[0]))
-                            .and()
-                            .authorizeRequests()
-                            .antMatchers(rule.getPatterns().toArray(new String[0]));
-                    break;
-            }
-
-            if (StringUtils.hasText(rule.getExpr())) {
-                authorizedUrl.access(rule.getExpr());
-            } else {
-                authorizedUrl.fullyAuthenticated();
-            }
-            // @formatter:on
         }
 
         // @formatter:off
@@ -84,7 +99,14 @@ public class OAuth2ResourceServerSecurityConfig extends WebSecurityConfigurerAda
                                 .jwtAuthenticationConverter(jwtAuthenticationConverter())
                         )
                 );
+        // @formatter:on
 
+        JwtDecoder delegate = msxJwtCacheProperties.isEnabled() ? jwtDecoder.getIfAvailable() : null;
+        if (delegate != null) {
+            http.oauth2ResourceServer().jwt().decoder(new CachingJwtDecoder(delegate, msxJwtCacheProperties));
+        }
+
+        // @formatter:off
         http
                 .sessionManagement()
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
@@ -104,6 +126,32 @@ public class OAuth2ResourceServerSecurityConfig extends WebSecurityConfigurerAda
         }
     }
 
+    /**
+     * The expression handler Spring Security would create, with the rule expressions parsed by
+     * {@link MsxSecurityExpressionParser} rather than interpreted by SpEL on every request.
+     */
+    private SecurityExpressionHandler<FilterInvocation> webSecurityExpressionHandler(HttpSecurity http) {
+        ApplicationContext context = getApplicationContext();
+        DefaultWebSecurityExpressionHandler expressionHandler = new DefaultWebSecurityExpressionHandler();
+        expressionHandler.setApplicationContext(context);
+
+        AuthenticationTrustResolver trustResolver = http.getSharedObject(AuthenticationTrustResolver.class);
+        if (trustResolver != null) {
+            expressionHandler.setTrustResolver(trustResolver);
+        }
+        RoleHierarchy roleHierarchy = context.getBeanProvider(RoleHierarchy.class).getIfUnique();
+        if (roleHierarchy != null) {
+            expressionHandler.setRoleHierarchy(roleHierarchy);
+        }
+        GrantedAuthorityDefaults grantedAuthorityDefaults = context.getBeanProvider(GrantedAuthorityDefaults.class).getIfUnique();
+        String rolePrefix = grantedAuthorityDefaults != null ? grantedAuthorityDefaults.getRolePrefix() : "ROLE_";
+        expressionHandler.setDefaultRolePrefix(rolePrefix);
+        context.getBeanProvider(PermissionEvaluator.class).ifUnique(expressionHandler::setPermissionEvaluator);
+
+        expressionHandler.setExpressionParser(new MsxSecurityExpressionParser(rolePrefix, roleHierarchy));
+        return expressionHandler;
+    }
+
     @Bean
     public JwtAuthenticationConverter jwtAuthenticationConverter() {
         MsxJwtGrantedAuthoritiesConverter grantedAuthoritiesConverter = new MsxJwtGrantedAuthoritiesConverter();
@@ -113,6 +161,20 @@ public class OAuth2ResourceServerSecurityConfig extends WebSecurityConfigurerAda
         return jwtAuthenticationConverter;
     }
 
+    /**
+     * Pre-flight requests are answered by this filter first, the CORS setups below only see the actual requests.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "security.cors", name = "enabled", havingValue = "true")
+    public FilterRegistrationBean<MsxCorsPreflightFilter> msxCorsPreflightFilter() {
+        FilterRegistrationBean<MsxCorsPreflightFilter> registration =
+                new FilterRegistrationBean<>(new MsxCorsPreflightFilter(msxSecurityCorsProperties));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        registration.setEnabled(msxSecurityCorsProperties.isPreflightFilter() &&
+                msxSecurityCorsProperties.toCorsConfiguration() != null);
+        return registration;
+    }
+
     @Configuration
     public static class CorsWebMvcConfiguration implements WebMvcConfigurer {
 
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security.config;
+
+import com.cisco.msx.security.MsxExpressionReactiveAuthorizationManager;
+import com.cisco.msx.security.MsxJwtGrantedAuthoritiesConverter;
+import com.cisco.msx.security.MsxOAuthResourceProperties;
+import com.cisco.msx.security.MsxSecurityCorsProperties;
+import com.cisco.msx.security.MsxSecurityExpressionParser;
+import com.cisco.msx.security.ReactiveMsxResourceRuleMatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.expression.BeanFactoryResolver;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.core.GrantedAuthorityDefaults;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.header.XFrameOptionsServerHttpHeadersWriter;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.config.CorsRegistry;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.List;
+
+/**
+ * The security.resources rules and the CORS setup of {@link OAuth2ResourceServerSecurityConfig} applied to WebFlux
+ * applications through {@link ServerHttpSecurity}. Pre-flight requests bypass the security filter chain, as they do in
+ * the servlet configuration, and are answered by the CORS mappings of WebFlux.
+ */
+@EnableWebFluxSecurity
+@EnableConfigurationProperties({MsxSecurityCorsProperties.class, MsxOAuthResourceProperties.class})
+public class ReactiveOAuth2ResourceServerSecurityConfig {
+
+    private static final String FULLY_AUTHENTICATED = "isFullyAuthenticated()";
+
+    @Autowired
+    private MsxOAuthResourceProperties msxOAuthResourceProperties;
+
+    @Autowired
+    private MsxSecurityCorsProperties msxSecurityCorsProperties;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Bean
+    public SecurityWebFilterChain msxSecurityWebFilterChain(ServerHttpSecurity http) {
+        List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules = msxOAuthResourceProperties.getRules();
+        ServerWebExchangeMatcher notPreflight = exchange -> HttpMethod.OPTIONS.equals(exchange.getRequest().getMethod()) ?
+                ServerWebExchangeMatcher.MatchResult.notMatch() : ServerWebExchangeMatcher.MatchResult.match();
+        if (rules != null && rules.stream().anyMatch(rule -> rule.getPatterns() != null && !rule.getPatterns().isEmpty())) {
+            ReactiveMsxResourceRuleMatcher ruleMatcher = new ReactiveMsxResourceRuleMatcher(rules);
+            http.securityMatcher(exchange -> notPreflight.matches(exchange)
+                    .filter(ServerWebExchangeMatcher.MatchResult::isMatch)
+                    .flatMap(ignored -> ruleMatcher.matches(exchange))
+                    .switchIfEmpty(ServerWebExchangeMatcher.MatchResult.notMatch()));
+
+            String rolePrefix = rolePrefix();
+            RoleHierarchy roleHierarchy = applicationContext.getBeanProvider(RoleHierarchy.class).getIfUnique();
+            MsxSecurityExpressionParser parser = new MsxSecurityExpressionParser(rolePrefix, roleHierarchy);
+            BeanFactoryResolver beanResolver = new BeanFactoryResolver(applicationContext);
+            for (int i = 0; i < rules.size(); i++) {
+                MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule = rules.get(i);
+                if (rule.getPatterns() == null || rule.getPatterns().isEmpty()) {
+                    continue;
+                }
+
+                String expr = StringUtils.hasText(rule.getExpr()) ? rule.getExpr() : FULLY_AUTHENTICATED;
+                http.authorizeExchange()
+                        .matchers(ruleMatcher.ruleMatcher(i))
+                        .access(new MsxExpressionReactiveAuthorizationManager(expr, parser, rolePrefix, roleHierarchy, beanResolver));
+            }
+        } else {
+            http.securityMatcher(notPreflight);
+        }
+
+        // @formatter:off
+        http
+                .oauth2ResourceServer(oauth2 -> oauth2
+                        .jwt(jwt -> jwt
+                                .jwtAuthenticationConverter(new ReactiveJwtAuthenticationConverterAdapter(jwtAuthenticationConverter()))
+                        )
+                )
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .headers(headers -> headers
+                        .frameOptions(frameOptions -> frameOptions
+                                .mode(XFrameOptionsServerHttpHeadersWriter.Mode.SAMEORIGIN)
+                        )
+                );
+        // @formatter:on
+
+        if (msxSecurityCorsProperties.isEnabled()) {
+            UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+            source.registerCorsConfiguration("/**", msxSecurityCorsProperties.toCorsConfiguration());
+
+            http.cors().configurationSource(source);
+        }
+        return http.build();
+    }
+
+    private JwtAuthenticationConverter jwtAuthenticationConverter() {
+        JwtAuthenticationConverter jwtAuthenticationConverter = new JwtAuthenticationConverter();
+        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(new MsxJwtGrantedAuthoritiesConverter());
+        return jwtAuthenticationConverter;
+    }
+
+    private String rolePrefix() {
+        GrantedAuthorityDefaults grantedAuthorityDefaults = applicationContext.getBeanProvider(GrantedAuthorityDefaults.class).getIfUnique();
+        return grantedAuthorityDefaults != null ? grantedAuthorityDefaults.getRolePrefix() : "ROLE_";
+    }
+
+    @Configuration
+    public static class CorsWebFluxConfiguration implements WebFluxConfigurer {
+
+        @Autowired
+        private MsxSecurityCorsProperties msxSecurityCorsProperties;
+
+        @Override
+        public void addCorsMappings(CorsRegistry registry) {
+            if (msxSecurityCorsProperties.isEnabled()) {
+                registry.addMapping("/**")
+                        .allowedOrigins(msxSecurityCorsProperties.getAllowedOrigins().toArray(new String[0]))
+                        .allowedHeaders(msxSecurityCorsProperties.getAllowedHeaders().toArray(new String[0]))
+                        .allowedMethods(msxSecurityCorsProperties.getAllowedMethods().toArray(new String[0]))
+                        .exposedHeaders(msxSecurityCorsProperties.getExposedHeaders().toArray(new String[0]))
+                        .allowCredentials(msxSecurityCorsProperties.isAllowCredentials())
+                        .maxAge(msxSecurityCorsProperties.getMaxAge().getSeconds());
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security.config;
+
+import com.cisco.msx.security.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancerExchangeFilterFunction;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactiveLoadBalancer;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunctions;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * The IDM security services of WebFlux applications, the reactive counterpart of {@link SecurityServiceConfig}
+ */
+@Configuration
+@PropertySource("classpath:/defaults-security.properties")
+@PropertySource("classpath:/defaults-integration-security.properties")
+@EnableConfigurationProperties({IntegrationSecurityProperties.class})
+@Import(SecurityServiceConfig.MetricsConfiguration.class)
+public class ReactiveSecurityServiceConfig {
+
+    @Bean
+    public ReactiveIdmSecurityApi reactiveIdmSecurityApi(IntegrationSecurityProperties integrationSecurityProperties,
+                                                         ObjectProvider<WebClient.Builder> webClientBuilder,
+                                                         ObjectProvider<ObjectMapper> objectMapper,
+                                                         ObjectProvider<ReactiveLoadBalancer.Factory<ServiceInstance>> reactiveLoadBalancerFactory,
+                                                         ObjectProvider<LoadBalancerClient> loadBalancerClient,
+                                                         TwoTierIdmSecurityCaches twoTierIdmSecurityCaches,
+                                                         ObjectProvider<IdmSecurityMetrics> idmSecurityMetrics) {
+        WebClient.Builder builder = webClientBuilder.getIfAvailable(WebClient::builder).clone();
+        if (integrationSecurityProperties.getClientId() != null) {
+            builder.filter(ExchangeFilterFunctions.basicAuthentication(integrationSecurityProperties.getClientId(),
+                    integrationSecurityProperties.getClientSecret()));
+        }
+        ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory = reactiveLoadBalancerFactory.getIfAvailable();
+        if (loadBalancerFactory != null) {
+            builder.filter(new ReactorLoadBalancerExchangeFilterFunction(loadBalancerFactory));
+        } else {
+            loadBalancerClient.ifAvailable(client -> builder.filter(blockingLoadBalancerExchangeFilterFunction(client)));
+        }
+
+        IntegrationSecurityProperties.CacheProperties cacheProperties = integrationSecurityProperties.getCache();
+        Cache checkTokenCache = cacheProperties.getCheckToken().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.CHECK_TOKEN_CACHE) : null;
+        Cache inactiveTokenCache = cacheProperties.getInactiveToken().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.INACTIVE_TOKEN_CACHE) : null;
+        ReactiveIdmSecurityApi reactiveIdmSecurityApi = new ReactiveIdmSecurityApi(builder.build(),
+                objectMapper.getIfAvailable(ObjectMapper::new), integrationSecurityProperties, checkTokenCache, inactiveTokenCache);
+        reactiveIdmSecurityApi.setMetrics(idmSecurityMetrics.getIfAvailable());
+        return reactiveIdmSecurityApi;
+    }
+
+    /**
+     * Ribbon, the load balancer of the IdmSecurityApi RestTemplate, only provides the blocking LoadBalancerClient, and
+     * this deprecated filter is its only adapter for WebClient. It is used when no reactive load balancer is declared.
+     */
+    @SuppressWarnings("deprecation")
+    private static ExchangeFilterFunction blockingLoadBalancerExchangeFilterFunction(LoadBalancerClient loadBalancerClient) {
+        return new LoadBalancerExchangeFilterFunction(loadBalancerClient);
+    }
+
+    /**
+     * The local IDM security caches. They are not exposed as a cache manager, so the cache auto-configuration of the
+     * application is not affected.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public IdmSecurityCaches idmSecurityCaches(IntegrationSecurityProperties integrationSecurityProperties) {
+        return new IdmSecurityCaches(integrationSecurityProperties);
+    }
+
+    /**
+     * The IDM security caches, backed by the {@link IdmSecurityL2Cache} shared by the replicas and evicted on every
+     * replica through the {@link IdmSecurityInvalidationBroadcaster} when either is declared as a bean
+     */
+    @Bean
+    public TwoTierIdmSecurityCaches twoTierIdmSecurityCaches(IdmSecurityCaches idmSecurityCaches,
+                                                             ObjectProvider<IdmSecurityL2Cache> idmSecurityL2Cache,
+                                                             ObjectProvider<IdmSecurityInvalidationBroadcaster> idmSecurityInvalidationBroadcaster,
+                                                             IntegrationSecurityProperties integrationSecurityProperties) {
+        return new TwoTierIdmSecurityCaches(idmSecurityCaches, idmSecurityL2Cache.getIfAvailable(),
+                idmSecurityInvalidationBroadcaster.getIfAvailable(), integrationSecurityProperties);
+    }
+
+    @Bean
+    public ReactiveTokenBasedRBACUtils reactiveTokenBasedRBACUtils(ReactiveIdmSecurityApi reactiveIdmSecurityApi,
+                                                                   IntegrationSecurityProperties integrationSecurityProperties,
+                                                                   TwoTierIdmSecurityCaches twoTierIdmSecurityCaches) {
+        Cache invalidTenantCache = integrationSecurityProperties.getCache().getInvalidTenant().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.INVALID_TENANT_CACHE) : null;
+        return new ReactiveTokenBasedRBACUtils(reactiveIdmSecurityApi, invalidTenantCache);
+    }
+
+    @Bean
+    public ReactiveSecurityContextBasedRBACUtils reactiveSecurityContextBasedRBACUtils(ReactiveIdmSecurityApi reactiveIdmSecurityApi,
+                                                                                       ReactiveTokenBasedRBACUtils reactiveTokenBasedRBACUtils,
+                                                                                       IntegrationSecurityProperties integrationSecurityProperties) {
+        JwtSecurityContextDetailsConverter jwtSecurityContextDetailsConverter = integrationSecurityProperties.getLocalClaims().isEnabled() ?
+                new JwtSecurityContextDetailsConverter() : null;
+        return new ReactiveSecurityContextBasedRBACUtils(reactiveIdmSecurityApi, reactiveTokenBasedRBACUtils, jwtSecurityContextDetailsConverter);
+    }
+}
@@ -7,43 +7,190 @@ package com.cisco.msx.security.config;
 
 
 import com.cisco.msx.security.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @PropertySource("classpath:/defaults-security.properties")
 @PropertySource("classpath:/defaults-integration-security.properties")
 @EnableConfigurationProperties({IntegrationSecurityProperties.class})
 public class SecurityServiceConfig {
 
-    @Bean
+    private static final int REFRESH_THREADS = 2;
+    private static final int REFRESH_QUEUE_CAPACITY = 1000;
+
+    @Bean(destroyMethod = "close")
     public IdmSecurityApi idmSecurityApi(@Qualifier("basicAuthIdmRestTemplate") RestTemplate basicAuthIdmRestTemplate,
-                                         IntegrationSecurityProperties integrationSecurityProperties) {
-        return new IdmSecurityApi(basicAuthIdmRestTemplate, integrationSecurityProperties);
+                                         IntegrationSecurityProperties integrationSecurityProperties,
+                                         TwoTierIdmSecurityCaches twoTierIdmSecurityCaches,
+                                         ObjectProvider<IdmSecurityMetrics> idmSecurityMetrics) {
+        IntegrationSecurityProperties.CacheProperties cacheProperties = integrationSecurityProperties.getCache();
+        Cache inactiveTokenCache = cacheProperties.getInactiveToken().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.INACTIVE_TOKEN_CACHE) : null;
+        Cache tenantHierarchyCache = integrationSecurityProperties.getCircuitBreaker().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.TENANT_HIERARCHY_CACHE) : null;
+        IdmSecurityApi idmSecurityApi;
+        if (!cacheProperties.getCheckToken().isEnabled()) {
+            idmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, integrationSecurityProperties, null, null, inactiveTokenCache,
+                    tenantHierarchyCache);
+        } else {
+            Cache checkTokenCache = twoTierIdmSecurityCaches.getCache(Constants.CHECK_TOKEN_CACHE);
+            idmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, integrationSecurityProperties, checkTokenCache,
+                    checkTokenRefreshExecutor(), inactiveTokenCache, tenantHierarchyCache);
+        }
+        idmSecurityApi.setMetrics(idmSecurityMetrics.getIfAvailable());
+        return idmSecurityApi;
+    }
+
+    /**
+     * The local IDM security caches. They are not exposed as a cache manager, so the cache auto-configuration of the
+     * application is not affected.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public IdmSecurityCaches idmSecurityCaches(IntegrationSecurityProperties integrationSecurityProperties) {
+        return new IdmSecurityCaches(integrationSecurityProperties);
+    }
+
+    /**
+     * The IDM security caches, backed by the {@link IdmSecurityL2Cache} shared by the replicas and evicted on every
+     * replica through the {@link IdmSecurityInvalidationBroadcaster} when either is declared as a bean
+     */
+    @Bean
+    public TwoTierIdmSecurityCaches twoTierIdmSecurityCaches(IdmSecurityCaches idmSecurityCaches,
+                                                             ObjectProvider<IdmSecurityL2Cache> idmSecurityL2Cache,
+                                                             ObjectProvider<IdmSecurityInvalidationBroadcaster> idmSecurityInvalidationBroadcaster,
+                                                             IntegrationSecurityProperties integrationSecurityProperties) {
+        return new TwoTierIdmSecurityCaches(idmSecurityCaches, idmSecurityL2Cache.getIfAvailable(),
+                idmSecurityInvalidationBroadcaster.getIfAvailable(), integrationSecurityProperties);
+    }
+
+    @Bean
+    public SecurityContextBasedRBACUtils SecurityContextBasedRBACUtils(IdmSecurityApi idmSecurityApi, TokenBasedRBACUtils tokenBasedRBACUtils,
+                                                                       IntegrationSecurityProperties integrationSecurityProperties) {
+        JwtSecurityContextDetailsConverter jwtSecurityContextDetailsConverter = integrationSecurityProperties.getLocalClaims().isEnabled() ?
+                new JwtSecurityContextDetailsConverter() : null;
+        return new SecurityContextBasedRBACUtils(idmSecurityApi, tokenBasedRBACUtils, jwtSecurityContextDetailsConverter);
     }
 
     @Bean
-    public SecurityContextBasedRBACUtils SecurityContextBasedRBACUtils(IdmSecurityApi idmSecurityApi, TokenBasedRBACUtils tokenBasedRBACUtils) {
-        return new SecurityContextBasedRBACUtils(idmSecurityApi, tokenBasedRBACUtils);
+    @ConditionalOnProperty(prefix = "integration.security.async", name = "enabled", havingValue = "true")
+    public AsyncIdmSecurityApi asyncIdmSecurityApi(IdmSecurityApi idmSecurityApi, IntegrationSecurityProperties integrationSecurityProperties,
+                                                   ObjectProvider<ObjectMapper> objectMapper,
+                                                   ObjectProvider<LoadBalancerClient> loadBalancerClient,
+                                                   TwoTierIdmSecurityCaches twoTierIdmSecurityCaches,
+                                                   ObjectProvider<IdmSecurityMetrics> idmSecurityMetrics) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(integrationSecurityProperties.getAsync().getConnectTimeout())
+                .build();
+        IntegrationSecurityProperties.CacheProperties cacheProperties = integrationSecurityProperties.getCache();
+        Cache checkTokenCache = cacheProperties.getCheckToken().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.CHECK_TOKEN_CACHE) : null;
+        Cache inactiveTokenCache = cacheProperties.getInactiveToken().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.INACTIVE_TOKEN_CACHE) : null;
+        // the blocking and the async calls share one circuit breaker and one set of last-known-good results
+        IdmCircuitBreaker circuitBreaker = idmSecurityApi.getCircuitBreaker();
+        Cache tenantHierarchyCache = circuitBreaker != null ?
+                twoTierIdmSecurityCaches.getCache(Constants.TENANT_HIERARCHY_CACHE) : null;
+        AsyncIdmSecurityApi asyncIdmSecurityApi = new AsyncIdmSecurityApi(httpClient, objectMapper.getIfAvailable(ObjectMapper::new),
+                integrationSecurityProperties, loadBalancerClient.getIfAvailable(), checkTokenCache, inactiveTokenCache,
+                circuitBreaker, tenantHierarchyCache);
+        asyncIdmSecurityApi.setMetrics(idmSecurityMetrics.getIfAvailable());
+        return asyncIdmSecurityApi;
     }
 
     @Bean
-    public TokenBasedRBACUtils tokenBasedRBACUtils(IdmSecurityApi idmSecurityApi) {
-        return new TokenBasedRBACUtils(idmSecurityApi);
+    public TokenBasedRBACUtils tokenBasedRBACUtils(IdmSecurityApi idmSecurityApi, TenantHierarchyIndex tenantHierarchyIndex,
+                                                   ObjectProvider<AsyncIdmSecurityApi> asyncIdmSecurityApi,
+                                                   IntegrationSecurityProperties integrationSecurityProperties,
+                                                   TwoTierIdmSecurityCaches twoTierIdmSecurityCaches) {
+        Cache invalidTenantCache = integrationSecurityProperties.getCache().getInvalidTenant().isEnabled() ?
+                twoTierIdmSecurityCaches.getCache(Constants.INVALID_TENANT_CACHE) : null;
+        return new TokenBasedRBACUtils(idmSecurityApi, tenantHierarchyIndex, asyncIdmSecurityApi.getIfAvailable(), invalidTenantCache);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public TenantHierarchyIndex tenantHierarchyIndex(IdmSecurityApi idmSecurityApi, IntegrationSecurityProperties integrationSecurityProperties,
+                                                     TwoTierIdmSecurityCaches twoTierIdmSecurityCaches) {
+        TenantHierarchyIndex tenantHierarchyIndex = new TenantHierarchyIndex(idmSecurityApi, integrationSecurityProperties.getTenantHierarchyIndex());
+        twoTierIdmSecurityCaches.addInvalidationListener(invalidation -> {
+            if (Constants.TENANT_HIERARCHY_CACHE.equals(invalidation.getCacheName())) {
+                tenantHierarchyIndex.requestRefresh();
+            }
+        });
+        return tenantHierarchyIndex;
     }
 
     @LoadBalanced
     @Bean("basicAuthIdmRestTemplate")
     public RestTemplate basicAuthIdmRestTemplate(RestTemplateBuilder restTemplateBuilder,
                                                  IntegrationSecurityProperties integrationSecurityProperties) {
-        return restTemplateBuilder
+        RestTemplate restTemplate = restTemplateBuilder
                 .basicAuthentication(integrationSecurityProperties.getClientId(), integrationSecurityProperties.getClientSecret())
                 .build();
+        // check_token responses are decoded by the streaming reader ahead of the generic JSON converter
+        restTemplate.getMessageConverters().add(0, new SecurityContextDetailsHttpMessageConverter());
+        return restTemplate;
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    public static class MetricsConfiguration {
+
+        /**
+         * Tag value of the cacheManager of the IDM security cache meters. The caches are not managed by a cache manager
+         * of the application, so they are told apart from its caches of the same name.
+         */
+        private static final String CACHE_MANAGER_TAG = "idmSecurityCaches";
+
+        @Bean
+        public IdmSecurityMetrics idmSecurityMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            return new MicrometerIdmSecurityMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+        }
+
+        @Bean
+        public MeterBinder idmSecurityCacheMetrics(IdmSecurityCaches idmSecurityCaches) {
+            return registry -> {
+                for (CaffeineCache cache : idmSecurityCaches.getCaches()) {
+                    CaffeineCacheMetrics.monitor(registry, cache.getNativeCache(), cache.getName(),
+                            Tags.of("cacheManager", CACHE_MANAGER_TAG));
+                }
+            };
+        }
+    }
+
+    private ExecutorService checkTokenRefreshExecutor() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("msx-check-token-refresh-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE_CAPACITY), threadFactory, new ThreadPoolExecutor.DiscardPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 }
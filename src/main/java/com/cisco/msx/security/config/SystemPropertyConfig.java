@@ -5,21 +5,46 @@
 
 package com.cisco.msx.security.config;
 
+import com.cisco.msx.security.MsxSecurityContextProperties;
+import com.cisco.msx.security.SecurityContextPropagation;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.task.TaskDecorator;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import javax.annotation.PostConstruct;
 
 @Configuration
 @Order(Ordered.HIGHEST_PRECEDENCE)
+@EnableConfigurationProperties({MsxSecurityContextProperties.class})
 @Slf4j
 public class SystemPropertyConfig {
 
+    @Autowired
+    private MsxSecurityContextProperties msxSecurityContextProperties;
+
     @PostConstruct
     public void init() {
-        System.setProperty(SecurityContextHolder.SYSTEM_PROPERTY, SecurityContextHolder.MODE_INHERITABLETHREADLOCAL);
+        if (msxSecurityContextProperties.isInheritableThreadLocal()) {
+            System.setProperty(SecurityContextHolder.SYSTEM_PROPERTY, SecurityContextHolder.MODE_INHERITABLETHREADLOCAL);
+        }
+    }
+
+    /**
+     * Picked up by the task executor Spring Boot builds, so @Async methods and the application task executor run with
+     * the SecurityContext of the caller. Registered only when the application sets security.context.taskDecorator=true
+     */
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    @ConditionalOnProperty(prefix = "security.context", name = "taskDecorator", havingValue = "true", matchIfMissing = false)
+    public TaskDecorator securityContextTaskDecorator() {
+        return SecurityContextPropagation.taskDecorator();
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+public class DestinationRoutingClientHttpRequestFactoryTest {
+
+    @Mock
+    private ClientHttpRequestFactory defaultRequestFactory;
+
+    @Mock
+    private ClientHttpRequestFactory idmRequestFactory;
+
+    private DestinationRoutingClientHttpRequestFactory destinationRoutingClientHttpRequestFactory;
+
+    @BeforeEach
+    public void setUp() {
+        destinationRoutingClientHttpRequestFactory = new DestinationRoutingClientHttpRequestFactory(defaultRequestFactory,
+                Map.of("usermanagementservice", idmRequestFactory));
+    }
+
+    @Test
+    public void createRequest_byHost() throws Exception {
+        // given
+        URI idm = URI.create("http://UserManagementService/idm/api/v1/roots");
+        URI other = URI.create("http://otherservice/api");
+        ClientHttpRequest idmRequest = mock(ClientHttpRequest.class);
+        ClientHttpRequest otherRequest = mock(ClientHttpRequest.class);
+        given(idmRequestFactory.createRequest(idm, HttpMethod.GET)).willReturn(idmRequest);
+        given(defaultRequestFactory.createRequest(other, HttpMethod.GET)).willReturn(otherRequest);
+
+        // when
+        ClientHttpRequest idmResult = destinationRoutingClientHttpRequestFactory.createRequest(idm, HttpMethod.GET);
+        ClientHttpRequest otherResult = destinationRoutingClientHttpRequestFactory.createRequest(other, HttpMethod.GET);
+
+        // then
+        assertSame(idmRequest, idmResult);
+        assertSame(otherRequest, otherResult);
+    }
+
+    @Test
+    public void createRequest_loadBalanced() throws Exception {
+        // given
+        RestTemplate restTemplate = new RestTemplate(destinationRoutingClientHttpRequestFactory);
+        restTemplate.setInterceptors(List.of(new DestinationClientHttpRequestInterceptor(),
+                (request, body, execution) -> execution.execute(new HttpRequestWrapper(request) {
+                    @Override
+                    public URI getURI() {
+                        return URI.create("http://10.0.0.1:8080/idm/api/v1/roots");
+                    }
+                }, body)));
+        ClientHttpRequest idmRequest = mock(ClientHttpRequest.class);
+        ClientHttpResponse response = mock(ClientHttpResponse.class);
+        given(idmRequestFactory.createRequest(any(URI.class), any(HttpMethod.class))).willReturn(idmRequest);
+        given(idmRequest.getHeaders()).willReturn(new HttpHeaders());
+        given(idmRequest.execute()).willReturn(response);
+
+        // when
+        restTemplate.delete("http://usermanagementservice/idm/api/v1/roots");
+
+        // then
+        then(idmRequestFactory).should().createRequest(URI.create("http://10.0.0.1:8080/idm/api/v1/roots"), HttpMethod.DELETE);
+        then(defaultRequestFactory).shouldHaveNoInteractions();
+    }
+}
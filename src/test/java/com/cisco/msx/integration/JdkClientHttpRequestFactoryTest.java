@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+public class JdkClientHttpRequestFactoryTest {
+
+    @Mock
+    private HttpClient httpClient;
+
+    private JdkClientHttpRequestFactory jdkClientHttpRequestFactory;
+
+    @BeforeEach
+    public void setUp() {
+        jdkClientHttpRequestFactory = new JdkClientHttpRequestFactory(httpClient, Duration.ofSeconds(30), 1, Duration.ofMillis(10));
+    }
+
+    @Test
+    public void execute() throws Exception {
+        // given
+        givenResponse("{\"active\":true}");
+        ClientHttpRequest request = jdkClientHttpRequestFactory.createRequest(URI.create("http://idm/check_token"), HttpMethod.POST);
+        request.getHeaders().add("Authorization", "Basic abc");
+        request.getHeaders().add("Content-Length", "4");
+        request.getBody().write("body".getBytes(StandardCharsets.UTF_8));
+
+        // when
+        String body;
+        try (ClientHttpResponse response = request.execute()) {
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertEquals("application/json", response.getHeaders().getFirst("Content-Type"));
+            assertFalse(response.getHeaders().containsKey(":status"));
+            body = StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+        }
+
+        // then
+        assertEquals("{\"active\":true}", body);
+        ArgumentCaptor<HttpRequest> sent = ArgumentCaptor.forClass(HttpRequest.class);
+        then(httpClient).should().send(sent.capture(), any());
+        assertEquals("POST", sent.getValue().method());
+        assertEquals(Duration.ofSeconds(30), sent.getValue().timeout().orElseThrow());
+        assertEquals("Basic abc", sent.getValue().headers().firstValue("Authorization").orElseThrow());
+        assertTrue(sent.getValue().headers().firstValue("Content-Length").isEmpty());
+        assertEquals(4, sent.getValue().bodyPublisher().orElseThrow().contentLength());
+        assertEquals("gzip", sent.getValue().headers().firstValue("Accept-Encoding").orElseThrow());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void execute_gzip() throws Exception {
+        // given
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("{\"active\":true}".getBytes(StandardCharsets.UTF_8));
+        }
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        given(response.body()).willReturn(new ByteArrayInputStream(compressed.toByteArray()));
+        given(response.headers()).willReturn(HttpHeaders.of(Map.of("Content-Encoding", List.of("gzip"),
+                "Content-Length", List.of(String.valueOf(compressed.size()))), (name, value) -> true));
+        given(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).willReturn(response);
+        ClientHttpRequest request = jdkClientHttpRequestFactory.createRequest(URI.create("http://idm/check_token"), HttpMethod.POST);
+
+        // when
+        String body;
+        org.springframework.http.HttpHeaders headers;
+        try (ClientHttpResponse clientHttpResponse = request.execute()) {
+            headers = clientHttpResponse.getHeaders();
+            body = StreamUtils.copyToString(clientHttpResponse.getBody(), StandardCharsets.UTF_8);
+        }
+
+        // then
+        assertEquals("{\"active\":true}", body);
+        assertFalse(headers.containsKey("Content-Encoding"));
+        assertFalse(headers.containsKey("Content-Length"));
+    }
+
+    @Test
+    public void execute_maxConcurrentReached() throws Exception {
+        // given
+        givenResponse("");
+        ClientHttpResponse open = jdkClientHttpRequestFactory.createRequest(URI.create("http://idm/a"), HttpMethod.GET).execute();
+
+        // when
+        ClientHttpRequest waiting = jdkClientHttpRequestFactory.createRequest(URI.create("http://idm/b"), HttpMethod.GET);
+        assertThrows(IOException.class, waiting::execute);
+        open.close();
+
+        // then
+        try (ClientHttpResponse next = jdkClientHttpRequestFactory.createRequest(URI.create("http://idm/c"), HttpMethod.GET).execute()) {
+            assertEquals(HttpStatus.OK, next.getStatusCode());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenResponse(String body) throws Exception {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        given(response.statusCode()).willReturn(200);
+        given(response.body()).willAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        lenient().when(response.headers()).thenReturn(HttpHeaders.of(Map.of(":status", List.of("200"),
+                "Content-Type", List.of("application/json")), (name, value) -> true));
+        given(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).willReturn(response);
+    }
+}
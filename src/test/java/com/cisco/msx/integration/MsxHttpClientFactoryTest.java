@@ -5,16 +5,29 @@
 
 package com.cisco.msx.integration;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.client.ClientHttpRequestFactory;
 
 import java.time.Duration;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.mock;
@@ -53,13 +66,116 @@ public class MsxHttpClientFactoryTest {
 
         given(connections.getMaxPerRoute()).willReturn(maxPerRoute);
         given(connections.getMaxTotal()).willReturn(maxTotal);
+        given(connections.getKeepAlive()).willReturn(Duration.ofSeconds(30));
+        given(connections.getMaxIdleTime()).willReturn(Duration.ofSeconds(30));
+        given(connections.getTimeToLive()).willReturn(Duration.ofMinutes(5));
+        given(connections.getValidateAfterInactivity()).willReturn(Duration.ofSeconds(2));
 
         // when
         HttpClient httpClient = msxHttpClientFactory.createHttpClient();
 
         // then
         assertNotNull(httpClient);
-        then(msxHttpClientProperties).should(times(3)).getRequest();
-        then(msxHttpClientProperties).should(times(2)).getConnections();
+        then(msxHttpClientProperties).should(times(1)).getRequest();
+        then(msxHttpClientProperties).should(times(1)).getConnections();
+        PoolingHttpClientConnectionManager connectionManager = msxHttpClientFactory.getConnectionManagers().get(0);
+        assertEquals(maxTotal, connectionManager.getMaxTotal());
+        assertEquals(maxPerRoute, connectionManager.getDefaultMaxPerRoute());
+        assertEquals(2000, connectionManager.getValidateAfterInactivity());
+    }
+
+    @Test
+    public void createRequestFactory_jdk() {
+        // given
+        MsxHttpClientProperties properties = new MsxHttpClientProperties();
+        properties.setEngine(MsxHttpClientProperties.Engine.JDK);
+
+        // when
+        ClientHttpRequestFactory requestFactory = new MsxHttpClientFactory(properties).createRequestFactory();
+
+        // then
+        assertTrue(requestFactory instanceof JdkClientHttpRequestFactory);
+    }
+
+    @Test
+    public void createRequestFactory_destinations() {
+        // given
+        MsxHttpClientProperties properties = new MsxHttpClientProperties();
+        MsxHttpClientProperties.DestinationProperties destination = new MsxHttpClientProperties.DestinationProperties();
+        destination.setMaxTotal(10);
+        properties.getDestinations().put("usermanagementservice", destination);
+        MsxHttpClientFactory factory = new MsxHttpClientFactory(properties);
+
+        // when
+        ClientHttpRequestFactory requestFactory = factory.createRequestFactory();
+
+        // then
+        assertTrue(requestFactory instanceof DestinationRoutingClientHttpRequestFactory);
+        assertEquals(Set.of(MsxHttpClientFactory.DEFAULT_DESTINATION, "usermanagementservice"), factory.getDestinations());
+        assertEquals(100, factory.getConnectionManagers(MsxHttpClientFactory.DEFAULT_DESTINATION).get(0).getMaxTotal());
+        PoolingHttpClientConnectionManager connectionManager = factory.getConnectionManagers("usermanagementservice").get(0);
+        assertEquals(10, connectionManager.getMaxTotal());
+        assertEquals(50, connectionManager.getDefaultMaxPerRoute());
+    }
+
+    @Test
+    public void getConnectionManagers_closedClientsRemoved() throws Exception {
+        // given
+        MsxHttpClientFactory factory = new MsxHttpClientFactory(new MsxHttpClientProperties());
+        CloseableHttpClient closed = (CloseableHttpClient) factory.createHttpClient();
+        CloseableHttpClient open = (CloseableHttpClient) factory.createHttpClient();
+
+        // when
+        closed.close();
+
+        // then
+        assertEquals(1, factory.getConnectionManagers().size());
+        assertEquals(1, factory.getConnectionManagers(MsxHttpClientFactory.DEFAULT_DESTINATION).size());
+        open.close();
+        assertTrue(factory.getConnectionManagers().isEmpty());
+    }
+
+    @Test
+    public void close_closesEveryClient() {
+        // given
+        MsxHttpClientFactory factory = new MsxHttpClientFactory(new MsxHttpClientProperties());
+        Set<Thread> otherEvictors = evictorThreads();
+        factory.createHttpClient();
+        factory.createRequestFactory();
+        Set<Thread> evictors = evictorThreads();
+        evictors.removeAll(otherEvictors);
+
+        // when
+        factory.close();
+
+        // then
+        assertTrue(factory.getConnectionManagers().isEmpty());
+        assertEquals(2, evictors.size());
+        for (Thread evictor : evictors) {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> evictor.join());
+        }
+    }
+
+    private static Set<Thread> evictorThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("Connection evictor"))
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void keepAliveStrategy() {
+        // given
+        ConnectionKeepAliveStrategy keepAliveStrategy = MsxHttpClientFactory.keepAliveStrategy(30000);
+        HttpResponse withoutHeader = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        HttpResponse withHeader = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        withHeader.addHeader("Keep-Alive", "timeout=5");
+
+        // when
+        long defaultKeepAlive = keepAliveStrategy.getKeepAliveDuration(withoutHeader, new BasicHttpContext());
+        long serverKeepAlive = keepAliveStrategy.getKeepAliveDuration(withHeader, new BasicHttpContext());
+
+        // then
+        assertEquals(30000, defaultKeepAlive);
+        assertEquals(5000, serverKeepAlive);
     }
 }
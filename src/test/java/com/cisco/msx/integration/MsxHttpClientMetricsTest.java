@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.integration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MsxHttpClientMetricsTest {
+
+    @Test
+    public void bindTo() {
+        // given
+        MsxHttpClientProperties msxHttpClientProperties = new MsxHttpClientProperties();
+        msxHttpClientProperties.getConnections().setMaxTotal(20);
+        MsxHttpClientFactory msxHttpClientFactory = new MsxHttpClientFactory(msxHttpClientProperties);
+        msxHttpClientFactory.createHttpClient();
+        msxHttpClientFactory.createHttpClient();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        // when
+        new MsxHttpClientMetrics(msxHttpClientFactory).bindTo(meterRegistry);
+
+        // then
+        assertEquals(40, meterRegistry.get(MsxHttpClientMetrics.CONNECTIONS + ".max").gauge().value());
+        assertEquals(0, meterRegistry.get(MsxHttpClientMetrics.CONNECTIONS).tag("state", "leased").gauge().value());
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class AsyncIdmSecurityApiTest {
+
+    @Mock
+    private HttpClient httpClient;
+
+    private IntegrationSecurityProperties integrationSecurityProperties;
+
+    @BeforeEach
+    public void setUp() {
+        integrationSecurityProperties = new IntegrationSecurityProperties();
+        integrationSecurityProperties.setClientId("clientId");
+        integrationSecurityProperties.setClientSecret("clientSecret");
+    }
+
+    @Test
+    public void checkToken() {
+        // given
+        AsyncIdmSecurityApi asyncIdmSecurityApi = asyncIdmSecurityApi(null);
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        givenResponse(200, "{\"active\":true,\"exp\":" + exp + ",\"tenant_id\":\"tenantId1\",\"permissions\":[\"permission1\"]}");
+
+        // when
+        SecurityContextDetails result = asyncIdmSecurityApi.checkToken("token").join();
+
+        // then
+        assertTrue(result.isActive());
+        assertEquals("tenantId1", result.getTenantId());
+        assertTrue(result.getAccess().hasPermission("permission1"));
+
+        ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+        then(httpClient).should().sendAsync(request.capture(), any());
+        assertEquals("POST", request.getValue().method());
+        assertEquals("http://usermanagementservice/idm/v2/check_token?token=token", request.getValue().uri().toString());
+        assertTrue(request.getValue().headers().firstValue("Authorization").orElseThrow().startsWith("Basic "));
+        assertEquals("gzip", request.getValue().headers().firstValue("Accept-Encoding").orElseThrow());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void checkToken_gzip() throws Exception {
+        // given
+        AsyncIdmSecurityApi asyncIdmSecurityApi = asyncIdmSecurityApi(null);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("{\"active\":true,\"assigned_tenants\":[\"tenantId1\",\"tenantId2\"]}".getBytes(StandardCharsets.UTF_8));
+        }
+        HttpResponse<byte[]> response = mock(HttpResponse.class);
+        given(response.statusCode()).willReturn(200);
+        given(response.body()).willReturn(compressed.toByteArray());
+        given(response.headers()).willReturn(HttpHeaders.of(Map.of("Content-Encoding", List.of("gzip")), (name, value) -> true));
+        given(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .willReturn(CompletableFuture.completedFuture(response));
+
+        // when
+        SecurityContextDetails result = asyncIdmSecurityApi.checkToken("token").join();
+
+        // then
+        assertTrue(result.isActive());
+        assertEquals(List.of("tenantId1", "tenantId2"), result.getAssignedTenants());
+    }
+
+    @Test
+    public void checkToken_cached() {
+        // given
+        Cache checkTokenCache = new CaffeineCache(Constants.CHECK_TOKEN_CACHE,
+                IdmSecurityCaches.checkTokenCache(integrationSecurityProperties.getCache().getCheckToken()));
+        AsyncIdmSecurityApi asyncIdmSecurityApi = asyncIdmSecurityApi(checkTokenCache);
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        givenResponse(200, "{\"active\":true,\"exp\":" + exp + "}");
+
+        // when
+        SecurityContextDetails first = asyncIdmSecurityApi.checkToken("token").join();
+        SecurityContextDetails second = asyncIdmSecurityApi.checkToken("token").join();
+
+        // then
+        assertSame(first, second);
+        then(httpClient).should(times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    public void checkToken_cachedWithStaleness() {
+        // given
+        integrationSecurityProperties.getCircuitBreaker().setEnabled(true);
+        Cache checkTokenCache = new CaffeineCache(Constants.CHECK_TOKEN_CACHE,
+                IdmSecurityCaches.checkTokenCache(integrationSecurityProperties.getCache().getCheckToken()));
+        AsyncIdmSecurityApi asyncIdmSecurityApi = resilientAsyncIdmSecurityApi(checkTokenCache, null);
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        givenResponse(200, "{\"active\":true,\"exp\":" + exp + "}");
+
+        // when
+        asyncIdmSecurityApi.checkToken("token").join();
+
+        // then
+        CachedSecurityContextDetails cached = checkTokenCache.get(TokenDigest.sha256("token"), CachedSecurityContextDetails.class);
+        long pastTimeToLive = System.currentTimeMillis() + integrationSecurityProperties.getCache().getCheckToken().getTimeToLive().toMillis();
+        assertTrue(cached.isExpired(pastTimeToLive));
+        assertTrue(cached.isStaleUsable(pastTimeToLive));
+    }
+
+    @Test
+    public void checkToken_staleServedWhileUnavailable() {
+        // given
+        integrationSecurityProperties.getCircuitBreaker().setEnabled(true);
+        integrationSecurityProperties.getCircuitBreaker().setFailureThreshold(1);
+        Cache checkTokenCache = new CaffeineCache(Constants.CHECK_TOKEN_CACHE,
+                IdmSecurityCaches.checkTokenCache(integrationSecurityProperties.getCache().getCheckToken()));
+        AsyncIdmSecurityApi asyncIdmSecurityApi = resilientAsyncIdmSecurityApi(checkTokenCache, null);
+        SecurityContextDetails staleSecurityContextDetails = new SecurityContextDetails();
+        staleSecurityContextDetails.setActive(true);
+        long now = System.currentTimeMillis();
+        checkTokenCache.put(TokenDigest.sha256("token"), new CachedSecurityContextDetails(staleSecurityContextDetails, now - 1000,
+                now - 1, now + 60000));
+        givenResponse(503, "");
+
+        // when
+        SecurityContextDetails unavailable = asyncIdmSecurityApi.checkToken("token").join();
+        SecurityContextDetails open = asyncIdmSecurityApi.checkToken("token").join();
+
+        // then
+        assertSame(staleSecurityContextDetails, unavailable);
+        assertSame(staleSecurityContextDetails, open);
+        then(httpClient).should(times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    public void getTenantParent_lastKnownGoodServedWhileOpen() {
+        // given
+        integrationSecurityProperties.getCircuitBreaker().setEnabled(true);
+        integrationSecurityProperties.getCircuitBreaker().setFailureThreshold(1);
+        Cache tenantHierarchyCache = new CaffeineCache(Constants.TENANT_HIERARCHY_CACHE,
+                IdmSecurityCaches.tenantHierarchyCache(integrationSecurityProperties.getCircuitBreaker()));
+        IdmCircuitBreaker circuitBreaker = new IdmCircuitBreaker(integrationSecurityProperties.getCircuitBreaker());
+        AsyncIdmSecurityApi asyncIdmSecurityApi = new AsyncIdmSecurityApi(httpClient, new ObjectMapper(), integrationSecurityProperties,
+                null, null, null, circuitBreaker, tenantHierarchyCache);
+        givenResponse(200, "parentId1");
+        String fetched = asyncIdmSecurityApi.getTenantParent("tenantId1").join();
+
+        // when
+        assertThrows(RuntimeException.class, () -> circuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> {
+            throw new IllegalStateException("unavailable");
+        }));
+        String open = asyncIdmSecurityApi.getTenantParent("tenantId1").join();
+        CompletionException unknown = assertThrows(CompletionException.class, () -> asyncIdmSecurityApi.getTenantParent("tenantId2").join());
+
+        // then
+        assertEquals("parentId1", fetched);
+        assertEquals("parentId1", open);
+        assertTrue(unknown.getCause() instanceof IdmCircuitOpenException);
+        then(httpClient).should(times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    public void getTenantAncestors() {
+        // given
+        AsyncIdmSecurityApi asyncIdmSecurityApi = asyncIdmSecurityApi(null);
+        givenResponse(200, "[\"ancestorTenantId1\",\"ancestorTenantId2\"]");
+
+        // when
+        Set<String> result = asyncIdmSecurityApi.getTenantAncestors("tenantId1").join();
+
+        // then
+        assertEquals(Set.of("ancestorTenantId1", "ancestorTenantId2"), result);
+    }
+
+    @Test
+    public void getTenantParent_clientError() {
+        // given
+        AsyncIdmSecurityApi asyncIdmSecurityApi = asyncIdmSecurityApi(null);
+        givenResponse(404, "");
+
+        // when
+        CompletionException e = assertThrows(CompletionException.class, () -> asyncIdmSecurityApi.getTenantParent("tenantId1").join());
+
+        // then
+        assertTrue(e.getCause() instanceof HttpClientErrorException);
+    }
+
+    private AsyncIdmSecurityApi asyncIdmSecurityApi(Cache checkTokenCache) {
+        return new AsyncIdmSecurityApi(httpClient, new ObjectMapper(), integrationSecurityProperties, null, checkTokenCache, null);
+    }
+
+    private AsyncIdmSecurityApi resilientAsyncIdmSecurityApi(Cache checkTokenCache, Cache tenantHierarchyCache) {
+        return new AsyncIdmSecurityApi(httpClient, new ObjectMapper(), integrationSecurityProperties, null, checkTokenCache, null,
+                new IdmCircuitBreaker(integrationSecurityProperties.getCircuitBreaker()), tenantHierarchyCache);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenResponse(int statusCode, String body) {
+        HttpResponse<byte[]> response = mock(HttpResponse.class);
+        given(response.statusCode()).willReturn(statusCode);
+        given(response.body()).willReturn(body.getBytes(StandardCharsets.UTF_8));
+        given(response.headers()).willReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+        given(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .willReturn(CompletableFuture.completedFuture(response));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingJwtDecoderTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1700000000L);
+
+    @Mock
+    private JwtDecoder delegate;
+
+    private MutableClock clock;
+
+    private CachingJwtDecoder cachingJwtDecoder;
+
+    @BeforeEach
+    public void setUp() {
+        MsxJwtCacheProperties msxJwtCacheProperties = new MsxJwtCacheProperties();
+        msxJwtCacheProperties.setTimeToLive(Duration.ofMinutes(5));
+        clock = new MutableClock(NOW);
+        cachingJwtDecoder = new CachingJwtDecoder(delegate, msxJwtCacheProperties, clock);
+    }
+
+    @Test
+    public void decode_cached() {
+        // given
+        Jwt jwt = jwt("token", NOW.plusSeconds(3600));
+        given(delegate.decode("token")).willReturn(jwt);
+
+        // when
+        Jwt first = cachingJwtDecoder.decode("token");
+        Jwt second = cachingJwtDecoder.decode("token");
+
+        // then
+        assertSame(jwt, first);
+        assertSame(jwt, second);
+        then(delegate).should(times(1)).decode("token");
+    }
+
+    @Test
+    public void decode_expiredToken() {
+        // given
+        Jwt jwt = jwt("token", NOW.plusSeconds(60));
+        given(delegate.decode("token")).willReturn(jwt);
+        cachingJwtDecoder.decode("token");
+
+        // when
+        clock.now = NOW.plusSeconds(61);
+        cachingJwtDecoder.decode("token");
+
+        // then
+        then(delegate).should(times(2)).decode("token");
+    }
+
+    @Test
+    public void decode_tokenWithoutExp() {
+        // given
+        Jwt jwt = jwt("token", null);
+        given(delegate.decode("token")).willReturn(jwt);
+
+        // when
+        cachingJwtDecoder.decode("token");
+        cachingJwtDecoder.decode("token");
+
+        // then
+        then(delegate).should(times(2)).decode("token");
+    }
+
+    @Test
+    public void decode_rejectedTokenNotCached() {
+        // given
+        given(delegate.decode("token")).willThrow(new BadJwtException("bad signature"));
+
+        // when
+        assertThrows(BadJwtException.class, () -> cachingJwtDecoder.decode("token"));
+        assertThrows(BadJwtException.class, () -> cachingJwtDecoder.decode("token"));
+
+        // then
+        then(delegate).should(times(2)).decode("token");
+    }
+
+    private static Jwt jwt(String token, Instant expiresAt) {
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .subject("user1")
+                .issuedAt(NOW.minusSeconds(10))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
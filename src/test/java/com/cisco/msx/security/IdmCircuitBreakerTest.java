@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdmCircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+
+    private IdmCircuitBreaker idmCircuitBreaker;
+
+    @BeforeEach
+    public void setUp() {
+        IntegrationSecurityProperties.CircuitBreakerProperties properties = new IntegrationSecurityProperties.CircuitBreakerProperties();
+        properties.setFailureThreshold(2);
+        properties.setOpenDuration(Duration.ofSeconds(30));
+        idmCircuitBreaker = new IdmCircuitBreaker(properties, clock::get);
+    }
+
+    @Test
+    public void execute_opensAfterConsecutiveFailures() {
+        // when
+        callFailing(new ResourceAccessException("Connection refused"));
+        callFailing(new ResourceAccessException("Connection refused"));
+
+        // then
+        assertEquals(IdmCircuitBreaker.State.OPEN, idmCircuitBreaker.getState());
+        assertThrows(IdmCircuitOpenException.class, () -> idmCircuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> "result"));
+    }
+
+    @Test
+    public void execute_clientErrorsNotCounted() {
+        // when
+        callFailing(new ResourceAccessException("Connection refused"));
+        callFailing(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+        callFailing(new ResourceAccessException("Connection refused"));
+
+        // then
+        assertEquals(IdmCircuitBreaker.State.CLOSED, idmCircuitBreaker.getState());
+    }
+
+    @Test
+    public void execute_trialCallAfterOpenDuration() {
+        // given
+        callFailing(new ResourceAccessException("Connection refused"));
+        callFailing(new ResourceAccessException("Connection refused"));
+
+        // when
+        clock.addAndGet(Duration.ofSeconds(30).toMillis());
+        callFailing(new ResourceAccessException("Connection refused"));
+        boolean reopened = idmCircuitBreaker.getState() == IdmCircuitBreaker.State.OPEN;
+        clock.addAndGet(Duration.ofSeconds(30).toMillis());
+        String result = idmCircuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> "result");
+
+        // then
+        assertTrue(reopened);
+        assertEquals("result", result);
+        assertEquals(IdmCircuitBreaker.State.CLOSED, idmCircuitBreaker.getState());
+    }
+
+    @Test
+    public void execute_trialCallThrowingError() {
+        // given
+        callFailing(new ResourceAccessException("Connection refused"));
+        callFailing(new ResourceAccessException("Connection refused"));
+        clock.addAndGet(Duration.ofSeconds(30).toMillis());
+
+        // when
+        assertThrows(AssertionError.class, () -> idmCircuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> {
+            throw new AssertionError("trial");
+        }));
+        boolean reopened = idmCircuitBreaker.getState() == IdmCircuitBreaker.State.OPEN;
+        clock.addAndGet(Duration.ofSeconds(30).toMillis());
+        String result = idmCircuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> "result");
+
+        // then
+        assertTrue(reopened);
+        assertEquals("result", result);
+        assertEquals(IdmCircuitBreaker.State.CLOSED, idmCircuitBreaker.getState());
+    }
+
+    @Test
+    public void execute_opensAfterConsecutiveSlowCalls() {
+        // given
+        Duration slowCall = new IntegrationSecurityProperties.CircuitBreakerProperties().getSlowCallThreshold().plusMillis(1);
+
+        // when
+        String result = idmCircuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> {
+            clock.addAndGet(slowCall.toMillis());
+            return "slow";
+        });
+        boolean closedAfterOne = idmCircuitBreaker.getState() == IdmCircuitBreaker.State.CLOSED;
+        idmCircuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> clock.addAndGet(slowCall.toMillis()));
+
+        // then
+        assertEquals("slow", result);
+        assertTrue(closedAfterOne);
+        assertEquals(IdmCircuitBreaker.State.OPEN, idmCircuitBreaker.getState());
+    }
+
+    private void callFailing(RuntimeException e) {
+        assertThrows(e.getClass(), () -> idmCircuitBreaker.execute(IdmSecurityApi.CHECK_TOKEN, () -> {
+            throw e;
+        }));
+    }
+}
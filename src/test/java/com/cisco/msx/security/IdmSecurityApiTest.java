@@ -10,16 +10,30 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 
 @ExtendWith(MockitoExtension.class)
 public class IdmSecurityApiTest {
@@ -165,4 +179,258 @@ public class IdmSecurityApiTest {
         // then
         assertSame(tenantAncestors, result);
     }
+
+    @Test
+    public void checkToken_cached() {
+        // given
+        String token = "token";
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        Cache checkTokenCache = new CaffeineCache("checkToken",
+                IdmSecurityCaches.checkTokenCache(properties.getCache().getCheckToken()));
+        IdmSecurityApi cachingIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, checkTokenCache, Runnable::run);
+
+        SecurityContextDetails securityContextDetails = securityContextDetails(true, Duration.ofHours(1));
+        given(basicAuthIdmRestTemplate.postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token))).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails first = cachingIdmSecurityApi.checkToken(token);
+        SecurityContextDetails second = cachingIdmSecurityApi.checkToken(token);
+
+        // then
+        assertSame(securityContextDetails, first);
+        assertSame(securityContextDetails, second);
+        assertNotNull(checkTokenCache.get(TokenDigest.sha256(token)));
+        then(basicAuthIdmRestTemplate).should(times(1)).postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token));
+    }
+
+    @Test
+    public void checkToken_inactiveNotCached() {
+        // given
+        String token = "token";
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        Cache checkTokenCache = new CaffeineCache("checkToken",
+                IdmSecurityCaches.checkTokenCache(properties.getCache().getCheckToken()));
+        IdmSecurityApi cachingIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, checkTokenCache, Runnable::run);
+
+        SecurityContextDetails securityContextDetails = securityContextDetails(false, Duration.ofHours(1));
+        given(basicAuthIdmRestTemplate.postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token))).willReturn(securityContextDetails);
+
+        // when
+        cachingIdmSecurityApi.checkToken(token);
+        cachingIdmSecurityApi.checkToken(token);
+
+        // then
+        assertNull(checkTokenCache.get(TokenDigest.sha256(token)));
+        then(basicAuthIdmRestTemplate).should(times(2)).postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token));
+    }
+
+    @Test
+    public void checkToken_inactiveCachedSeparately() {
+        // given
+        String token = "token";
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        Cache inactiveTokenCache = new CaffeineCache("inactiveToken",
+                IdmSecurityCaches.negativeCache(properties.getCache().getInactiveToken()));
+        IdmSecurityApi cachingIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, null, null, inactiveTokenCache);
+
+        SecurityContextDetails securityContextDetails = securityContextDetails(false, Duration.ofHours(1));
+        given(basicAuthIdmRestTemplate.postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token))).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails first = cachingIdmSecurityApi.checkToken(token);
+        SecurityContextDetails second = cachingIdmSecurityApi.checkToken(token);
+
+        // then
+        assertSame(securityContextDetails, first);
+        assertSame(securityContextDetails, second);
+        then(basicAuthIdmRestTemplate).should(times(1)).postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token));
+    }
+
+    @Test
+    public void checkToken_expiredNotServed() {
+        // given
+        String token = "token";
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        Cache checkTokenCache = new CaffeineCache("checkToken",
+                IdmSecurityCaches.checkTokenCache(properties.getCache().getCheckToken()));
+        IdmSecurityApi cachingIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, checkTokenCache, Runnable::run);
+
+        SecurityContextDetails securityContextDetails = securityContextDetails(true, Duration.ofHours(1));
+        long now = System.currentTimeMillis();
+        checkTokenCache.put(TokenDigest.sha256(token), new CachedSecurityContextDetails(securityContextDetails(true, Duration.ZERO), now - 1000, now - 1));
+        given(basicAuthIdmRestTemplate.postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token))).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails result = cachingIdmSecurityApi.checkToken(token);
+
+        // then
+        assertSame(securityContextDetails, result);
+    }
+
+    @Test
+    public void close_shutsDownRefreshExecutor() {
+        // given
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        Cache checkTokenCache = new CaffeineCache("checkToken",
+                IdmSecurityCaches.checkTokenCache(properties.getCache().getCheckToken()));
+        ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+        IdmSecurityApi cachingIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, checkTokenCache, refreshExecutor);
+
+        // when
+        cachingIdmSecurityApi.close();
+
+        // then
+        assertTrue(refreshExecutor.isShutdown());
+    }
+
+    @Test
+    public void checkToken_refreshAhead() {
+        // given
+        String token = "token";
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        Cache checkTokenCache = new CaffeineCache("checkToken",
+                IdmSecurityCaches.checkTokenCache(properties.getCache().getCheckToken()));
+        IdmSecurityApi cachingIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, checkTokenCache, Runnable::run);
+
+        SecurityContextDetails staleSecurityContextDetails = securityContextDetails(true, Duration.ofHours(1));
+        long loadedAt = System.currentTimeMillis() - properties.getCache().getCheckToken().getRefreshAfter().toMillis();
+        checkTokenCache.put(TokenDigest.sha256(token), new CachedSecurityContextDetails(staleSecurityContextDetails, loadedAt,
+                loadedAt + Duration.ofHours(1).toMillis()));
+
+        SecurityContextDetails securityContextDetails = securityContextDetails(true, Duration.ofHours(1));
+        given(basicAuthIdmRestTemplate.postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token))).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails first = cachingIdmSecurityApi.checkToken(token);
+        SecurityContextDetails second = cachingIdmSecurityApi.checkToken(token);
+
+        // then
+        assertSame(staleSecurityContextDetails, first);
+        assertSame(securityContextDetails, second);
+    }
+
+    @Test
+    public void checkToken_staleServedWhileUnavailable() {
+        // given
+        String token = "token";
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        properties.getCircuitBreaker().setEnabled(true);
+        Cache checkTokenCache = new CaffeineCache("checkToken",
+                IdmSecurityCaches.checkTokenCache(properties.getCache().getCheckToken()));
+        IdmSecurityApi cachingIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, checkTokenCache, Runnable::run);
+
+        SecurityContextDetails staleSecurityContextDetails = securityContextDetails(true, Duration.ofHours(1));
+        long now = System.currentTimeMillis();
+        checkTokenCache.put(TokenDigest.sha256(token), new CachedSecurityContextDetails(staleSecurityContextDetails, now - 1000, now - 1,
+                now + Duration.ofMinutes(5).toMillis()));
+        given(basicAuthIdmRestTemplate.postForObject(eq(checkTokenUrl(properties)),
+                eq(null), same(SecurityContextDetails.class), eq(token))).willThrow(new ResourceAccessException("Read timed out"));
+
+        // when
+        SecurityContextDetails result = cachingIdmSecurityApi.checkToken(token);
+
+        // then
+        assertSame(staleSecurityContextDetails, result);
+    }
+
+    @Test
+    public void getTenantParent_lastKnownGoodServedWhileUnavailable() {
+        // given
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        properties.getCircuitBreaker().setEnabled(true);
+        properties.getCircuitBreaker().setFailureThreshold(1);
+        Cache tenantHierarchyCache = new CaffeineCache(Constants.TENANT_HIERARCHY_CACHE,
+                IdmSecurityCaches.tenantHierarchyCache(properties.getCircuitBreaker()));
+        IdmSecurityApi resilientIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, null, null, null,
+                tenantHierarchyCache);
+        String parentUrl = properties.getServer().getBaseUrl() + properties.getEndpoints().getTenantHierarchyParent() + "?tenantId={tenantId}";
+        given(basicAuthIdmRestTemplate.getForObject(parentUrl, String.class, "tenantId1"))
+                .willReturn("parentId1")
+                .willThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+
+        // when
+        String fetched = resilientIdmSecurityApi.getTenantParent("tenantId1");
+        String unavailable = resilientIdmSecurityApi.getTenantParent("tenantId1");
+        String open = resilientIdmSecurityApi.getTenantParent("tenantId1");
+
+        // then
+        assertEquals("parentId1", fetched);
+        assertEquals("parentId1", unavailable);
+        assertEquals("parentId1", open);
+        assertEquals(IdmCircuitBreaker.State.OPEN, resilientIdmSecurityApi.getCircuitBreaker().getState());
+        assertThrows(IdmCircuitOpenException.class, () -> resilientIdmSecurityApi.getTenantParent("tenantId2"));
+        then(basicAuthIdmRestTemplate).should(times(2)).getForObject(parentUrl, String.class, "tenantId1");
+    }
+
+    @Test
+    public void getTenantParent_slowCallOpensCircuit() {
+        // given
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        properties.getCircuitBreaker().setEnabled(true);
+        properties.getCircuitBreaker().setFailureThreshold(1);
+        properties.getCircuitBreaker().setSlowCallThreshold(Duration.ofMillis(10));
+        Cache tenantHierarchyCache = new CaffeineCache(Constants.TENANT_HIERARCHY_CACHE,
+                IdmSecurityCaches.tenantHierarchyCache(properties.getCircuitBreaker()));
+        IdmSecurityApi resilientIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, null, null, null,
+                tenantHierarchyCache);
+        String parentUrl = properties.getServer().getBaseUrl() + properties.getEndpoints().getTenantHierarchyParent() + "?tenantId={tenantId}";
+        given(basicAuthIdmRestTemplate.getForObject(parentUrl, String.class, "tenantId1")).willAnswer(invocation -> {
+            Thread.sleep(50);
+            return "parentId1";
+        });
+
+        // when
+        String slow = resilientIdmSecurityApi.getTenantParent("tenantId1");
+        String open = resilientIdmSecurityApi.getTenantParent("tenantId1");
+
+        // then
+        assertEquals("parentId1", slow);
+        assertEquals("parentId1", open);
+        assertEquals(IdmCircuitBreaker.State.OPEN, resilientIdmSecurityApi.getCircuitBreaker().getState());
+        then(basicAuthIdmRestTemplate).should(times(1)).getForObject(parentUrl, String.class, "tenantId1");
+    }
+
+    @Test
+    public void walkTenantChildren_lastKnownGoodNotReplaced() {
+        // given
+        IntegrationSecurityProperties properties = new IntegrationSecurityProperties();
+        properties.getCircuitBreaker().setEnabled(true);
+        properties.getCircuitBreaker().setFailureThreshold(1);
+        Cache tenantHierarchyCache = new CaffeineCache(Constants.TENANT_HIERARCHY_CACHE,
+                IdmSecurityCaches.tenantHierarchyCache(properties.getCircuitBreaker()));
+        IdmSecurityApi resilientIdmSecurityApi = new IdmSecurityApi(basicAuthIdmRestTemplate, properties, null, null, null,
+                tenantHierarchyCache);
+        String childrenUrl = properties.getServer().getBaseUrl() + properties.getEndpoints().getTenantHierarchyChildren() + "?tenantId={tenantId}";
+        given(basicAuthIdmRestTemplate.getForObject(childrenUrl, Set.class, "tenantId1"))
+                .willReturn(Set.of("childId1"))
+                .willThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+
+        // when
+        Set<String> walked = resilientIdmSecurityApi.walkTenantChildren("tenantId1");
+
+        // then
+        assertEquals(Set.of("childId1"), walked);
+        assertNull(tenantHierarchyCache.get(IdmSecurityApi.TENANT_HIERARCHY_CHILDREN + ":tenantId1"));
+        assertThrows(HttpServerErrorException.class, () -> resilientIdmSecurityApi.walkTenantChildren("tenantId1"));
+        assertThrows(IdmCircuitOpenException.class, () -> resilientIdmSecurityApi.walkTenantChildren("tenantId1"));
+    }
+
+    private static String checkTokenUrl(IntegrationSecurityProperties properties) {
+        return properties.getServer().getBaseUrl() + properties.getEndpoints().getCheckToken() + "?token={token}";
+    }
+
+    private static SecurityContextDetails securityContextDetails(boolean active, Duration expiresIn) {
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setActive(active);
+        securityContextDetails.setExp((int) ((System.currentTimeMillis() + expiresIn.toMillis()) / 1000));
+        return securityContextDetails;
+    }
 }
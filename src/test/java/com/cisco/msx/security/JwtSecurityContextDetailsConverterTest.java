@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class JwtSecurityContextDetailsConverterTest {
+
+    private JwtSecurityContextDetailsConverter jwtSecurityContextDetailsConverter;
+
+    @BeforeEach
+    public void setUp() {
+        jwtSecurityContextDetailsConverter = new JwtSecurityContextDetailsConverter();
+    }
+
+    @Test
+    public void convert() {
+        // given
+        Instant expiresAt = Instant.ofEpochSecond(1700000000L);
+        Jwt jwt = Jwt.withTokenValue("token")
+                .header("typ", "JWT")
+                .subject("user1")
+                .expiresAt(expiresAt)
+                .claim("scope", "read write")
+                .claim("tenant_id", "tenantId1")
+                .claim("assigned_tenants", List.of("tenantId1", "tenantId2"))
+                .claim("permissions", List.of("permission1"))
+                .build();
+
+        // when
+        SecurityContextDetails securityContextDetails = jwtSecurityContextDetailsConverter.convert(jwt);
+
+        // then
+        assertNotNull(securityContextDetails);
+        assertTrue(securityContextDetails.isActive());
+        assertEquals("user1", securityContextDetails.getSub());
+        assertEquals(1700000000, securityContextDetails.getExp());
+        assertEquals(List.of("read", "write"), securityContextDetails.getScope());
+        assertEquals("tenantId1", securityContextDetails.getTenantId());
+        assertEquals(List.of("tenantId1", "tenantId2"), securityContextDetails.getAssignedTenants());
+        assertEquals(List.of("permission1"), securityContextDetails.getPermissions());
+    }
+
+    @Test
+    public void convert_claimsMissing() {
+        // given
+        Jwt jwt = Jwt.withTokenValue("token")
+                .header("typ", "JWT")
+                .subject("user1")
+                .claim("tenant_id", "tenantId1")
+                .build();
+
+        // when
+        SecurityContextDetails securityContextDetails = jwtSecurityContextDetailsConverter.convert(jwt);
+
+        // then
+        assertNull(securityContextDetails);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MicrometerIdmSecurityMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private MicrometerIdmSecurityMetrics micrometerIdmSecurityMetrics;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        micrometerIdmSecurityMetrics = new MicrometerIdmSecurityMetrics(meterRegistry);
+    }
+
+    @Test
+    public void record_success() {
+        // when
+        String result = micrometerIdmSecurityMetrics.record(IdmSecurityApi.TENANT_HIERARCHY_ROOT, () -> "root");
+
+        // then
+        assertEquals("root", result);
+        assertEquals(1, meterRegistry.get(MicrometerIdmSecurityMetrics.REQUESTS)
+                .tags("endpoint", IdmSecurityApi.TENANT_HIERARCHY_ROOT, "outcome", "SUCCESS").timer().count());
+        assertNull(meterRegistry.find(MicrometerIdmSecurityMetrics.ERRORS).counter());
+    }
+
+    @Test
+    public void record_timerRegisteredOnce() {
+        // given
+        micrometerIdmSecurityMetrics.record(IdmSecurityApi.TENANT_HIERARCHY_ROOT, () -> "root");
+        Timer timer = meterRegistry.get(MicrometerIdmSecurityMetrics.REQUESTS).timer();
+        meterRegistry.remove(timer);
+
+        // when
+        micrometerIdmSecurityMetrics.record(IdmSecurityApi.TENANT_HIERARCHY_ROOT, () -> "root");
+
+        // then
+        assertEquals(2, timer.count());
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    public void record_clientError() {
+        // when
+        assertThrows(HttpClientErrorException.class, () -> micrometerIdmSecurityMetrics.record(IdmSecurityApi.CHECK_TOKEN, () -> {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }));
+
+        // then
+        assertEquals(1, meterRegistry.get(MicrometerIdmSecurityMetrics.REQUESTS)
+                .tags("endpoint", IdmSecurityApi.CHECK_TOKEN, "outcome", "CLIENT_ERROR").timer().count());
+        assertEquals(1, meterRegistry.get(MicrometerIdmSecurityMetrics.ERRORS)
+                .tags("endpoint", IdmSecurityApi.CHECK_TOKEN, "outcome", "CLIENT_ERROR").counter().count());
+    }
+
+    @Test
+    public void recordAsync_serverError() {
+        // given
+        CompletableFuture<String> failed = CompletableFuture.failedFuture(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+
+        // when
+        CompletableFuture<String> result = micrometerIdmSecurityMetrics.recordAsync(IdmSecurityApi.TENANT_HIERARCHY_PARENT, () -> failed);
+
+        // then
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(1, meterRegistry.get(MicrometerIdmSecurityMetrics.ERRORS)
+                .tags("endpoint", IdmSecurityApi.TENANT_HIERARCHY_PARENT, "outcome", "SERVER_ERROR").counter().count());
+    }
+
+    @Test
+    public void bindCoalescedCalls() {
+        // given
+        SingleFlight singleFlight = new SingleFlight();
+        micrometerIdmSecurityMetrics.bindCoalescedCalls("async", singleFlight);
+        CompletableFuture<String> inFlight = new CompletableFuture<>();
+
+        // when
+        singleFlight.executeAsync(IdmSecurityApi.CHECK_TOKEN, "token", () -> inFlight);
+        singleFlight.executeAsync(IdmSecurityApi.CHECK_TOKEN, "token", () -> inFlight);
+
+        // then
+        assertEquals(1, meterRegistry.get(MicrometerIdmSecurityMetrics.COALESCED)
+                .tags("endpoint", IdmSecurityApi.CHECK_TOKEN, "client", "async").functionCounter().count());
+        assertEquals(0, meterRegistry.get(MicrometerIdmSecurityMetrics.COALESCED)
+                .tags("endpoint", IdmSecurityApi.TENANT_HIERARCHY_ROOT, "client", "async").functionCounter().count());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.cors.DefaultCorsProcessor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MsxCorsPreflightFilterTest {
+
+    @Test
+    public void doFilter_sameAsDefaultCorsProcessor() throws Exception {
+        // given
+        MsxSecurityCorsProperties anyOrigin = properties(List.of("*"), List.of("*"), List.of("*"), false);
+        MsxSecurityCorsProperties credentials = properties(List.of("*"), List.of("GET", "POST"), List.of("*"), true);
+        MsxSecurityCorsProperties explicit = properties(List.of("https://app.example.com"), List.of("GET", "PUT"),
+                List.of("Authorization", "Content-Type"), false);
+        List<MockHttpServletRequest> requests = List.of(
+                preflight("https://app.example.com", "PUT", null),
+                preflight("https://APP.example.com", "GET", "authorization, content-type"),
+                preflight("https://app.example.com", "PUT", "Authorization, X-Custom"),
+                preflight("https://app.example.com", "PUT", "X-Custom"),
+                preflight("https://other.example.com", "GET", null),
+                preflight("https://app.example.com", "DELETE", null));
+
+        for (MsxSecurityCorsProperties properties : List.of(anyOrigin, credentials, explicit)) {
+            for (MockHttpServletRequest request : requests) {
+                // when
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                MockFilterChain filterChain = new MockFilterChain();
+                new MsxCorsPreflightFilter(properties).doFilter(request, response, filterChain);
+
+                // then
+                MockHttpServletResponse expected = new MockHttpServletResponse();
+                new DefaultCorsProcessor().processRequest(properties.toCorsConfiguration(), request, expected);
+                String description = properties.getAllowedOrigins() + " " + request.getHeader(HttpHeaders.ORIGIN) + " " +
+                        request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD);
+                assertNull(filterChain.getRequest(), description);
+                assertEquals(expected.getStatus(), response.getStatus(), description);
+                for (String header : List.of(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS,
+                        HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS,
+                        HttpHeaders.ACCESS_CONTROL_MAX_AGE)) {
+                    assertEquals(expected.getHeader(header), response.getHeader(header), description + " " + header);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void doFilter_notPreflight() throws Exception {
+        // given
+        MsxCorsPreflightFilter filter = new MsxCorsPreflightFilter(properties(List.of("*"), List.of("*"), List.of("*"), false));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/items");
+        request.addHeader(HttpHeaders.ORIGIN, "https://app.example.com");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        // when
+        filter.doFilter(request, response, filterChain);
+
+        // then
+        assertSame(request, filterChain.getRequest());
+        assertNull(response.getHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN));
+    }
+
+    private static MsxSecurityCorsProperties properties(List<String> origins, List<String> methods, List<String> headers,
+                                                        boolean allowCredentials) {
+        MsxSecurityCorsProperties properties = new MsxSecurityCorsProperties();
+        properties.setEnabled(true);
+        properties.setAllowedOrigins(origins);
+        properties.setAllowedMethods(methods);
+        properties.setAllowedHeaders(headers);
+        properties.setAllowCredentials(allowCredentials);
+        return properties;
+    }
+
+    private static MockHttpServletRequest preflight(String origin, String method, String headers) {
+        MockHttpServletRequest request = new MockHttpServletRequest("OPTIONS", "/api/items");
+        request.addHeader(HttpHeaders.ORIGIN, origin);
+        request.addHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, method);
+        if (headers != null) {
+            request.addHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS, headers);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchyImpl;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MsxExpressionReactiveAuthorizationManagerTest {
+
+    private final AuthorizationContext context = new AuthorizationContext(
+            MockServerWebExchange.from(MockServerHttpRequest.get("/api/items/42")), Map.of("id", "42"));
+
+    @Test
+    public void check_authorities() {
+        // given
+        MsxExpressionReactiveAuthorizationManager manager = manager("hasAuthority('SCOPE_read') and hasRole('ADMIN')");
+
+        // when, then
+        assertTrue(check(manager, Mono.just(authentication("SCOPE_read", "ROLE_ADMIN"))));
+        assertFalse(check(manager, Mono.just(authentication("SCOPE_read"))));
+    }
+
+    @Test
+    public void check_anonymous() {
+        // when, then
+        assertFalse(check(manager("isFullyAuthenticated()"), Mono.empty()));
+        assertTrue(check(manager("isAnonymous()"), Mono.empty()));
+        assertTrue(check(manager("isFullyAuthenticated()"), Mono.just(authentication("SCOPE_read"))));
+    }
+
+    @Test
+    public void check_variables() {
+        // when, then
+        assertTrue(check(manager("#id == '42' and #exchange.request.path.value() == '/api/items/42'"), Mono.empty()));
+        assertFalse(check(manager("#id == '7'"), Mono.empty()));
+    }
+
+    @Test
+    public void check_roleHierarchy() {
+        // given
+        RoleHierarchyImpl roleHierarchy = new RoleHierarchyImpl();
+        roleHierarchy.setHierarchy("ROLE_ADMIN > ROLE_USER");
+        MsxExpressionReactiveAuthorizationManager manager = new MsxExpressionReactiveAuthorizationManager("hasRole('USER')",
+                new MsxSecurityExpressionParser("ROLE_", roleHierarchy), "ROLE_", roleHierarchy, null);
+
+        // when, then
+        assertTrue(check(manager, Mono.just(authentication("ROLE_ADMIN"))));
+        assertFalse(check(manager, Mono.just(authentication("SCOPE_read"))));
+    }
+
+    private static MsxExpressionReactiveAuthorizationManager manager(String expression) {
+        return new MsxExpressionReactiveAuthorizationManager(expression, new MsxSecurityExpressionParser("ROLE_", null),
+                "ROLE_", null, null);
+    }
+
+    private boolean check(MsxExpressionReactiveAuthorizationManager manager, Mono<Authentication> authentication) {
+        return manager.check(authentication, context).block().isGranted();
+    }
+
+    private static Authentication authentication(String... authorities) {
+        TestingAuthenticationToken authentication = new TestingAuthenticationToken("user", "credentials", authorities);
+        authentication.setAuthenticated(true);
+        return authentication;
+    }
+}
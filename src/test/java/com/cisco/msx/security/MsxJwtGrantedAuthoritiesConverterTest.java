@@ -13,10 +13,13 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(MockitoExtension.class)
@@ -52,4 +55,47 @@ public class MsxJwtGrantedAuthoritiesConverterTest {
         assertTrue(grantedAuthorities.contains(new SimpleGrantedAuthority(scopePrefix + readScope)));
         assertTrue(grantedAuthorities.contains(new SimpleGrantedAuthority(scopePrefix + writeScope)));
     }
+
+    @Test
+    public void convert_spaceSeparated() {
+        // given
+        Jwt jwt = Jwt.withTokenValue("token")
+                .claim("authorities", "ROLE_CLIENT")
+                .claim("scope", "read  write")
+                .header("typ", "JWT")
+                .build();
+
+        // when
+        Collection<GrantedAuthority> grantedAuthorities = msxJwtGrantedAuthoritiesConverter.convert(jwt);
+
+        // then
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_CLIENT"), new SimpleGrantedAuthority("SCOPE_read"),
+                new SimpleGrantedAuthority("SCOPE_write")), grantedAuthorities);
+    }
+
+    @Test
+    public void convert_authoritiesShared() {
+        // given
+        Jwt first = Jwt.withTokenValue("token1")
+                .claim("authorities", List.of("ROLE_CLIENT"))
+                .claim("scope", List.of("read"))
+                .header("typ", "JWT")
+                .build();
+        Jwt second = Jwt.withTokenValue("token2")
+                .claim("authorities", List.of("ROLE_CLIENT"))
+                .claim("scope", "read write")
+                .header("typ", "JWT")
+                .build();
+
+        // when
+        List<GrantedAuthority> firstAuthorities = new ArrayList<>(msxJwtGrantedAuthoritiesConverter.convert(first));
+        Collection<GrantedAuthority> secondCollection = msxJwtGrantedAuthoritiesConverter.convert(second);
+        List<GrantedAuthority> secondAuthorities = new ArrayList<>(secondCollection);
+
+        // then
+        assertSame(firstAuthorities.get(0), secondAuthorities.get(0));
+        assertSame(firstAuthorities.get(1), secondAuthorities.get(1));
+        assertTrue(secondCollection.add(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        assertEquals(2, msxJwtGrantedAuthoritiesConverter.convert(first).size());
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RegexRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.security.web.util.matcher.RequestVariablesExtractor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MsxResourceRuleMatcherTest {
+
+    @Test
+    public void firstMatch_ant() {
+        // given
+        List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules = List.of(
+                antRule("/api/v1/admin/**"),
+                antRule("/api/v1/items/{id}", "/api/v1/items"),
+                antRule("/api/**"),
+                antRule("/**/health"));
+        MsxResourceRuleMatcher matcher = new MsxResourceRuleMatcher(rules);
+
+        // when, then
+        assertEquals(0, matcher.firstMatch(request("/api/v1/admin")));
+        assertEquals(0, matcher.firstMatch(request("/api/v1/admin/users/1")));
+        assertEquals(1, matcher.firstMatch(request("/api/v1/items/42")));
+        assertEquals(1, matcher.firstMatch(request("/api/v1/items")));
+        assertEquals(2, matcher.firstMatch(request("/api/v1/items/42/tags")));
+        assertEquals(2, matcher.firstMatch(request("/api/health")));
+        assertEquals(3, matcher.firstMatch(request("/manage/health")));
+        assertEquals(MsxResourceRuleMatcher.NO_MATCH, matcher.firstMatch(request("/other")));
+        assertFalse(matcher.matches(request("/other")));
+        assertTrue(matcher.ruleMatcher(1).matches(request("/api/v1/items")));
+        assertFalse(matcher.ruleMatcher(2).matches(request("/api/v1/items")));
+    }
+
+    @Test
+    public void firstMatch_earlierBroadRuleWins() {
+        // given
+        List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules = List.of(
+                antRule("/**"),
+                antRule("/api/v1/**"));
+        MsxResourceRuleMatcher matcher = new MsxResourceRuleMatcher(rules);
+
+        // when
+        int rule = matcher.firstMatch(request("/api/v1/items"));
+
+        // then
+        assertEquals(0, rule);
+    }
+
+    @Test
+    public void firstMatch_regex() {
+        // given
+        List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules = List.of(
+                regexRule("/api/(v1|v2)/items/[0-9]+"),
+                antRule("/api/v1/items/**"),
+                regexRule("/api/.*\\?debug=(true|yes)"),
+                regexRule("/api/(\\w+)/\\1"),
+                regexRule("/api/.*"));
+        MsxResourceRuleMatcher matcher = new MsxResourceRuleMatcher(rules);
+
+        // when, then
+        assertEquals(0, matcher.firstMatch(request("/api/v2/items/42")));
+        assertEquals(1, matcher.firstMatch(request("/api/v1/items/abc")));
+        assertEquals(2, matcher.firstMatch(request("/api/v2/things", "debug=yes")));
+        assertEquals(3, matcher.firstMatch(request("/api/same/same")));
+        assertEquals(4, matcher.firstMatch(request("/api/same/other")));
+        assertEquals(MsxResourceRuleMatcher.NO_MATCH, matcher.firstMatch(request("/other")));
+    }
+
+    @Test
+    public void firstMatch_sameAsLinearMatchers() {
+        // given
+        List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules = List.of(
+                antRule(),
+                antRule("/api/v1/users/*/roles", "/api/v1/users/me"),
+                regexRule("/api/v[0-9]+/users/.*", "/api/v1/tenants\\?.*"),
+                antRule("/api/v1/users/**", "/api/v?/tenants/**"),
+                antRule("api/v1/**"),
+                regexRule("(?i)/API/.*"),
+                antRule("/**"));
+        MsxResourceRuleMatcher matcher = new MsxResourceRuleMatcher(rules);
+        List<RequestMatcher> linear = linearMatchers(rules);
+        List<MockHttpServletRequest> requests = List.of(
+                request("/api/v1/users/me"),
+                request("/api/v1/users/1/roles"),
+                request("/api/v1/users/1/roles/2"),
+                request("/api/v2/users"),
+                request("/api/v1/users"),
+                request("/api/v1/tenants", "page=1"),
+                request("/api/v1/tenants/1"),
+                request("/API/v1"),
+                request("/api//v1/users/me"),
+                request("/"),
+                request(""));
+
+        for (MockHttpServletRequest request : requests) {
+            // when
+            int rule = matcher.firstMatch(request);
+
+            // then
+            int expected = MsxResourceRuleMatcher.NO_MATCH;
+            for (int i = 0; i < linear.size(); i++) {
+                if (linear.get(i) != null && linear.get(i).matches(request)) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, rule, request.getServletPath());
+        }
+    }
+
+    @Test
+    public void matches_sameAsAntPathRequestMatcher() {
+        // given
+        List<String> patterns = List.of("/**", "**", "/api/**", "/api/items", "/api/items/", "/api/items/*", "/api/items/**",
+                "/api/*/items", "/api/**/items", "/api/item?", "/api/{id}", "/api/{id:[0-9]+}", "/API/items", "/api/*.json",
+                "api/items", "/");
+        List<String> paths = List.of("", "/", "/api", "/api/", "/api/items", "/api/items/", "/api/items/1", "/api/items/1/",
+                "/api/items/1/2", "/api/x/items", "/api/x/y/items", "/api/itemz", "/api/42", "/api/4a", "/API/items",
+                "/Api/Items", "/api/a.json", "/api/a.xml", "api/items", "//api/items", "/api//items");
+
+        for (String pattern : patterns) {
+            MsxResourceRuleMatcher matcher = new MsxResourceRuleMatcher(List.of(antRule(pattern)));
+            AntPathRequestMatcher antPathRequestMatcher = new AntPathRequestMatcher(pattern);
+            for (String path : paths) {
+                MockHttpServletRequest request = request(path);
+
+                // when
+                boolean result = matcher.matches(request);
+
+                // then
+                assertEquals(antPathRequestMatcher.matches(request), result, pattern + " " + path);
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void ruleMatcher_extractsUriTemplateVariables() {
+        // given
+        MsxResourceRuleMatcher matcher = new MsxResourceRuleMatcher(List.of(
+                regexRule("/api/v1/items/0"),
+                antRule("/api/v1/tenants/{tenantId}/**", "/api/v1/items/{itemId}")));
+        RequestVariablesExtractor ruleMatcher = (RequestVariablesExtractor) matcher.ruleMatcher(1);
+
+        // when, then
+        assertEquals(Map.of("itemId", "42"), ruleMatcher.extractUriTemplateVariables(request("/api/v1/items/42")));
+        assertEquals(Map.of("tenantId", "t1"), ruleMatcher.extractUriTemplateVariables(request("/api/v1/tenants/t1/users")));
+        assertEquals(Map.of(), ruleMatcher.extractUriTemplateVariables(request("/api/v1/items/0")));
+    }
+
+    @Test
+    public void firstMatch_recomputedForOtherPath() {
+        // given
+        MsxResourceRuleMatcher matcher = new MsxResourceRuleMatcher(List.of(antRule("/api/**"), antRule("/error")));
+        MockHttpServletRequest request = request("/api/items");
+        assertEquals(0, matcher.firstMatch(request));
+
+        // when
+        request.setServletPath("/error");
+
+        // then
+        assertEquals(1, matcher.firstMatch(request));
+    }
+
+    private static List<RequestMatcher> linearMatchers(List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules) {
+        List<RequestMatcher> matchers = new ArrayList<>();
+        for (MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule : rules) {
+            if (rule.getPatterns().isEmpty()) {
+                matchers.add(null);
+                continue;
+            }
+            List<RequestMatcher> patternMatchers = new ArrayList<>();
+            for (String pattern : rule.getPatterns()) {
+                patternMatchers.add(rule.getType() == MsxOAuthResourceProperties.ResourceSecurityRuleProperties.PatternType.regex ?
+                        new RegexRequestMatcher(pattern, null) : new AntPathRequestMatcher(pattern));
+            }
+            matchers.add(request -> patternMatchers.stream().anyMatch(m -> m.matches(request)));
+        }
+        return matchers;
+    }
+
+    private static MsxOAuthResourceProperties.ResourceSecurityRuleProperties antRule(String... patterns) {
+        MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule = new MsxOAuthResourceProperties.ResourceSecurityRuleProperties();
+        rule.setPatterns(List.of(patterns));
+        return rule;
+    }
+
+    private static MsxOAuthResourceProperties.ResourceSecurityRuleProperties regexRule(String... patterns) {
+        MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule = antRule(patterns);
+        rule.setType(MsxOAuthResourceProperties.ResourceSecurityRuleProperties.PatternType.regex);
+        return rule;
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        return request(path, null);
+    }
+
+    private static MockHttpServletRequest request(String path, String queryString) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        request.setQueryString(queryString);
+        return request;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchyImpl;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.expression.DefaultWebSecurityExpressionHandler;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MsxSecurityExpressionParserTest {
+
+    private static final List<String> EXPRESSIONS = List.of(
+            "isAuthenticated()",
+            "hasAuthority('SCOPE_read')",
+            "hasRole('CLIENT')",
+            "hasRole('ROLE_CLIENT') and hasAuthority('SCOPE_read') and hasAuthority('SCOPE_write')",
+            "hasAnyAuthority('SCOPE_read', 'SCOPE_write') || hasAnyRole('ADMIN','ROLE_CLIENT')",
+            "hasAuthority('SCOPE_read') or hasRole('ADMIN') and hasAuthority('SCOPE_write')",
+            "(hasAuthority('SCOPE_read') OR hasRole('ADMIN')) && isAuthenticated()",
+            "hasAnyAuthority()",
+            "hasAuthority('it''s')");
+
+    private static final List<Authentication> AUTHENTICATIONS = List.of(
+            new TestingAuthenticationToken("user", null, AuthorityUtils.NO_AUTHORITIES),
+            new TestingAuthenticationToken("user", null, "SCOPE_read"),
+            new TestingAuthenticationToken("user", null, "ROLE_CLIENT", "SCOPE_read"),
+            new TestingAuthenticationToken("user", null, "ROLE_CLIENT", "SCOPE_read", "SCOPE_write"),
+            new TestingAuthenticationToken("user", null, "ROLE_ADMIN", "SCOPE_write", "it's"),
+            new AnonymousAuthenticationToken("key", "anonymous", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")));
+
+    private final DefaultWebSecurityExpressionHandler expressionHandler = new DefaultWebSecurityExpressionHandler();
+
+    private final FilterInvocation filterInvocation = new FilterInvocation(new MockHttpServletRequest(),
+            new MockHttpServletResponse(), (request, response) -> {
+    });
+
+    @Test
+    public void parseExpression_native() {
+        // given
+        MsxSecurityExpressionParser parser = new MsxSecurityExpressionParser();
+        SpelExpressionParser spelExpressionParser = new SpelExpressionParser();
+
+        for (String expressionString : EXPRESSIONS) {
+            // when
+            Expression expression = parser.parseExpression(expressionString);
+
+            // then
+            assertFalse(expression instanceof SpelExpression, expressionString);
+            assertEquals(expressionString, expression.getExpressionString());
+            Expression spelExpression = spelExpressionParser.parseExpression(expressionString);
+            for (Authentication authentication : AUTHENTICATIONS) {
+                EvaluationContext context = expressionHandler.createEvaluationContext(authentication, filterInvocation);
+                assertEquals(ExpressionUtils.evaluateAsBoolean(spelExpression, context),
+                        ExpressionUtils.evaluateAsBoolean(expression, context),
+                        expressionString + " " + authentication.getAuthorities());
+            }
+        }
+    }
+
+    @Test
+    public void parseExpression_roleHierarchy() {
+        // given
+        RoleHierarchyImpl roleHierarchy = new RoleHierarchyImpl();
+        roleHierarchy.setHierarchy("ROLE_ADMIN > ROLE_CLIENT");
+        expressionHandler.setRoleHierarchy(roleHierarchy);
+        MsxSecurityExpressionParser parser = new MsxSecurityExpressionParser("ROLE_", roleHierarchy);
+        Authentication authentication = new TestingAuthenticationToken("user", null, "ROLE_ADMIN");
+
+        // when
+        Expression expression = parser.parseExpression("hasRole('CLIENT')");
+
+        // then
+        assertTrue(ExpressionUtils.evaluateAsBoolean(expression,
+                expressionHandler.createEvaluationContext(authentication, filterInvocation)));
+    }
+
+    @Test
+    public void parseExpression_otherFormsFallBackToSpel() {
+        // given
+        MsxSecurityExpressionParser parser = new MsxSecurityExpressionParser();
+        Authentication authentication = new TestingAuthenticationToken("user", null, "SCOPE_read");
+
+        // when
+        Expression expression = parser.parseExpression("hasAuthority('SCOPE_read') and !hasIpAddress('10.0.0.0/8')");
+
+        // then
+        assertTrue(expression instanceof SpelExpression);
+        assertTrue(ExpressionUtils.evaluateAsBoolean(expression,
+                expressionHandler.createEvaluationContext(authentication, filterInvocation)));
+    }
+}
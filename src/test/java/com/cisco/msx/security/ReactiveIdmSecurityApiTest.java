@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveIdmSecurityApiTest {
+
+    private IntegrationSecurityProperties integrationSecurityProperties;
+
+    private final List<ClientRequest> requests = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        integrationSecurityProperties = new IntegrationSecurityProperties();
+    }
+
+    @Test
+    public void checkToken() {
+        // given
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        ReactiveIdmSecurityApi reactiveIdmSecurityApi = reactiveIdmSecurityApi(null, HttpStatus.OK, null,
+                "{\"active\":true,\"exp\":" + exp + ",\"tenant_id\":\"tenantId1\",\"permissions\":[\"permission1\"]}");
+
+        // when
+        SecurityContextDetails result = reactiveIdmSecurityApi.checkToken("token").block();
+
+        // then
+        assertTrue(result.isActive());
+        assertEquals("tenantId1", result.getTenantId());
+        assertTrue(result.getAccess().hasPermission("permission1"));
+
+        assertEquals(1, requests.size());
+        assertEquals(HttpMethod.POST, requests.get(0).method());
+        assertEquals("http://usermanagementservice/idm/v2/check_token?token=token", requests.get(0).url().toString());
+        assertEquals("gzip", requests.get(0).headers().getFirst(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    public void checkToken_gzip() throws Exception {
+        // given
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("{\"active\":true,\"assigned_tenants\":[\"tenantId1\",\"tenantId2\"]}".getBytes(StandardCharsets.UTF_8));
+        }
+        ReactiveIdmSecurityApi reactiveIdmSecurityApi = reactiveIdmSecurityApi(null, HttpStatus.OK, "gzip", compressed.toByteArray());
+
+        // when
+        SecurityContextDetails result = reactiveIdmSecurityApi.checkToken("token").block();
+
+        // then
+        assertTrue(result.isActive());
+        assertEquals(List.of("tenantId1", "tenantId2"), result.getAssignedTenants());
+    }
+
+    @Test
+    public void checkToken_cached() {
+        // given
+        Cache checkTokenCache = new CaffeineCache(Constants.CHECK_TOKEN_CACHE,
+                IdmSecurityCaches.checkTokenCache(integrationSecurityProperties.getCache().getCheckToken()));
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        ReactiveIdmSecurityApi reactiveIdmSecurityApi = reactiveIdmSecurityApi(checkTokenCache, HttpStatus.OK, null,
+                "{\"active\":true,\"exp\":" + exp + "}");
+
+        // when
+        SecurityContextDetails first = reactiveIdmSecurityApi.checkToken("token").block();
+        SecurityContextDetails second = reactiveIdmSecurityApi.checkToken("token").block();
+
+        // then
+        assertSame(first, second);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void checkToken_sharedCacheOffEventLoop() {
+        // given
+        List<String> sharedCacheThreads = new ArrayList<>();
+        IdmSecurityL2Cache l2Cache = new InMemoryIdmSecurityL2Cache() {
+            @Override
+            public Object get(String cacheName, Object key) {
+                sharedCacheThreads.add(Thread.currentThread().getName());
+                return super.get(cacheName, key);
+            }
+
+            @Override
+            public void put(String cacheName, Object key, Object value, Duration timeToLive) {
+                sharedCacheThreads.add(Thread.currentThread().getName());
+                super.put(cacheName, key, value, timeToLive);
+            }
+        };
+        Cache checkTokenCache = new TwoTierCache(new CaffeineCache(Constants.CHECK_TOKEN_CACHE,
+                IdmSecurityCaches.checkTokenCache(integrationSecurityProperties.getCache().getCheckToken())),
+                l2Cache, value -> Duration.ofMinutes(1), invalidation -> {
+        });
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        ReactiveIdmSecurityApi reactiveIdmSecurityApi = reactiveIdmSecurityApi(checkTokenCache, HttpStatus.OK, null,
+                "{\"active\":true,\"exp\":" + exp + "}");
+
+        // when
+        SecurityContextDetails first = reactiveIdmSecurityApi.checkToken("token").block();
+        int sharedCacheCalls = sharedCacheThreads.size();
+        SecurityContextDetails second = reactiveIdmSecurityApi.checkToken("token").block();
+
+        // then
+        assertSame(first, second);
+        assertEquals(1, requests.size());
+        assertEquals(2, sharedCacheCalls);
+        assertEquals(sharedCacheCalls, sharedCacheThreads.size());
+        assertTrue(sharedCacheThreads.stream().allMatch(thread -> thread.startsWith("boundedElastic")), sharedCacheThreads.toString());
+    }
+
+    @Test
+    public void getTenantAncestors() {
+        // given
+        ReactiveIdmSecurityApi reactiveIdmSecurityApi = reactiveIdmSecurityApi(null, HttpStatus.OK, null,
+                "[\"ancestorTenantId1\",\"ancestorTenantId2\"]");
+
+        // when
+        Set<String> result = reactiveIdmSecurityApi.getTenantAncestors("tenant Id1").block();
+
+        // then
+        assertEquals(Set.of("ancestorTenantId1", "ancestorTenantId2"), result);
+        assertEquals("http://usermanagementservice/idm/v2/tenant_hierarchy/ancestors?tenantId=tenant%20Id1",
+                requests.get(0).url().toString());
+    }
+
+    @Test
+    public void getTenantParent_clientError() {
+        // given
+        ReactiveIdmSecurityApi reactiveIdmSecurityApi = reactiveIdmSecurityApi(null, HttpStatus.NOT_FOUND, null, "");
+
+        // when
+        Mono<String> parent = reactiveIdmSecurityApi.getTenantParent("tenantId1");
+
+        // then
+        assertTrue(requests.isEmpty());
+        WebClientResponseException e = assertThrows(WebClientResponseException.class, parent::block);
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+
+    private ReactiveIdmSecurityApi reactiveIdmSecurityApi(Cache checkTokenCache, HttpStatus status, String contentEncoding, String body) {
+        return reactiveIdmSecurityApi(checkTokenCache, status, contentEncoding, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ReactiveIdmSecurityApi reactiveIdmSecurityApi(Cache checkTokenCache, HttpStatus status, String contentEncoding, byte[] body) {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.add(request);
+                    ClientResponse.Builder response = ClientResponse.create(status);
+                    if (contentEncoding != null) {
+                        response.header(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+                    }
+                    return Mono.just(response.body(Flux.just(new DefaultDataBufferFactory().wrap(body))).build());
+                })
+                .build();
+        return new ReactiveIdmSecurityApi(webClient, new ObjectMapper(), integrationSecurityProperties, checkTokenCache, null);
+    }
+}
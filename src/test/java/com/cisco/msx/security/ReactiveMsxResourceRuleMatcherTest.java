@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveMsxResourceRuleMatcherTest {
+
+    @Test
+    public void firstMatch() {
+        // given
+        ReactiveMsxResourceRuleMatcher matcher = new ReactiveMsxResourceRuleMatcher(List.of(
+                antRule("/api/v1/items/{id}"),
+                regexRule("/api/.*\\?debug=true"),
+                antRule("/api/**")));
+
+        // when, then
+        assertEquals(0, matcher.firstMatch(exchange(MockServerHttpRequest.get("/api/v1/items/42"))));
+        assertEquals(1, matcher.firstMatch(exchange(MockServerHttpRequest.get("/api/v1/other?debug=true"))));
+        assertEquals(2, matcher.firstMatch(exchange(MockServerHttpRequest.get("/api/v1/other?debug=false"))));
+        assertEquals(0, matcher.firstMatch(exchange(MockServerHttpRequest.get("/ctx/api/v1/items/42").contextPath("/ctx"))));
+        assertEquals(MsxResourceRuleMatcher.NO_MATCH, matcher.firstMatch(exchange(MockServerHttpRequest.get("/other"))));
+        assertTrue(matcher.matches(exchange(MockServerHttpRequest.get("/api"))).block().isMatch());
+        assertFalse(matcher.matches(exchange(MockServerHttpRequest.get("/other"))).block().isMatch());
+    }
+
+    @Test
+    public void ruleMatcher_extractsUriTemplateVariables() {
+        // given
+        ReactiveMsxResourceRuleMatcher matcher = new ReactiveMsxResourceRuleMatcher(List.of(
+                antRule("/api/v1/items/0"),
+                antRule("/api/v1/tenants/{tenantId}/**", "/api/v1/items/{itemId}")));
+        ServerWebExchangeMatcher ruleMatcher = matcher.ruleMatcher(1);
+
+        // when
+        ServerWebExchangeMatcher.MatchResult item = ruleMatcher.matches(exchange(MockServerHttpRequest.get("/api/v1/items/42"))).block();
+        ServerWebExchangeMatcher.MatchResult tenant = ruleMatcher.matches(exchange(MockServerHttpRequest.get("/api/v1/tenants/t1/users"))).block();
+        ServerWebExchangeMatcher.MatchResult earlierRule = ruleMatcher.matches(exchange(MockServerHttpRequest.get("/api/v1/items/0"))).block();
+
+        // then
+        assertTrue(item.isMatch());
+        assertEquals(Map.of("itemId", "42"), item.getVariables());
+        assertEquals(Map.of("tenantId", "t1"), tenant.getVariables());
+        assertFalse(earlierRule.isMatch());
+    }
+
+    @Test
+    public void firstMatch_recomputedForOtherPath() {
+        // given
+        ReactiveMsxResourceRuleMatcher matcher = new ReactiveMsxResourceRuleMatcher(List.of(antRule("/api/**"), antRule("/error")));
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/items"));
+        assertEquals(0, matcher.firstMatch(exchange));
+
+        // when
+        ServerWebExchange mutated = exchange.mutate().request(request -> request.path("/error")).build();
+
+        // then
+        assertEquals(1, matcher.firstMatch(mutated));
+        assertEquals(0, matcher.firstMatch(exchange));
+    }
+
+    private static ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request);
+    }
+
+    private static MsxOAuthResourceProperties.ResourceSecurityRuleProperties antRule(String... patterns) {
+        MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule = new MsxOAuthResourceProperties.ResourceSecurityRuleProperties();
+        rule.setPatterns(List.of(patterns));
+        return rule;
+    }
+
+    private static MsxOAuthResourceProperties.ResourceSecurityRuleProperties regexRule(String... patterns) {
+        MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule = antRule(patterns);
+        rule.setType(MsxOAuthResourceProperties.ResourceSecurityRuleProperties.PatternType.regex);
+        return rule;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveTokenBasedRBACUtilsTest {
+
+    @Mock
+    private ReactiveIdmSecurityApi reactiveIdmSecurityApi;
+
+    private Cache invalidTenantCache;
+
+    private ReactiveTokenBasedRBACUtils reactiveTokenBasedRBACUtils;
+
+    @BeforeEach
+    public void setUp() {
+        invalidTenantCache = new ConcurrentMapCache(Constants.INVALID_TENANT_CACHE);
+        reactiveTokenBasedRBACUtils = new ReactiveTokenBasedRBACUtils(reactiveIdmSecurityApi, invalidTenantCache);
+    }
+
+    @Test
+    public void hasPermission() {
+        // given
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setPermissions(List.of("permission1"));
+        given(reactiveIdmSecurityApi.checkToken("oauth2Token1")).willReturn(Mono.just(securityContextDetails));
+
+        // when, then
+        assertTrue(reactiveTokenBasedRBACUtils.hasPermission("oauth2Token1", "permission1").block());
+        assertFalse(reactiveTokenBasedRBACUtils.hasPermission("oauth2Token1", "permission2").block());
+    }
+
+    @Test
+    public void hasAccessToTenant_viaAncestor() {
+        // given
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(List.of("ancestorTenantId1"));
+        given(reactiveIdmSecurityApi.checkToken("oauth2Token1")).willReturn(Mono.just(securityContextDetails));
+        given(reactiveIdmSecurityApi.getTenantParent("tenantId1")).willReturn(Mono.just("ancestorTenantId1"));
+        given(reactiveIdmSecurityApi.getTenantAncestors("tenantId1")).willReturn(Mono.just(Set.of("ancestorTenantId1")));
+
+        // when
+        boolean result = reactiveTokenBasedRBACUtils.hasAccessToTenant("oauth2Token1", "tenantId1").block();
+
+        // then
+        assertTrue(result);
+    }
+
+    @Test
+    public void hasAccessToTenant_assignedWithoutAncestorsLookup() {
+        // given
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(List.of("tenantId1"));
+        given(reactiveIdmSecurityApi.getTenantParent("tenantId1")).willReturn(Mono.just("parentTenantId1"));
+
+        // when
+        boolean result = reactiveTokenBasedRBACUtils.hasAccessToTenant(securityContextDetails, "tenantId1").block();
+
+        // then
+        assertTrue(result);
+        then(reactiveIdmSecurityApi).should(never()).getTenantAncestors(anyString());
+    }
+
+    @Test
+    public void isTenantIdValid_invalidRemembered() {
+        // given
+        given(reactiveIdmSecurityApi.getTenantParent("tenantId1")).willReturn(Mono.just(""));
+        given(reactiveIdmSecurityApi.getTenantRoot()).willReturn(Mono.just("rootTenantId"));
+
+        // when
+        boolean first = reactiveTokenBasedRBACUtils.isTenantIdValid("tenantId1").block();
+        boolean second = reactiveTokenBasedRBACUtils.isTenantIdValid("tenantId1").block();
+
+        // then
+        assertFalse(first);
+        assertFalse(second);
+        assertNotNull(invalidTenantCache.get("tenantId1"));
+        then(reactiveIdmSecurityApi).should().getTenantParent("tenantId1");
+    }
+
+    @Test
+    public void hasAccessToTenants_tokenCheckedOnce() {
+        // given
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(List.of("tenantId1"));
+        given(reactiveIdmSecurityApi.checkToken("oauth2Token1")).willReturn(Mono.just(securityContextDetails));
+        given(reactiveIdmSecurityApi.getTenantParent(anyString())).willReturn(Mono.just("rootTenantId"));
+        given(reactiveIdmSecurityApi.getTenantAncestors("tenantId2")).willReturn(Mono.just(Set.of("rootTenantId")));
+
+        // when
+        boolean result = reactiveTokenBasedRBACUtils.hasAccessToTenants("oauth2Token1", List.of("tenantId1", "tenantId2", "tenantId1")).block();
+
+        // then
+        assertFalse(result);
+        then(reactiveIdmSecurityApi).should().checkToken("oauth2Token1");
+    }
+}
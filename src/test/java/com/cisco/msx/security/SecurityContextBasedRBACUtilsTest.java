@@ -5,6 +5,7 @@
 
 package com.cisco.msx.security;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -14,10 +15,12 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.util.List;
-import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.BDDMockito.*;
@@ -40,6 +43,14 @@ public class SecurityContextBasedRBACUtilsTest {
     @MockBean
     private TokenBasedRBACUtils tokenBasedRBACUtils;
 
+    @MockBean
+    private JwtSecurityContextDetailsConverter jwtSecurityContextDetailsConverter;
+
+    @AfterEach
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
     @Test
     public void extractToken() {
         // given
@@ -89,6 +100,121 @@ public class SecurityContextBasedRBACUtilsTest {
         then(idmSecurityApi).should().checkToken(token);
     }
 
+    @Test
+    public void getSecurityContextDetails_resolvedOncePerRequest() {
+        // given
+        String token = "token";
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        willReturn(token).given(securityContextBasedRBACUtils).extractToken();
+        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
+        given(idmSecurityApi.checkToken(token)).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails first = securityContextBasedRBACUtils.getSecurityContextDetails();
+        SecurityContextDetails second = securityContextBasedRBACUtils.getSecurityContextDetails();
+
+        // then
+        assertSame(securityContextDetails, first);
+        assertSame(securityContextDetails, second);
+        then(idmSecurityApi).should(times(1)).checkToken(token);
+    }
+
+    @Test
+    public void getSecurityContextDetails_tokenChangedWithinRequest() {
+        // given
+        String token1 = "token1";
+        String token2 = "token2";
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        SecurityContextDetails securityContextDetails1 = mock(SecurityContextDetails.class);
+        SecurityContextDetails securityContextDetails2 = mock(SecurityContextDetails.class);
+        given(idmSecurityApi.checkToken(token1)).willReturn(securityContextDetails1);
+        given(idmSecurityApi.checkToken(token2)).willReturn(securityContextDetails2);
+
+        // when
+        willReturn(token1).given(securityContextBasedRBACUtils).extractToken();
+        SecurityContextDetails first = securityContextBasedRBACUtils.getSecurityContextDetails();
+        willReturn(token2).given(securityContextBasedRBACUtils).extractToken();
+        SecurityContextDetails second = securityContextBasedRBACUtils.getSecurityContextDetails();
+
+        // then
+        assertSame(securityContextDetails1, first);
+        assertSame(securityContextDetails2, second);
+    }
+
+    @Test
+    public void getSecurityContextDetails_localClaims() {
+        // given
+        String token = "token";
+
+        Jwt jwt = mock(Jwt.class);
+        given(jwt.getTokenValue()).willReturn(token);
+        JwtAuthenticationToken jwtAuthenticationToken = new JwtAuthenticationToken(jwt);
+        SecurityContext securityContext = mock(SecurityContext.class);
+        given(securityContext.getAuthentication()).willReturn(jwtAuthenticationToken);
+        SecurityContextHolder.setContext(securityContext);
+
+        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
+        given(jwtSecurityContextDetailsConverter.convert(jwt)).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails result = securityContextBasedRBACUtils.getSecurityContextDetails();
+
+        // then
+        assertSame(securityContextDetails, result);
+        then(jwtSecurityContextDetailsConverter).should().convert(jwt);
+        then(idmSecurityApi).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getSecurityContextDetails_localClaimsMissing() {
+        // given
+        String token = "token";
+
+        Jwt jwt = mock(Jwt.class);
+        given(jwt.getTokenValue()).willReturn(token);
+        JwtAuthenticationToken jwtAuthenticationToken = new JwtAuthenticationToken(jwt);
+        SecurityContext securityContext = mock(SecurityContext.class);
+        given(securityContext.getAuthentication()).willReturn(jwtAuthenticationToken);
+        SecurityContextHolder.setContext(securityContext);
+
+        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
+        given(jwtSecurityContextDetailsConverter.convert(jwt)).willReturn(null);
+        given(idmSecurityApi.checkToken(token)).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails result = securityContextBasedRBACUtils.getSecurityContextDetails();
+
+        // then
+        assertSame(securityContextDetails, result);
+        then(idmSecurityApi).should().checkToken(token);
+    }
+
+    @Test
+    public void getSecurityContextDetails_withoutJwtConverter() {
+        // given
+        String token = "token";
+
+        Jwt jwt = mock(Jwt.class);
+        given(jwt.getTokenValue()).willReturn(token);
+        JwtAuthenticationToken jwtAuthenticationToken = new JwtAuthenticationToken(jwt);
+        SecurityContext securityContext = mock(SecurityContext.class);
+        given(securityContext.getAuthentication()).willReturn(jwtAuthenticationToken);
+        SecurityContextHolder.setContext(securityContext);
+
+        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
+        given(idmSecurityApi.checkToken(token)).willReturn(securityContextDetails);
+
+        // when
+        SecurityContextDetails result = new SecurityContextBasedRBACUtils(idmSecurityApi, tokenBasedRBACUtils).getSecurityContextDetails();
+
+        // then
+        assertSame(securityContextDetails, result);
+        then(idmSecurityApi).should().checkToken(token);
+        then(jwtSecurityContextDetailsConverter).shouldHaveNoInteractions();
+    }
+
     @Test
     public void hasPermission() {
         // given
@@ -158,8 +284,8 @@ public class SecurityContextBasedRBACUtilsTest {
         given(tokenBasedRBACUtils.isTenantIdValid(tenantId)).willReturn(true);
         willReturn(false).given(securityContextBasedRBACUtils).hasAccessAllTenantsPermission();
 
-        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
-        given(securityContextDetails.getAssignedTenants()).willReturn(assignedTenants);
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(assignedTenants);
         willReturn(securityContextDetails).given(securityContextBasedRBACUtils).getSecurityContextDetails();
 
         // when
@@ -169,7 +295,6 @@ public class SecurityContextBasedRBACUtilsTest {
         assertTrue(result);
         then(tokenBasedRBACUtils).should().isTenantIdValid(tenantId);
         then(securityContextBasedRBACUtils).should().hasAccessAllTenantsPermission();
-        then(securityContextDetails).should().getAssignedTenants();
         then(securityContextBasedRBACUtils).should().getSecurityContextDetails();
     }
 
@@ -178,14 +303,13 @@ public class SecurityContextBasedRBACUtilsTest {
         // given
         String tenantId = "tenantId1";
         List<String> assignedTenants = List.of("ancestorTenantId1");
-        Set<String> ancestorTenants = Set.of("ancestorTenantId1", "ancestorTenantId2");
         given(tokenBasedRBACUtils.isTenantIdValid(tenantId)).willReturn(true);
         willReturn(false).given(securityContextBasedRBACUtils).hasAccessAllTenantsPermission();
 
-        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
-        given(securityContextDetails.getAssignedTenants()).willReturn(assignedTenants);
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(assignedTenants);
         willReturn(securityContextDetails).given(securityContextBasedRBACUtils).getSecurityContextDetails();
-        given(idmSecurityApi.getTenantAncestors(tenantId)).willReturn(ancestorTenants);
+        given(tokenBasedRBACUtils.isInAssignedSubtree(securityContextDetails.getAccess(), tenantId)).willReturn(true);
 
         // when
         boolean result = securityContextBasedRBACUtils.hasAccessToTenant(tenantId);
@@ -194,8 +318,7 @@ public class SecurityContextBasedRBACUtilsTest {
         assertTrue(result);
         then(tokenBasedRBACUtils).should().isTenantIdValid(tenantId);
         then(securityContextBasedRBACUtils).should().hasAccessAllTenantsPermission();
-        then(securityContextDetails).should().getAssignedTenants();
-        then(idmSecurityApi).should().getTenantAncestors(tenantId);
+        then(tokenBasedRBACUtils).should().isInAssignedSubtree(securityContextDetails.getAccess(), tenantId);
     }
 
     @Test
@@ -203,14 +326,13 @@ public class SecurityContextBasedRBACUtilsTest {
         // given
         String tenantId = "tenantId1";
         List<String> assignedTenants = List.of("ancestorTenantId1");
-        Set<String> ancestorTenants = Set.of("ancestorTenantId2", "ancestorTenantId3");
         given(tokenBasedRBACUtils.isTenantIdValid(tenantId)).willReturn(true);
         willReturn(false).given(securityContextBasedRBACUtils).hasAccessAllTenantsPermission();
 
-        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
-        given(securityContextDetails.getAssignedTenants()).willReturn(assignedTenants);
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(assignedTenants);
         willReturn(securityContextDetails).given(securityContextBasedRBACUtils).getSecurityContextDetails();
-        given(idmSecurityApi.getTenantAncestors(tenantId)).willReturn(ancestorTenants);
+        given(tokenBasedRBACUtils.isInAssignedSubtree(securityContextDetails.getAccess(), tenantId)).willReturn(false);
 
         // when
         boolean result = securityContextBasedRBACUtils.hasAccessToTenant(tenantId);
@@ -219,50 +341,34 @@ public class SecurityContextBasedRBACUtilsTest {
         assertFalse(result);
         then(tokenBasedRBACUtils).should().isTenantIdValid(tenantId);
         then(securityContextBasedRBACUtils).should().hasAccessAllTenantsPermission();
-        then(securityContextDetails).should().getAssignedTenants();
         then(securityContextBasedRBACUtils).should().getSecurityContextDetails();
-        then(idmSecurityApi).should().getTenantAncestors(tenantId);
+        then(tokenBasedRBACUtils).should().isInAssignedSubtree(securityContextDetails.getAccess(), tenantId);
     }
 
     @Test
-    public void hasAccessToTenants_haveAccessToAllTenants() {
+    public void hasAccessToTenants() {
         // given
-        String tenantId1 = "tenantId1";
-        String tenantId2 = "tenantId2";
-        String tenantId3 = "tenantId3";
-        List<String> tenantIds = List.of(tenantId1, tenantId2, tenantId3);
-        willReturn(true).given(securityContextBasedRBACUtils).hasAccessToTenant(tenantId1);
-        willReturn(true).given(securityContextBasedRBACUtils).hasAccessToTenant(tenantId2);
-        willReturn(true).given(securityContextBasedRBACUtils).hasAccessToTenant(tenantId3);
+        List<String> tenantIds = List.of("tenantId1", "tenantId2", "tenantId3");
+        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
+        willReturn(securityContextDetails).given(securityContextBasedRBACUtils).getSecurityContextDetails();
+        given(tokenBasedRBACUtils.hasAccessToTenants(securityContextDetails, tenantIds)).willReturn(true);
 
         // when
         boolean result = securityContextBasedRBACUtils.hasAccessToTenants(tenantIds);
 
         // then
         assertTrue(result);
-        then(securityContextBasedRBACUtils).should().hasAccessToTenant(tenantId1);
-        then(securityContextBasedRBACUtils).should().hasAccessToTenant(tenantId2);
-        then(securityContextBasedRBACUtils).should().hasAccessToTenant(tenantId3);
+        then(securityContextBasedRBACUtils).should(times(1)).getSecurityContextDetails();
+        then(tokenBasedRBACUtils).should().hasAccessToTenants(securityContextDetails, tenantIds);
     }
 
     @Test
-    public void hasAccessToTenants_haveNotAccessToAllTenants() {
-        // given
-        String tenantId1 = "tenantId1";
-        String tenantId2 = "tenantId2";
-        String tenantId3 = "tenantId3";
-        List<String> tenantIds = List.of(tenantId1, tenantId2, tenantId3);
-        willReturn(true).given(securityContextBasedRBACUtils).hasAccessToTenant(tenantId1);
-        willReturn(false).given(securityContextBasedRBACUtils).hasAccessToTenant(tenantId2);
-        willReturn(true).given(securityContextBasedRBACUtils).hasAccessToTenant(tenantId3);
-
+    public void hasAccessToTenants_empty() {
         // when
-        boolean result = securityContextBasedRBACUtils.hasAccessToTenants(tenantIds);
+        boolean result = securityContextBasedRBACUtils.hasAccessToTenants(List.of());
 
         // then
-        assertFalse(result);
-        then(securityContextBasedRBACUtils).should().hasAccessToTenant(tenantId1);
-        then(securityContextBasedRBACUtils).should().hasAccessToTenant(tenantId2);
-        then(securityContextBasedRBACUtils).should(times(0)).hasAccessToTenant(tenantId3);
+        assertTrue(result);
+        then(idmSecurityApi).shouldHaveNoInteractions();
     }
 }
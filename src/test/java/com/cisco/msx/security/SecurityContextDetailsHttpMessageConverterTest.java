@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecurityContextDetailsHttpMessageConverterTest {
+
+    private final SecurityContextDetailsHttpMessageConverter converter = new SecurityContextDetailsHttpMessageConverter();
+
+    @Test
+    public void canReadOnly() {
+        // then
+        assertTrue(converter.canRead(SecurityContextDetails.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(SecurityContextDetails.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(SecurityContextDetails.class, null));
+        assertFalse(converter.canWrite(SecurityContextDetails.class, MediaType.ALL));
+    }
+
+    @Test
+    public void writeDelegatedToJackson() throws IOException {
+        // given
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setActive(true);
+        securityContextDetails.setAssignedTenants(List.of("tenantId1"));
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+        // when
+        converter.write(securityContextDetails, MediaType.APPLICATION_JSON, outputMessage);
+
+        // then
+        SecurityContextDetails read = converter.read(SecurityContextDetails.class,
+                new MockHttpInputMessage(outputMessage.getBodyAsString(StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8)));
+        assertEquals(securityContextDetails, read);
+        assertEquals(securityContextDetails, new ObjectMapper().readValue(outputMessage.getBodyAsBytes(), SecurityContextDetails.class));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecurityContextDetailsReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void read() throws IOException {
+        // given
+        String tenants = IntStream.range(0, 100).mapToObj(i -> "\"tenantId" + i + "\"").collect(Collectors.joining(","));
+        String json = "{\"active\":true,\"exp\":1700000000,\"sub\":\"user1\",\"tenant_id\":\"tenantId0\"," +
+                "\"scope\":[\"read\",\"write\"],\"unknown\":{\"nested\":[1,2]},\"roles\":null," +
+                "\"assigned_tenants\":[" + tenants + "],\"permissions\":[\"permission1\"]}";
+
+        // when
+        SecurityContextDetails securityContextDetails = read(json);
+
+        // then
+        assertEquals(new ObjectMapper().readValue(json, SecurityContextDetails.class), securityContextDetails);
+        assertEquals(100, securityContextDetails.getAssignedTenants().size());
+        assertEquals("tenantId99", securityContextDetails.getAssignedTenants().get(99));
+        assertEquals(List.of("permission1"), securityContextDetails.getPermissions());
+        assertNull(securityContextDetails.getRoles());
+    }
+
+    @Test
+    public void read_mutableLists() throws IOException {
+        // when
+        SecurityContextDetails securityContextDetails = read("{\"assigned_tenants\":[],\"permissions\":[\"permission1\"]}");
+        securityContextDetails.getAssignedTenants().add("tenantId1");
+        securityContextDetails.getPermissions().add("permission2");
+
+        // then
+        assertEquals(List.of("tenantId1"), securityContextDetails.getAssignedTenants());
+        assertEquals(List.of("permission1", "permission2"), securityContextDetails.getPermissions());
+    }
+
+    @Test
+    public void read_empty() throws IOException {
+        // when
+        SecurityContextDetails securityContextDetails = read("");
+
+        // then
+        assertNull(securityContextDetails);
+    }
+
+    @Test
+    public void read_invalid() {
+        // when
+        assertThrows(IOException.class, () -> read("[\"active\"]"));
+    }
+
+    @Test
+    public void read_sameAsObjectMapper() {
+        // given
+        List<String> payloads = List.of(
+                "{}",
+                "{\"active\":\"true\",\"exp\":\"1700000000\",\"iat\":1.5,\"auth_time\":null,\"sub\":42,\"email\":true}",
+                "{\"active\":1,\"locale\":null,\"scope\":[\"read\",null,7,false],\"roles\":[]}",
+                "{\"unknown\":[{\"a\":[1,{}]}],\"tenant_id\":\"tenantId1\",\"other\":{\"aud\":[\"x\"]}}",
+                "{\"aud\":[\"audience1\",\"audience2\"],\"active\":true}",
+                "{\"aud\":{\"name\":\"audience1\"},\"active\":true}",
+                "{\"exp\":[1700000000],\"active\":true}",
+                "{\"exp\":\"soon\"}",
+                "{\"active\":\"yes\"}",
+                "{\"active\":{}}",
+                "{\"permissions\":\"permission1\"}",
+                "{\"permissions\":{\"name\":\"permission1\"}}",
+                "{\"assigned_tenants\":[[\"tenantId1\"],\"tenantId2\"]}",
+                "{\"assigned_tenants\":[{\"id\":\"tenantId1\"}]}",
+                "{\"active\":true,\"sub\":\"user1\"",
+                "{\"active\":true,\"assigned_tenants\":[\"tenantId1\"");
+
+        // when, then
+        for (String payload : payloads) {
+            assertSameAsObjectMapper(payload);
+        }
+    }
+
+    @Test
+    public void read_everyPropertyOfSecurityContextDetails() throws IOException {
+        // given
+        JavaType type = objectMapper.constructType(SecurityContextDetails.class);
+        BeanDescription description = objectMapper.getDeserializationConfig().introspect(type);
+        List<String> properties = new ArrayList<>();
+        int i = 1;
+        for (BeanPropertyDefinition property : description.findProperties()) {
+            if (!property.couldDeserialize()) {
+                continue;
+            }
+            Class<?> rawType = property.getRawPrimaryType();
+            String value;
+            if (rawType == int.class) {
+                value = String.valueOf(i);
+            } else if (rawType == boolean.class) {
+                value = "true";
+            } else if (rawType == List.class) {
+                value = "[\"" + property.getName() + "1\",\"" + property.getName() + "2\"]";
+            } else {
+                value = "\"" + property.getName() + "\"";
+            }
+            properties.add("\"" + property.getName() + "\":" + value);
+            i++;
+        }
+        String json = "{" + String.join(",", properties) + "}";
+
+        // when
+        SecurityContextDetails securityContextDetails = read(json);
+
+        // then
+        assertEquals(objectMapper.readValue(json, SecurityContextDetails.class), securityContextDetails);
+    }
+
+    private void assertSameAsObjectMapper(String json) {
+        SecurityContextDetails expected;
+        try {
+            expected = objectMapper.readValue(json, SecurityContextDetails.class);
+        } catch (IOException e) {
+            assertThrows(IOException.class, () -> read(json), json);
+            return;
+        }
+        try {
+            assertEquals(expected, read(json), json);
+        } catch (IOException e) {
+            fail(json + " was read by the ObjectMapper but not by the reader", e);
+        }
+    }
+
+    private static SecurityContextDetails read(String json) throws IOException {
+        return SecurityContextDetailsReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
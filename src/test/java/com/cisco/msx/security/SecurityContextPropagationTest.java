@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecurityContextPropagationTest {
+
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void executorService_contextOfSubmitterWithoutLeak() throws Exception {
+        // given
+        ExecutorService executorService = SecurityContextPropagation.executorService(pool);
+        Authentication authentication = new TestingAuthenticationToken("user1", "credentials");
+        SecurityContextHolder.setContext(new SecurityContextImpl(authentication));
+
+        // when
+        Authentication propagated = executorService.submit(() -> SecurityContextHolder.getContext().getAuthentication()).get();
+        SecurityContextHolder.clearContext();
+        Authentication afterwards = executorService.submit(() -> SecurityContextHolder.getContext().getAuthentication()).get();
+        Authentication leftOnWorker = pool.submit(() -> SecurityContextHolder.getContext().getAuthentication()).get();
+
+        // then
+        assertSame(authentication, propagated);
+        assertNull(afterwards);
+        assertNull(leftOnWorker);
+    }
+
+    @Test
+    public void taskDecorator_contextOfSubmitter() {
+        // given
+        Authentication authentication = new TestingAuthenticationToken("user1", "credentials");
+        SecurityContextHolder.setContext(new SecurityContextImpl(authentication));
+        CompletableFuture<Authentication> propagated = new CompletableFuture<>();
+
+        // when
+        pool.execute(SecurityContextPropagation.taskDecorator()
+                .decorate(() -> propagated.complete(SecurityContextHolder.getContext().getAuthentication())));
+
+        // then
+        assertSame(authentication, propagated.join());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SingleFlightTest {
+
+    @Test
+    public void execute_concurrentCallsCoalesced() throws Exception {
+        // given
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        try {
+            // when
+            Future<String> leader = executorService.submit(() -> singleFlight.execute("endpoint", "argument", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "result";
+            }));
+            started.await(5, TimeUnit.SECONDS);
+            Future<String> follower = executorService.submit(() -> singleFlight.execute("endpoint", "argument", () -> {
+                executions.incrementAndGet();
+                return "other";
+            }));
+            while (singleFlight.getCoalescedCount("endpoint") == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            // then
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+            assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+            assertEquals(1, singleFlight.getCoalescedCount("endpoint"));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void execute_sequentialCallsNotCoalesced() {
+        // given
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+
+        // when
+        singleFlight.execute("endpoint", "argument", executions::incrementAndGet);
+        singleFlight.execute("endpoint", "argument", executions::incrementAndGet);
+
+        // then
+        assertEquals(2, executions.get());
+        assertEquals(0, singleFlight.getCoalescedCount("endpoint"));
+    }
+
+    @Test
+    public void execute_exceptionPropagated() {
+        // given
+        SingleFlight singleFlight = new SingleFlight();
+
+        // when
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("endpoint", null, () -> {
+            throw new IllegalStateException();
+        }));
+    }
+
+    @Test
+    public void executeAsync_concurrentCallsCoalesced() throws Exception {
+        // given
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        // when
+        CompletableFuture<String> leader = singleFlight.executeAsync("endpoint", "argument", () -> {
+            executions.incrementAndGet();
+            return call;
+        });
+        CompletableFuture<String> follower = singleFlight.executeAsync("endpoint", "argument", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        call.complete("result");
+
+        // then
+        assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+        assertEquals(1, singleFlight.getCoalescedCount("endpoint"));
+        assertEquals("next", singleFlight.executeAsync("endpoint", "argument", () -> CompletableFuture.completedFuture("next")).join());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+
+@ExtendWith(MockitoExtension.class)
+public class TenantHierarchyIndexTest {
+
+    private TenantHierarchyIndex tenantHierarchyIndex;
+
+    @Mock
+    private IdmSecurityApi idmSecurityApi;
+
+    @BeforeEach
+    public void setUp() {
+        tenantHierarchyIndex = new TenantHierarchyIndex(idmSecurityApi, new IntegrationSecurityProperties.TenantHierarchyIndexProperties());
+    }
+
+    @Test
+    public void notReady() {
+        // then
+        assertFalse(tenantHierarchyIndex.isReady());
+        assertFalse(tenantHierarchyIndex.contains("root"));
+        assertNull(tenantHierarchyIndex.getRoot());
+        assertNull(tenantHierarchyIndex.getAncestors("root"));
+    }
+
+    @Test
+    public void refresh() {
+        // given
+        givenHierarchy();
+
+        // when
+        tenantHierarchyIndex.refresh();
+
+        // then
+        assertTrue(tenantHierarchyIndex.isReady());
+        assertEquals("root", tenantHierarchyIndex.getRoot());
+        assertTrue(tenantHierarchyIndex.contains("root"));
+        assertTrue(tenantHierarchyIndex.contains("grandchild1"));
+        assertFalse(tenantHierarchyIndex.contains("unknown"));
+        assertNull(tenantHierarchyIndex.getParent("root"));
+        assertEquals("child1", tenantHierarchyIndex.getParent("grandchild1"));
+        assertEquals(List.of("child1", "root"), List.copyOf(tenantHierarchyIndex.getAncestors("grandchild1")));
+        assertTrue(tenantHierarchyIndex.getAncestors("root").isEmpty());
+        assertNull(tenantHierarchyIndex.getAncestors("unknown"));
+    }
+
+    @Test
+    public void isAncestor() {
+        // given
+        givenHierarchy();
+        tenantHierarchyIndex.refresh();
+
+        // then
+        assertTrue(tenantHierarchyIndex.isAncestor("root", "grandchild1"));
+        assertTrue(tenantHierarchyIndex.isAncestor("child1", "grandchild1"));
+        assertFalse(tenantHierarchyIndex.isAncestor("child2", "grandchild1"));
+        assertFalse(tenantHierarchyIndex.isAncestor("grandchild1", "child1"));
+        assertFalse(tenantHierarchyIndex.isAncestor("child1", "child1"));
+        assertNull(tenantHierarchyIndex.isAncestor("unknown", "child1"));
+    }
+
+    @Test
+    public void isInAssignedSubtree() {
+        // given
+        givenHierarchy();
+        tenantHierarchyIndex.refresh();
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(List.of("grandchild1", "child1", "unknown"));
+        SecurityContextAccess access = securityContextDetails.getAccess();
+
+        // then
+        assertTrue(tenantHierarchyIndex.isInAssignedSubtree(access, "child1"));
+        assertTrue(tenantHierarchyIndex.isInAssignedSubtree(access, "grandchild1"));
+        assertFalse(tenantHierarchyIndex.isInAssignedSubtree(access, "root"));
+        assertFalse(tenantHierarchyIndex.isInAssignedSubtree(access, "child2"));
+        assertNull(tenantHierarchyIndex.isInAssignedSubtree(access, "unknown"));
+    }
+
+    @Test
+    public void isInAssignedSubtree_rememberedPerBuild() {
+        // given
+        givenHierarchy();
+        tenantHierarchyIndex.refresh();
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(List.of("child1"));
+        SecurityContextAccess access = securityContextDetails.getAccess();
+        tenantHierarchyIndex.isInAssignedSubtree(access, "grandchild1");
+        TenantHierarchyIndex.AssignedSubtrees firstBuild = access.getAssignedSubtrees();
+
+        // when
+        given(idmSecurityApi.walkTenantChildren("child1")).willReturn(Set.of());
+        given(idmSecurityApi.walkTenantChildren("child2")).willReturn(Set.of("grandchild1"));
+        tenantHierarchyIndex.refresh();
+        Boolean result = tenantHierarchyIndex.isInAssignedSubtree(access, "grandchild1");
+
+        // then
+        assertFalse(result);
+        assertNotSame(firstBuild, access.getAssignedSubtrees());
+    }
+
+    @Test
+    public void refresh_failureKeepsPreviousBuild() {
+        // given
+        givenHierarchy();
+        tenantHierarchyIndex.refresh();
+        willThrow(new IllegalStateException()).given(idmSecurityApi).walkTenantRoot();
+
+        // when
+        assertThrows(IllegalStateException.class, () -> tenantHierarchyIndex.refresh());
+
+        // then
+        assertTrue(tenantHierarchyIndex.contains("grandchild1"));
+    }
+
+    private void givenHierarchy() {
+        given(idmSecurityApi.walkTenantRoot()).willReturn("root");
+        given(idmSecurityApi.walkTenantChildren("root")).willReturn(Set.of("child1", "child2"));
+        given(idmSecurityApi.walkTenantChildren("child1")).willReturn(Set.of("grandchild1"));
+        given(idmSecurityApi.walkTenantChildren("child2")).willReturn(Set.of());
+        given(idmSecurityApi.walkTenantChildren("grandchild1")).willReturn(null);
+    }
+}
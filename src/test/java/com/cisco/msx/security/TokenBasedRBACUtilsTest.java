@@ -5,18 +5,30 @@
 
 package com.cisco.msx.security;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.*;
 import static org.mockito.Mockito.mock;
 
@@ -34,6 +46,22 @@ public class TokenBasedRBACUtilsTest {
     @MockBean
     private IdmSecurityApi idmSecurityApi;
 
+    @MockBean
+    private TenantHierarchyIndex tenantHierarchyIndex;
+
+    @MockBean
+    private AsyncIdmSecurityApi asyncIdmSecurityApi;
+
+    @MockBean
+    private Cache invalidTenantCache;
+
+    @BeforeEach
+    public void setUp() {
+        // like contains(), the index knows no tenant unless a test says otherwise
+        given(tenantHierarchyIndex.isInAssignedSubtree(any(), anyString())).willReturn(null);
+        given(tenantHierarchyIndex.isAncestor(anyString(), anyString())).willReturn(null);
+        given(tenantHierarchyIndex.getAncestors(anyString())).willReturn(null);
+    }
 
     @Test
     public void hasPermission_withToken() {
@@ -60,15 +88,14 @@ public class TokenBasedRBACUtilsTest {
         String permission = "permission1";
         List<String> permissions = List.of(permission);
 
-        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
-        given(securityContextDetails.getPermissions()).willReturn(permissions);
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setPermissions(permissions);
 
         // when
         boolean result = tokenBasedRBACUtils.hasPermission(securityContextDetails, permission);
 
         // then
         assertTrue(result);
-        then(securityContextDetails).should().getPermissions();
     }
 
     @Test
@@ -130,8 +157,8 @@ public class TokenBasedRBACUtilsTest {
         willReturn(true).given(tokenBasedRBACUtils).isTenantIdValid(tenantId);
         willReturn(false).given(tokenBasedRBACUtils).hasAccessAllTenantsPermission(oauth2Token);
 
-        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
-        given(securityContextDetails.getAssignedTenants()).willReturn(assignedTenants);
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(assignedTenants);
         given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails);
 
         // when
@@ -141,7 +168,6 @@ public class TokenBasedRBACUtilsTest {
         assertTrue(result);
         then(tokenBasedRBACUtils).should().isTenantIdValid(tenantId);
         then(tokenBasedRBACUtils).should().hasAccessAllTenantsPermission(oauth2Token);
-        then(securityContextDetails).should().getAssignedTenants();
         then(idmSecurityApi).should().checkToken(oauth2Token);
     }
 
@@ -155,8 +181,8 @@ public class TokenBasedRBACUtilsTest {
         willReturn(true).given(tokenBasedRBACUtils).isTenantIdValid(tenantId);
         willReturn(false).given(tokenBasedRBACUtils).hasAccessAllTenantsPermission(oauth2Token);
 
-        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
-        given(securityContextDetails.getAssignedTenants()).willReturn(assignedTenants);
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(assignedTenants);
         given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails);
 
         given(idmSecurityApi.getTenantAncestors(tenantId)).willReturn(ancestorTenants);
@@ -168,7 +194,6 @@ public class TokenBasedRBACUtilsTest {
         assertTrue(result);
         then(tokenBasedRBACUtils).should().isTenantIdValid(tenantId);
         then(tokenBasedRBACUtils).should().hasAccessAllTenantsPermission(oauth2Token);
-        then(securityContextDetails).should().getAssignedTenants();
         then(idmSecurityApi).should().checkToken(oauth2Token);
         then(idmSecurityApi).should().getTenantAncestors(tenantId);
     }
@@ -183,8 +208,8 @@ public class TokenBasedRBACUtilsTest {
         willReturn(true).given(tokenBasedRBACUtils).isTenantIdValid(tenantId);
         willReturn(false).given(tokenBasedRBACUtils).hasAccessAllTenantsPermission(oauth2Token);
 
-        SecurityContextDetails securityContextDetails = mock(SecurityContextDetails.class);
-        given(securityContextDetails.getAssignedTenants()).willReturn(assignedTenants);
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setAssignedTenants(assignedTenants);
         given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails);
 
         given(idmSecurityApi.getTenantAncestors(tenantId)).willReturn(ancestorTenants);
@@ -196,7 +221,6 @@ public class TokenBasedRBACUtilsTest {
         assertFalse(result);
         then(tokenBasedRBACUtils).should().isTenantIdValid(tenantId);
         then(tokenBasedRBACUtils).should().hasAccessAllTenantsPermission(oauth2Token);
-        then(securityContextDetails).should().getAssignedTenants();
         then(idmSecurityApi).should().checkToken(oauth2Token);
         then(idmSecurityApi).should().getTenantAncestors(tenantId);
     }
@@ -205,44 +229,84 @@ public class TokenBasedRBACUtilsTest {
     public void hasAccessToTenants_haveAccessToAllTenants() {
         // given
         String oauth2Token = "oauth2Token1";
-        String tenantId1 = "tenantId1";
-        String tenantId2 = "tenantId2";
-        String tenantId3 = "tenantId3";
-        List<String> tenantIds = List.of(tenantId1, tenantId2, tenantId3);
-        willReturn(true).given(tokenBasedRBACUtils).hasAccessToTenant(oauth2Token, tenantId1);
-        willReturn(true).given(tokenBasedRBACUtils).hasAccessToTenant(oauth2Token, tenantId2);
-        willReturn(true).given(tokenBasedRBACUtils).hasAccessToTenant(oauth2Token, tenantId3);
+        List<String> tenantIds = List.of("tenantId1", "tenantId2", "tenantId3", "tenantId2");
+        given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails(List.of(), List.of("tenantId1", "assignedTenantId")));
+        given(idmSecurityApi.getTenantParent("tenantId1")).willReturn("rootTenantId");
+        given(idmSecurityApi.getTenantParent("tenantId2")).willReturn("assignedTenantId");
+        given(idmSecurityApi.getTenantParent("tenantId3")).willReturn("tenantId2");
 
         // when
         boolean result = tokenBasedRBACUtils.hasAccessToTenants(oauth2Token, tenantIds);
 
         // then
         assertTrue(result);
-        then(tokenBasedRBACUtils).should().hasAccessToTenant(oauth2Token, tenantId1);
-        then(tokenBasedRBACUtils).should().hasAccessToTenant(oauth2Token, tenantId2);
-        then(tokenBasedRBACUtils).should().hasAccessToTenant(oauth2Token, tenantId3);
+        then(idmSecurityApi).should(times(1)).checkToken(oauth2Token);
+        then(idmSecurityApi).should(times(1)).getTenantParent("tenantId2");
+        then(idmSecurityApi).should(never()).getTenantAncestors(anyString());
     }
 
     @Test
     public void hasAccessToTenants_haveNotAccessToAllTenants() {
         // given
         String oauth2Token = "oauth2Token1";
-        String tenantId1 = "tenantId1";
-        String tenantId2 = "tenantId2";
-        String tenantId3 = "tenantId3";
-        List<String> tenantIds = List.of(tenantId1, tenantId2, tenantId3);
-        willReturn(true).given(tokenBasedRBACUtils).hasAccessToTenant(oauth2Token, tenantId1);
-        willReturn(false).given(tokenBasedRBACUtils).hasAccessToTenant(oauth2Token, tenantId2);
-        willReturn(true).given(tokenBasedRBACUtils).hasAccessToTenant(oauth2Token, tenantId3);
+        List<String> tenantIds = List.of("tenantId1", "tenantId2", "tenantId3");
+        given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails(List.of(), List.of("tenantId1")));
+        given(idmSecurityApi.getTenantParent("tenantId1")).willReturn("rootTenantId");
+        given(idmSecurityApi.getTenantParent("tenantId2")).willReturn("parentTenantId");
+        given(idmSecurityApi.getTenantAncestors("tenantId2")).willReturn(Set.of("parentTenantId", "rootTenantId"));
 
         // when
         boolean result = tokenBasedRBACUtils.hasAccessToTenants(oauth2Token, tenantIds);
 
         // then
         assertFalse(result);
-        then(tokenBasedRBACUtils).should().hasAccessToTenant(oauth2Token, tenantId1);
-        then(tokenBasedRBACUtils).should().hasAccessToTenant(oauth2Token, tenantId2);
-        then(tokenBasedRBACUtils).should(times(0)).hasAccessToTenant(oauth2Token, tenantId3);
+        then(idmSecurityApi).should(never()).getTenantParent("tenantId3");
+    }
+
+    @Test
+    public void hasAccessToTenants_invalidTenantId() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        List<String> tenantIds = List.of("rootTenantId", "tenantId1");
+        given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails(List.of(Constants.ACCESS_ALL_TENANTS), List.of()));
+        given(idmSecurityApi.getTenantParent("rootTenantId")).willReturn(null);
+        given(idmSecurityApi.getTenantParent("tenantId1")).willReturn("");
+        given(idmSecurityApi.getTenantRoot()).willReturn("rootTenantId");
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenants(oauth2Token, tenantIds);
+
+        // then
+        assertFalse(result);
+        then(idmSecurityApi).should(times(1)).getTenantRoot();
+    }
+
+    @Test
+    public void hasAccessToTenants_ancestorLookupShared() {
+        // given
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of(), List.of("grandparentTenantId"));
+        List<String> tenantIds = List.of("tenantId1", "tenantId2", "parentTenantId");
+        given(idmSecurityApi.getTenantParent("tenantId1")).willReturn("parentTenantId");
+        given(idmSecurityApi.getTenantParent("tenantId2")).willReturn("parentTenantId");
+        given(idmSecurityApi.getTenantAncestors("tenantId1")).willReturn(Set.of("parentTenantId", "grandparentTenantId"));
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenants(securityContextDetails, tenantIds);
+
+        // then
+        assertTrue(result);
+        then(idmSecurityApi).should(times(1)).getTenantAncestors(anyString());
+        then(idmSecurityApi).should(never()).getTenantParent("parentTenantId");
+    }
+
+    @Test
+    public void hasAccessToTenants_empty() {
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenants("oauth2Token1", List.of());
+
+        // then
+        assertTrue(result);
+        then(idmSecurityApi).shouldHaveNoInteractions();
     }
 
     @Test
@@ -291,5 +355,352 @@ public class TokenBasedRBACUtilsTest {
         assertFalse(result);
         then(idmSecurityApi).should().getTenantParent(tenantId);
         then(idmSecurityApi).should().getTenantRoot();
+        then(invalidTenantCache).should().put(tenantId, Boolean.TRUE);
+    }
+
+    @Test
+    public void isTenantIdValid_knownInvalid() {
+        // given
+        String tenantId = "tenantId";
+        given(invalidTenantCache.get(tenantId)).willReturn(new SimpleValueWrapper(Boolean.TRUE));
+
+        // when
+        boolean result = tokenBasedRBACUtils.isTenantIdValid(tenantId);
+
+        // then
+        assertFalse(result);
+        then(idmSecurityApi).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void isTenantIdValid_indexed() {
+        // given
+        String tenantId = "tenantId";
+        given(tenantHierarchyIndex.contains(tenantId)).willReturn(true);
+
+        // when
+        boolean result = tokenBasedRBACUtils.isTenantIdValid(tenantId);
+
+        // then
+        assertTrue(result);
+        then(idmSecurityApi).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getTenantAncestors_indexed() {
+        // given
+        String tenantId = "tenantId";
+        Set<String> ancestorTenants = Set.of("ancestorTenantId1", "ancestorTenantId2");
+        given(tenantHierarchyIndex.getAncestors(tenantId)).willReturn(ancestorTenants);
+
+        // when
+        Set<String> result = tokenBasedRBACUtils.getTenantAncestors(tenantId);
+
+        // then
+        assertEquals(ancestorTenants, result);
+        then(idmSecurityApi).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getTenantAncestors_notIndexed() {
+        // given
+        String tenantId = "tenantId";
+        Set<String> ancestorTenants = Set.of("ancestorTenantId1", "ancestorTenantId2");
+        given(idmSecurityApi.getTenantAncestors(tenantId)).willReturn(ancestorTenants);
+
+        // when
+        Set<String> result = tokenBasedRBACUtils.getTenantAncestors(tenantId);
+
+        // then
+        assertEquals(ancestorTenants, result);
+        then(idmSecurityApi).should().getTenantAncestors(tenantId);
+    }
+
+    @Test
+    public void hasAccessToTenant_indexedWithoutAncestorsLookup() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        String tenantId = "tenantId1";
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of(), List.of("ancestorTenantId1"));
+        given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails);
+        given(tenantHierarchyIndex.contains(tenantId)).willReturn(true);
+        given(tenantHierarchyIndex.isInAssignedSubtree(securityContextDetails.getAccess(), tenantId)).willReturn(true);
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenant(oauth2Token, tenantId);
+
+        // then
+        assertTrue(result);
+        then(tenantHierarchyIndex).should(never()).getAncestors(tenantId);
+        then(idmSecurityApi).should(never()).getTenantAncestors(tenantId);
+    }
+
+    @Test
+    public void isTenantAncestor_indexed() {
+        // given
+        given(tenantHierarchyIndex.contains("ancestorTenantId1")).willReturn(true);
+        given(tenantHierarchyIndex.contains("tenantId1")).willReturn(true);
+        given(tenantHierarchyIndex.isAncestor("ancestorTenantId1", "tenantId1")).willReturn(true);
+
+        // when
+        boolean result = tokenBasedRBACUtils.isTenantAncestor("ancestorTenantId1", "tenantId1");
+
+        // then
+        assertTrue(result);
+        then(idmSecurityApi).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void hasPermission_accessViewRebuiltOnChange() {
+        // given
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of("permission1"), List.of());
+        SecurityContextAccess access = securityContextDetails.getAccess();
+
+        // when
+        securityContextDetails.setPermissions(List.of("permission2"));
+
+        // then
+        assertNotSame(access, securityContextDetails.getAccess());
+        assertFalse(tokenBasedRBACUtils.hasPermission(securityContextDetails, "permission1"));
+        assertTrue(tokenBasedRBACUtils.hasPermission(securityContextDetails, "permission2"));
+    }
+
+    @Test
+    public void hasPermission_nullEntriesIgnored() {
+        // given
+        SecurityContextDetails securityContextDetails = securityContextDetails(
+                Arrays.asList("permission1", null), Arrays.asList(null, "tenantId1"));
+
+        // when, then
+        assertTrue(tokenBasedRBACUtils.hasPermission(securityContextDetails, "permission1"));
+        assertFalse(tokenBasedRBACUtils.hasPermission(securityContextDetails, null));
+        assertTrue(securityContextDetails.getAccess().isAssigned("tenantId1"));
+        assertFalse(securityContextDetails.getAccess().isAnyAssigned(Arrays.asList(null, "tenantId2")));
+    }
+
+    @Test
+    public void hasPermissionAsync() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of("permission1"), List.of());
+        given(asyncIdmSecurityApi.checkToken(oauth2Token)).willReturn(CompletableFuture.completedFuture(securityContextDetails));
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasPermissionAsync(oauth2Token, "permission1").join();
+
+        // then
+        assertTrue(result);
+        then(idmSecurityApi).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void hasAccessToTenantAsync_lookupsIssuedInParallel() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        String tenantId = "tenantId1";
+        CompletableFuture<SecurityContextDetails> checkToken = new CompletableFuture<>();
+        given(asyncIdmSecurityApi.checkToken(oauth2Token)).willReturn(checkToken);
+        given(asyncIdmSecurityApi.getTenantParent(tenantId)).willReturn(CompletableFuture.completedFuture("parentTenantId1"));
+        given(asyncIdmSecurityApi.getTenantAncestors(tenantId)).willReturn(CompletableFuture.completedFuture(Set.of("parentTenantId1")));
+
+        // when
+        CompletableFuture<Boolean> result = tokenBasedRBACUtils.hasAccessToTenantAsync(oauth2Token, tenantId);
+
+        // then
+        then(asyncIdmSecurityApi).should().getTenantParent(tenantId);
+        then(asyncIdmSecurityApi).should().getTenantAncestors(tenantId);
+        assertFalse(result.isDone());
+        checkToken.complete(securityContextDetails(List.of(), List.of("parentTenantId1")));
+        assertTrue(result.join());
+    }
+
+    @Test
+    public void hasAccessToTenantsAsync_haveNotAccessToAllTenants() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        given(asyncIdmSecurityApi.checkToken(oauth2Token))
+                .willReturn(CompletableFuture.completedFuture(securityContextDetails(List.of(), List.of("tenantId1"))));
+        given(asyncIdmSecurityApi.getTenantParent(anyString())).willReturn(CompletableFuture.completedFuture("rootTenantId"));
+        given(asyncIdmSecurityApi.getTenantAncestors("tenantId1")).willReturn(CompletableFuture.completedFuture(Set.of("rootTenantId")));
+        given(asyncIdmSecurityApi.getTenantAncestors("tenantId2")).willReturn(CompletableFuture.completedFuture(Set.of("rootTenantId")));
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenantsAsync(oauth2Token, List.of("tenantId1", "tenantId2")).join();
+
+        // then
+        assertFalse(result);
+        then(asyncIdmSecurityApi).should(times(1)).checkToken(oauth2Token);
+    }
+
+    @Test
+    public void hasAccessToTenant_droppedFromIndexFallsBackToIdm() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        String tenantId = "tenantId1";
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of(), List.of("ancestorTenantId1"));
+        given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails);
+        given(tenantHierarchyIndex.contains(tenantId)).willReturn(true);
+        given(tenantHierarchyIndex.isInAssignedSubtree(securityContextDetails.getAccess(), tenantId)).willReturn(null);
+        given(idmSecurityApi.getTenantAncestors(tenantId)).willReturn(Set.of("ancestorTenantId1"));
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenant(oauth2Token, tenantId);
+
+        // then
+        assertTrue(result);
+        then(idmSecurityApi).should().getTenantAncestors(tenantId);
+    }
+
+    @Test
+    public void hasAccessToTenants_indexedWithoutAncestorsLookup() {
+        // given
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of(), List.of("ancestorTenantId1"));
+        given(tenantHierarchyIndex.contains(anyString())).willReturn(true);
+        given(tenantHierarchyIndex.isInAssignedSubtree(securityContextDetails.getAccess(), "tenantId1")).willReturn(true);
+        given(tenantHierarchyIndex.isInAssignedSubtree(securityContextDetails.getAccess(), "tenantId2")).willReturn(false);
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenants(securityContextDetails, List.of("tenantId1", "tenantId2"));
+
+        // then
+        assertFalse(result);
+        then(tenantHierarchyIndex).should(never()).getAncestors(anyString());
+        then(idmSecurityApi).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void hasAccessToTenantAsync_indexedWithoutAncestorsLookup() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        String tenantId = "tenantId1";
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of(), List.of("ancestorTenantId1"));
+        given(asyncIdmSecurityApi.checkToken(oauth2Token)).willReturn(CompletableFuture.completedFuture(securityContextDetails));
+        given(tenantHierarchyIndex.contains(tenantId)).willReturn(true);
+        given(tenantHierarchyIndex.isInAssignedSubtree(securityContextDetails.getAccess(), tenantId)).willReturn(true);
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenantAsync(oauth2Token, tenantId).join();
+
+        // then
+        assertTrue(result);
+        then(asyncIdmSecurityApi).should(never()).getTenantParent(anyString());
+        then(asyncIdmSecurityApi).should(never()).getTenantAncestors(anyString());
+    }
+
+    @Test
+    public void hasAccessToTenantAsync_droppedFromIndexFallsBackToIdm() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        String tenantId = "tenantId1";
+        SecurityContextDetails securityContextDetails = securityContextDetails(List.of(), List.of("ancestorTenantId1"));
+        given(asyncIdmSecurityApi.checkToken(oauth2Token)).willReturn(CompletableFuture.completedFuture(securityContextDetails));
+        given(tenantHierarchyIndex.contains(tenantId)).willReturn(true);
+        given(tenantHierarchyIndex.isInAssignedSubtree(securityContextDetails.getAccess(), tenantId)).willReturn(null);
+        given(asyncIdmSecurityApi.getTenantAncestors(tenantId)).willReturn(CompletableFuture.completedFuture(Set.of("ancestorTenantId1")));
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenantAsync(oauth2Token, tenantId).join();
+
+        // then
+        assertTrue(result);
+        then(asyncIdmSecurityApi).should().getTenantAncestors(tenantId);
+    }
+
+    @Test
+    public void hasAccessToTenantsAsync_accessAllTenantsWithoutAncestorsLookup() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        given(asyncIdmSecurityApi.checkToken(oauth2Token))
+                .willReturn(CompletableFuture.completedFuture(securityContextDetails(List.of(Constants.ACCESS_ALL_TENANTS), List.of())));
+        given(asyncIdmSecurityApi.getTenantParent(anyString())).willReturn(CompletableFuture.completedFuture("rootTenantId"));
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenantsAsync(oauth2Token, List.of("tenantId1", "tenantId2")).join();
+
+        // then
+        assertTrue(result);
+        then(asyncIdmSecurityApi).should(never()).getTenantAncestors(anyString());
+    }
+
+    @Test
+    public void hasAccessToTenantsAsync_assignedWithoutLookups() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        given(asyncIdmSecurityApi.checkToken(oauth2Token))
+                .willReturn(CompletableFuture.completedFuture(securityContextDetails(List.of(), List.of("tenantId1", "tenantId2"))));
+        given(tenantHierarchyIndex.contains(anyString())).willReturn(true);
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenantsAsync(oauth2Token, List.of("tenantId1", "tenantId2")).join();
+
+        // then
+        assertTrue(result);
+        then(asyncIdmSecurityApi).should(never()).getTenantParent(anyString());
+        then(asyncIdmSecurityApi).should(never()).getTenantAncestors(anyString());
+    }
+
+    @Test
+    public void hasAccessToTenantsAsync_knownInvalidWithoutLookups() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        given(asyncIdmSecurityApi.checkToken(oauth2Token))
+                .willReturn(CompletableFuture.completedFuture(securityContextDetails(List.of(), List.of("tenantId1"))));
+        given(invalidTenantCache.get("tenantId2")).willReturn(new SimpleValueWrapper(Boolean.TRUE));
+
+        // when
+        boolean result = tokenBasedRBACUtils.hasAccessToTenantsAsync(oauth2Token, List.of("tenantId1", "tenantId2")).join();
+
+        // then
+        assertFalse(result);
+        then(asyncIdmSecurityApi).should(never()).getTenantParent(anyString());
+        then(asyncIdmSecurityApi).should(never()).getTenantAncestors(anyString());
+    }
+
+    @Test
+    public void hasAccessToTenantsAsync_boundedAndStopsAtFirstDenial() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        given(asyncIdmSecurityApi.checkToken(oauth2Token))
+                .willReturn(CompletableFuture.completedFuture(securityContextDetails(List.of(), List.of("otherTenantId"))));
+        Map<String, CompletableFuture<String>> parentLookups = new HashMap<>();
+        given(asyncIdmSecurityApi.getTenantParent(anyString()))
+                .willAnswer(invocation -> parentLookups.computeIfAbsent(invocation.getArgument(0), tenantId -> new CompletableFuture<>()));
+        given(asyncIdmSecurityApi.getTenantAncestors(anyString())).willReturn(CompletableFuture.completedFuture(Set.of("rootTenantId")));
+        List<String> tenantIds = IntStream.range(0, 10).mapToObj(i -> "tenantId" + i).collect(Collectors.toList());
+
+        // when
+        CompletableFuture<Boolean> result = tokenBasedRBACUtils.hasAccessToTenantsAsync(oauth2Token, tenantIds);
+        int started = parentLookups.size();
+        parentLookups.get("tenantId0").complete("rootTenantId");
+
+        // then
+        assertEquals(4, started);
+        assertFalse(result.join());
+        assertEquals(4, parentLookups.size());
+        then(asyncIdmSecurityApi).should(times(1)).getTenantAncestors(anyString());
+    }
+
+    @Test
+    public void hasAccessToTenant_idmSecurityApiOnly() {
+        // given
+        String oauth2Token = "oauth2Token1";
+        String tenantId = "tenantId1";
+        given(idmSecurityApi.checkToken(oauth2Token)).willReturn(securityContextDetails(List.of(), List.of("ancestorTenantId1")));
+        given(idmSecurityApi.getTenantParent(tenantId)).willReturn("ancestorTenantId1");
+        given(idmSecurityApi.getTenantAncestors(tenantId)).willReturn(Set.of("ancestorTenantId1"));
+
+        // when
+        boolean result = new TokenBasedRBACUtils(idmSecurityApi).hasAccessToTenant(oauth2Token, tenantId);
+
+        // then
+        assertTrue(result);
+        then(idmSecurityApi).should().getTenantAncestors(tenantId);
+    }
+
+    private static SecurityContextDetails securityContextDetails(List<String> permissions, List<String> assignedTenants) {
+        SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+        securityContextDetails.setPermissions(permissions);
+        securityContextDetails.setAssignedTenants(assignedTenants);
+        return securityContextDetails;
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TwoTierIdmSecurityCachesTest {
+
+    private IntegrationSecurityProperties integrationSecurityProperties;
+
+    private IdmSecurityCaches localCaches1;
+
+    private IdmSecurityCaches localCaches2;
+
+    private TwoTierIdmSecurityCaches replica1;
+
+    private TwoTierIdmSecurityCaches replica2;
+
+    @BeforeEach
+    public void setUp() {
+        integrationSecurityProperties = new IntegrationSecurityProperties();
+        IdmSecurityL2Cache l2Cache = new InMemoryIdmSecurityL2Cache();
+        IdmSecurityInvalidationBroadcaster broadcaster = new InMemoryIdmSecurityInvalidationBroadcaster();
+        localCaches1 = new IdmSecurityCaches(integrationSecurityProperties);
+        localCaches2 = new IdmSecurityCaches(integrationSecurityProperties);
+        replica1 = new TwoTierIdmSecurityCaches(localCaches1, l2Cache, broadcaster, integrationSecurityProperties);
+        replica2 = new TwoTierIdmSecurityCaches(localCaches2, l2Cache, broadcaster, integrationSecurityProperties);
+    }
+
+    @Test
+    public void checkToken_sharedAndRevokedOnEveryReplica() {
+        // given
+        String key = TokenDigest.sha256("token");
+        CachedSecurityContextDetails cached = CachedSecurityContextDetails.of(new SecurityContextDetails(),
+                System.currentTimeMillis(), 60_000);
+        replica1.getCache(Constants.CHECK_TOKEN_CACHE).put(key, cached);
+
+        // when
+        CachedSecurityContextDetails shared = replica2.getCache(Constants.CHECK_TOKEN_CACHE).get(key, CachedSecurityContextDetails.class);
+        replica2.revokeToken("token");
+
+        // then
+        assertSame(cached, shared);
+        assertNull(localCaches1.getCache(Constants.CHECK_TOKEN_CACHE).get(key));
+        assertNull(localCaches2.getCache(Constants.CHECK_TOKEN_CACHE).get(key));
+        assertNull(replica1.getCache(Constants.CHECK_TOKEN_CACHE).get(key));
+    }
+
+    @Test
+    public void checkToken_uncacheableNotShared() {
+        // given
+        SecurityContextDetails inactive = new SecurityContextDetails();
+
+        // when
+        replica1.getCache(Constants.CHECK_TOKEN_CACHE).put("key", inactive);
+
+        // then
+        assertNotNull(localCaches1.getCache(Constants.CHECK_TOKEN_CACHE).get("key"));
+        assertNull(replica2.getCache(Constants.CHECK_TOKEN_CACHE).get("key"));
+    }
+
+    @Test
+    public void checkToken_evictStaysLocal() {
+        // given
+        List<IdmSecurityInvalidation> invalidations = new ArrayList<>();
+        replica2.addInvalidationListener(invalidations::add);
+        CachedSecurityContextDetails cached = CachedSecurityContextDetails.of(new SecurityContextDetails(),
+                System.currentTimeMillis(), 60_000);
+        replica2.getCache(Constants.CHECK_TOKEN_CACHE).put("key", cached);
+        replica1.getCache(Constants.CHECK_TOKEN_CACHE).put("otherKey", cached);
+
+        // when
+        replica1.getCache(Constants.CHECK_TOKEN_CACHE).evict("key");
+        replica1.getCache(Constants.CHECK_TOKEN_CACHE).evict("otherKey");
+
+        // then
+        assertTrue(invalidations.isEmpty());
+        assertNotNull(localCaches2.getCache(Constants.CHECK_TOKEN_CACHE).get("key"));
+        assertSame(cached, replica1.getCache(Constants.CHECK_TOKEN_CACHE).get("key", CachedSecurityContextDetails.class));
+        assertNull(localCaches1.getCache(Constants.CHECK_TOKEN_CACHE).get("otherKey"));
+        assertNull(replica2.getCache(Constants.CHECK_TOKEN_CACHE).get("otherKey"));
+    }
+
+    @Test
+    public void tenantMoved_tenantHierarchyDiscardedOnEveryReplica() {
+        // given
+        List<IdmSecurityInvalidation> invalidations = new ArrayList<>();
+        replica2.addInvalidationListener(invalidations::add);
+        Cache tenantHierarchyCache1 = replica1.getCache(Constants.TENANT_HIERARCHY_CACHE);
+        tenantHierarchyCache1.put("ancestors:tenantId1", Set.of("rootTenantId"));
+        replica2.getCache(Constants.TENANT_HIERARCHY_CACHE).get("ancestors:tenantId1");
+        replica2.getCache(Constants.INVALID_TENANT_CACHE).put("tenantId1", Boolean.TRUE);
+
+        // when
+        replica1.tenantMoved("tenantId1");
+
+        // then
+        assertNull(localCaches2.getCache(Constants.TENANT_HIERARCHY_CACHE).get("ancestors:tenantId1"));
+        assertNull(tenantHierarchyCache1.get("ancestors:tenantId1"));
+        assertNull(replica2.getCache(Constants.INVALID_TENANT_CACHE).get("tenantId1"));
+        assertTrue(invalidations.contains(IdmSecurityInvalidation.clear(Constants.TENANT_HIERARCHY_CACHE)));
+    }
+}
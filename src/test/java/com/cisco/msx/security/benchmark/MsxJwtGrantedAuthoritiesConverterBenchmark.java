@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security.benchmark;
+
+import com.cisco.msx.security.MsxJwtGrantedAuthoritiesConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting the authorities and scope claims of a JWT, as done for every authenticated request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MsxJwtGrantedAuthoritiesConverterBenchmark {
+
+    @Param({"10", "200"})
+    private int authorityCount;
+
+    @Param({"3", "20"})
+    private int scopeCount;
+
+    private MsxJwtGrantedAuthoritiesConverter converter;
+
+    private Jwt jwt;
+
+    @Setup
+    public void setUp() {
+        converter = new MsxJwtGrantedAuthoritiesConverter();
+
+        List<String> authorities = new ArrayList<>();
+        for (int i = 0; i < authorityCount; i++) {
+            authorities.add("ROLE_AUTHORITY_" + i);
+        }
+        StringBuilder scope = new StringBuilder();
+        for (int i = 0; i < scopeCount; i++) {
+            scope.append(i == 0 ? "" : " ").append("scope.").append(i);
+        }
+        jwt = Jwt.withTokenValue("token")
+                .header("typ", "JWT")
+                .claim("authorities", authorities)
+                .claim("scope", scope.toString())
+                .build();
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> convert() {
+        return converter.convert(jwt);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security.benchmark;
+
+import com.cisco.msx.security.IntegrationSecurityProperties;
+import com.cisco.msx.security.SecurityContextBasedRBACUtils;
+import com.cisco.msx.security.TenantHierarchyIndex;
+import com.cisco.msx.security.TokenBasedRBACUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RBAC checks of TokenBasedRBACUtils and SecurityContextBasedRBACUtils against the in-memory {@link StubIdmSecurityApi},
+ * with a tenant tree of 1110 tenants, once answered by IDM and once by a built {@link TenantHierarchyIndex}. The
+ * SecurityContextBasedRBACUtils benchmarks run inside one http request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RBACUtilsBenchmark {
+
+    private static final String TOKEN = "token";
+
+    @Param({"20", "500"})
+    private int permissionCount;
+
+    @Param({"10", "100"})
+    private int assignedTenantCount;
+
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    private TokenBasedRBACUtils tokenBasedRBACUtils;
+
+    private SecurityContextBasedRBACUtils securityContextBasedRBACUtils;
+
+    private String permission;
+
+    private String tenantId;
+
+    private List<String> tenantIds;
+
+    @Setup
+    public void setUp() {
+        StubIdmSecurityApi idmSecurityApi = new StubIdmSecurityApi(10, 3, permissionCount, assignedTenantCount);
+        TenantHierarchyIndex tenantHierarchyIndex = new TenantHierarchyIndex(idmSecurityApi,
+                new IntegrationSecurityProperties.TenantHierarchyIndexProperties());
+        if (indexed) {
+            tenantHierarchyIndex.refresh();
+        }
+        tokenBasedRBACUtils = new TokenBasedRBACUtils(idmSecurityApi, tenantHierarchyIndex, null, null);
+        securityContextBasedRBACUtils = new SecurityContextBasedRBACUtils(idmSecurityApi, tokenBasedRBACUtils, null);
+
+        permission = "PERMISSION_" + (permissionCount - 1);
+        List<String> leaves = idmSecurityApi.getLeaves();
+        tenantId = leaves.get(leaves.size() - 1);
+        tenantIds = leaves.subList(0, 100);
+
+        Jwt jwt = Jwt.withTokenValue(TOKEN).header("typ", "JWT").claim("sub", "user").build();
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public boolean tokenHasPermission() {
+        return tokenBasedRBACUtils.hasPermission(TOKEN, permission);
+    }
+
+    @Benchmark
+    public boolean tokenHasAccessToTenant() {
+        return tokenBasedRBACUtils.hasAccessToTenant(TOKEN, tenantId);
+    }
+
+    @Benchmark
+    public boolean tokenHasAccessToTenants() {
+        return tokenBasedRBACUtils.hasAccessToTenants(TOKEN, tenantIds);
+    }
+
+    @Benchmark
+    public boolean securityContextHasPermission() {
+        return securityContextBasedRBACUtils.hasPermission(permission);
+    }
+
+    @Benchmark
+    public boolean securityContextHasAccessToTenant() {
+        return securityContextBasedRBACUtils.hasAccessToTenant(tenantId);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security.benchmark;
+
+import com.cisco.msx.security.MsxOAuthResourceProperties;
+import com.cisco.msx.security.MsxResourceRuleMatcher;
+import com.cisco.msx.security.MsxSecurityExpressionParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.expression.Expression;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.SecurityConfig;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.expression.DefaultWebSecurityExpressionHandler;
+import org.springframework.security.web.access.expression.ExpressionBasedFilterInvocationSecurityMetadataSource;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RegexRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request matching for a large security.resources.rules set, built the way OAuth2ResourceServerSecurityConfig builds
+ * it: every rule adds its matchers to the filter chain request matcher and maps them to its expression in the
+ * FilterSecurityInterceptor. One rule out of ten uses regex patterns. The same rules are also matched by the
+ * {@link MsxResourceRuleMatcher}, which finds the first matching rule in a single pass. It is given the path, so the
+ * match it remembers in the request attributes is not reused across invocations.
+ * <p>
+ * The expression of the matched rule is also evaluated the way the FilterSecurityInterceptor evaluates it, once
+ * parsed by SpEL and once by the {@link MsxSecurityExpressionParser} native predicates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RequestMatchingBenchmark {
+
+    @Param({"50", "500"})
+    private int ruleCount;
+
+    private RequestMatcher filterChainMatcher;
+
+    private ExpressionBasedFilterInvocationSecurityMetadataSource securityMetadataSource;
+
+    private FilterInvocation firstRule;
+
+    private FilterInvocation lastRule;
+
+    private FilterInvocation noRule;
+
+    private MsxResourceRuleMatcher ruleMatcher;
+
+    private Authentication authentication;
+
+    private DefaultWebSecurityExpressionHandler spelExpressionHandler;
+
+    private Expression spelExpression;
+
+    private DefaultWebSecurityExpressionHandler nativeExpressionHandler;
+
+    private Expression nativeExpression;
+
+    @Setup
+    public void setUp() {
+        List<RequestMatcher> matchers = new ArrayList<>();
+        List<MsxOAuthResourceProperties.ResourceSecurityRuleProperties> rules = new ArrayList<>();
+        LinkedHashMap<RequestMatcher, Collection<ConfigAttribute>> requestMap = new LinkedHashMap<>();
+        for (int i = 0; i < ruleCount; i++) {
+            List<RequestMatcher> ruleMatchers = new ArrayList<>();
+            MsxOAuthResourceProperties.ResourceSecurityRuleProperties rule = new MsxOAuthResourceProperties.ResourceSecurityRuleProperties();
+            if (i % 10 == 9) {
+                ruleMatchers.add(new RegexRequestMatcher("/api/v[0-9]+/service" + i + "/items/[^/]+", null));
+                rule.setPatterns(List.of("/api/v[0-9]+/service" + i + "/items/[^/]+"));
+                rule.setType(MsxOAuthResourceProperties.ResourceSecurityRuleProperties.PatternType.regex);
+            } else {
+                ruleMatchers.add(new AntPathRequestMatcher("/api/v1/service" + i + "/**"));
+                ruleMatchers.add(new AntPathRequestMatcher("/api/v2/service" + i + "/items/*"));
+                rule.setPatterns(List.of("/api/v1/service" + i + "/**", "/api/v2/service" + i + "/items/*"));
+            }
+            String expr = "hasAuthority('SCOPE_read') and hasRole('ROLE_CLIENT_" + i + "')";
+            rule.setExpr(expr);
+            rules.add(rule);
+            for (RequestMatcher ruleMatcher : ruleMatchers) {
+                matchers.add(ruleMatcher);
+                requestMap.put(ruleMatcher, SecurityConfig.createList(expr));
+            }
+        }
+        filterChainMatcher = new OrRequestMatcher(matchers);
+        ruleMatcher = new MsxResourceRuleMatcher(rules);
+        securityMetadataSource = new ExpressionBasedFilterInvocationSecurityMetadataSource(requestMap,
+                new DefaultWebSecurityExpressionHandler());
+
+        firstRule = filterInvocation("/api/v1/service0/items/1");
+        lastRule = filterInvocation("/api/v1/service" + (ruleCount - 2) + "/items/1");
+        noRule = filterInvocation("/health");
+
+        authentication = new TestingAuthenticationToken("user", "credentials", "SCOPE_read", "ROLE_CLIENT_" + (ruleCount - 2));
+        String lastRuleExpr = "hasAuthority('SCOPE_read') and hasRole('ROLE_CLIENT_" + (ruleCount - 2) + "')";
+        spelExpressionHandler = new DefaultWebSecurityExpressionHandler();
+        spelExpression = spelExpressionHandler.getExpressionParser().parseExpression(lastRuleExpr);
+        nativeExpressionHandler = new DefaultWebSecurityExpressionHandler();
+        nativeExpressionHandler.setExpressionParser(new MsxSecurityExpressionParser());
+        nativeExpression = nativeExpressionHandler.getExpressionParser().parseExpression(lastRuleExpr);
+    }
+
+    @Benchmark
+    public Collection<ConfigAttribute> firstRule() {
+        return match(firstRule);
+    }
+
+    @Benchmark
+    public Collection<ConfigAttribute> lastRule() {
+        return match(lastRule);
+    }
+
+    @Benchmark
+    public Collection<ConfigAttribute> noRule() {
+        return match(noRule);
+    }
+
+    @Benchmark
+    public int ruleMatcherFirstRule() {
+        return ruleMatcher.firstMatch(firstRule.getRequest().getServletPath(), null);
+    }
+
+    @Benchmark
+    public int ruleMatcherLastRule() {
+        return ruleMatcher.firstMatch(lastRule.getRequest().getServletPath(), null);
+    }
+
+    @Benchmark
+    public int ruleMatcherNoRule() {
+        return ruleMatcher.firstMatch(noRule.getRequest().getServletPath(), null);
+    }
+
+    @Benchmark
+    public boolean evaluateSpel() {
+        return ExpressionUtils.evaluateAsBoolean(spelExpression,
+                spelExpressionHandler.createEvaluationContext(authentication, lastRule));
+    }
+
+    @Benchmark
+    public boolean evaluateNative() {
+        return ExpressionUtils.evaluateAsBoolean(nativeExpression,
+                nativeExpressionHandler.createEvaluationContext(authentication, lastRule));
+    }
+
+    private Collection<ConfigAttribute> match(FilterInvocation filterInvocation) {
+        if (!filterChainMatcher.matches(filterInvocation.getRequest())) {
+            return null;
+        }
+        return securityMetadataSource.getAttributes(filterInvocation);
+    }
+
+    private static FilterInvocation filterInvocation(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        return new FilterInvocation(request, new MockHttpServletResponse(), new MockFilterChain());
+    }
+}
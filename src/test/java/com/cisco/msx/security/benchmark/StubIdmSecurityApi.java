@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security.benchmark;
+
+import com.cisco.msx.security.IdmSecurityApi;
+import com.cisco.msx.security.IntegrationSecurityProperties;
+import com.cisco.msx.security.SecurityContextDetails;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory IdmSecurityApi answering from a generated tenant tree, so the benchmarks measure the library and not IDM.
+ * The tree has the given fan-out per level; the token is granted the given number of permissions and is assigned the
+ * first tenants of the second level.
+ */
+public class StubIdmSecurityApi extends IdmSecurityApi {
+
+    public static final String ROOT = "root";
+
+    private final Map<String, String> parents = new HashMap<>();
+
+    private final Map<String, Set<String>> children = new HashMap<>();
+
+    private final List<String> leaves = new ArrayList<>();
+
+    private final SecurityContextDetails securityContextDetails = new SecurityContextDetails();
+
+    public StubIdmSecurityApi(int fanOut, int depth, int permissionCount, int assignedTenantCount) {
+        super(null, new IntegrationSecurityProperties());
+
+        List<String> level = List.of(ROOT);
+        List<String> secondLevel = new ArrayList<>();
+        for (int d = 1; d <= depth; d++) {
+            List<String> next = new ArrayList<>();
+            for (String parent : level) {
+                for (int i = 0; i < fanOut; i++) {
+                    String tenantId = parent + "-" + i;
+                    parents.put(tenantId, parent);
+                    children.computeIfAbsent(parent, k -> new LinkedHashSet<>()).add(tenantId);
+                    next.add(tenantId);
+                }
+            }
+            if (d == 2) {
+                secondLevel = next;
+            }
+            level = next;
+        }
+        leaves.addAll(level);
+
+        List<String> permissions = new ArrayList<>();
+        for (int i = 0; i < permissionCount; i++) {
+            permissions.add("PERMISSION_" + i);
+        }
+        securityContextDetails.setActive(true);
+        securityContextDetails.setExp(Integer.MAX_VALUE);
+        securityContextDetails.setPermissions(permissions);
+        securityContextDetails.setAssignedTenants(new ArrayList<>(secondLevel.subList(0, Math.min(assignedTenantCount, secondLevel.size()))));
+    }
+
+    public List<String> getLeaves() {
+        return leaves;
+    }
+
+    public SecurityContextDetails getSecurityContextDetails() {
+        return securityContextDetails;
+    }
+
+    @Override
+    public SecurityContextDetails checkToken(String token) {
+        return securityContextDetails;
+    }
+
+    @Override
+    public String getTenantRoot() {
+        return ROOT;
+    }
+
+    @Override
+    public String walkTenantRoot() {
+        return ROOT;
+    }
+
+    @Override
+    public Set<String> walkTenantChildren(String tenantId) {
+        return getTenantChildren(tenantId);
+    }
+
+    @Override
+    public String getTenantParent(String tenantId) {
+        return parents.get(tenantId);
+    }
+
+    @Override
+    public Set<String> getTenantChildren(String tenantId) {
+        return children.getOrDefault(tenantId, Set.of());
+    }
+
+    @Override
+    public Set<String> getTenantAncestors(String tenantId) {
+        Set<String> ancestors = new HashSet<>();
+        String parent = parents.get(tenantId);
+        while (parent != null) {
+            ancestors.add(parent);
+            parent = parents.get(parent);
+        }
+        return ancestors;
+    }
+}
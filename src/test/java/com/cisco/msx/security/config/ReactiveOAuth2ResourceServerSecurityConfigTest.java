@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021. Cisco Systems, Inc and its affiliates
+ * All Rights reserved
+ */
+
+package com.cisco.msx.security.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(
+        classes = {
+                ReactiveOAuth2ResourceServerSecurityConfig.class,
+                ReactiveOAuth2ResourceServerSecurityConfigTest.WebConfiguration.class
+        }
+)
+@TestPropertySource(properties = {
+        "security.resources.rules[0].patterns=/api/items/{id}",
+        "security.resources.rules[0].expr=#id == '7'",
+        "security.resources.rules[1].patterns=/api/**",
+        "security.resources.rules[1].expr=hasAuthority('SCOPE_read')",
+        "security.resources.rules[2].patterns=/v[0-9]+/.*",
+        "security.resources.rules[2].type=regex",
+        "security.cors.enabled=true",
+        "security.cors.allowedOrigins=*"
+})
+public class ReactiveOAuth2ResourceServerSecurityConfigTest {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    public void setUp() {
+        webTestClient = WebTestClient.bindToApplicationContext(applicationContext).build();
+    }
+
+    @Test
+    public void rules_authorities() {
+        // when, then
+        get("/api/x", null).expectStatus().isUnauthorized();
+        get("/api/x", "read").expectStatus().isOk();
+        get("/api/x", "other").expectStatus().isForbidden();
+        get("/api/x", "bad").expectStatus().isUnauthorized();
+    }
+
+    @Test
+    public void rules_uriTemplateVariables() {
+        // when, then
+        get("/api/items/7", null).expectStatus().isOk();
+        get("/api/items/8", null).expectStatus().isUnauthorized();
+    }
+
+    @Test
+    public void rules_defaultExpressionIsFullyAuthenticated() {
+        // when, then
+        get("/v1/foo", null).expectStatus().isUnauthorized();
+        get("/v1/foo", "other").expectStatus().isOk();
+    }
+
+    @Test
+    public void rules_notMatchedRequestsNotSecured() {
+        // when, then
+        get("/open", null).expectStatus().isOk();
+    }
+
+    @Test
+    public void preflight_bypassesSecurity() {
+        // when, then
+        webTestClient.options().uri("http://localhost/api/x")
+                .header(HttpHeaders.ORIGIN, "http://a.com")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "GET")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+    }
+
+    private WebTestClient.ResponseSpec get(String path, String token) {
+        WebTestClient.RequestHeadersSpec<?> request = webTestClient.get().uri(path);
+        if (token != null) {
+            request = request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        }
+        return request.exchange();
+    }
+
+    @Configuration
+    @EnableWebFlux
+    static class WebConfiguration {
+
+        @Bean
+        public ReactiveJwtDecoder reactiveJwtDecoder() {
+            return token -> token.equals("bad") ? Mono.error(new BadJwtException("bad")) : Mono.just(Jwt.withTokenValue(token)
+                    .header("alg", "none")
+                    .claim("scope", token)
+                    .issuedAt(Instant.now())
+                    .expiresAt(Instant.now().plusSeconds(60))
+                    .build());
+        }
+
+        @Bean
+        public RouterFunction<ServerResponse> routes() {
+            return RouterFunctions.route(GET("/**"), request -> ServerResponse.ok().bodyValue("ok"));
+        }
+    }
+}